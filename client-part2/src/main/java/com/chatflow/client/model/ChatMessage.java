@@ -1,10 +1,13 @@
 package com.chatflow.client.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.time.Instant;
 import java.util.Objects;
 import java.util.UUID;
 
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class ChatMessage {
 
     @JsonProperty("messageId")
@@ -22,6 +25,10 @@ public class ChatMessage {
     private MessageType messageType;
     private Instant timestamp;
 
+    // Assigned by the server on broadcasts; null on outgoing messages
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String serverMessageId;
+
     public ChatMessage() {
         this.messageId = UUID.randomUUID().toString();
     }
@@ -59,6 +66,9 @@ public class ChatMessage {
     public Instant getTimestamp() { return timestamp; }
     public void setTimestamp(Instant timestamp) { this.timestamp = timestamp; }
 
+    public String getServerMessageId() { return serverMessageId; }
+    public void setServerMessageId(String serverMessageId) { this.serverMessageId = serverMessageId; }
+
     @Override
     public boolean equals(Object o) {
         if (o == null || getClass() != o.getClass()) return false;
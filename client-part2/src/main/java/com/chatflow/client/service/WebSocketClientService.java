@@ -2,7 +2,6 @@ package com.chatflow.client.service;
 
 import com.chatflow.client.model.ChatMessage;
 import com.chatflow.client.model.MessageMetrics;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
@@ -16,6 +15,11 @@ import org.springframework.web.socket.client.WebSocketClient;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
@@ -40,6 +44,14 @@ public class WebSocketClientService {
     // Track pending responses using messageId from ChatMessage
     private final ConcurrentHashMap<String, CompletableFuture<String>> pendingResponses = new ConcurrentHashMap<>();
 
+    // Resume position per room: cursor of the newest broadcast seen, sent as ?since= on reconnect
+    private final ConcurrentHashMap<String, ChatMessage> lastSeen = new ConcurrentHashMap<>();
+    // Recently seen message ids per room; a resume overlaps a little and repeats are dropped here
+    private final ConcurrentHashMap<String, Set<String>> recentIds = new ConcurrentHashMap<>();
+    private final AtomicInteger duplicatesDropped = new AtomicInteger(0);
+    private final AtomicInteger replayGaps = new AtomicInteger(0);
+    private static final int RECENT_IDS_PER_ROOM = 10000;
+
     public WebSocketClientService(MetricsCollector metricsCollector) {
         this.metricsCollector = metricsCollector;
     }
@@ -142,7 +154,9 @@ public class WebSocketClientService {
     public WebSocketSession getOrCreateConnection(String roomId) throws Exception {
         return connectionPool.computeIfAbsent(roomId, rid -> {
             try {
-                String url = serverUrl + "/" + rid;
+                // First connect skips history; a reconnect resumes after the last broadcast seen
+                ChatMessage last = lastSeen.get(rid);
+                String url = serverUrl + "/" + rid + (last != null ? "?since=" + cursorOf(last) : "?replay=0");
 
                 WebSocketHandler handler = new TextWebSocketHandler() {
 
@@ -156,10 +170,17 @@ public class WebSocketClientService {
                         String response = message.getPayload();
                         try {
                             JsonNode jsonNode = objectMapper.readTree(response);
-                            if (jsonNode.has("status")) {
+                            if (jsonNode.isArray()) {
+                                // Coalesced frame from a hot room: one broadcast per element
+                                for (JsonNode element : jsonNode) {
+                                    handleBroadCastMessage(objectMapper.treeToValue(element, ChatMessage.class));
+                                }
+                            } else if (jsonNode.has("status")) {
                                 handleAckMessage(jsonNode,response);
+                            } else if (jsonNode.has("replay")) {
+                                handleReplayNotice(rid, jsonNode);
                             } else {
-                                handleBroadCastMessage(message);
+                                handleBroadCastMessage(objectMapper.treeToValue(jsonNode, ChatMessage.class));
                             }
                         } catch (Exception e) {
                             System.err.println("Error handling message: " + e.getMessage());
@@ -229,8 +250,11 @@ public class WebSocketClientService {
         }
     }
 
-    private void handleBroadCastMessage(TextMessage message) throws JsonProcessingException {
-        ChatMessage msg = objectMapper.readValue(message.getPayload(),ChatMessage.class);
+    private void handleBroadCastMessage(ChatMessage msg) {
+        if (!firstSighting(msg)) {
+            duplicatesDropped.incrementAndGet();
+            return;
+        }
         MessageMetrics metrics = new MessageMetrics();
         metrics.setSendTimestamp(msg.getTimestamp());
         metrics.setMessageType(msg.getMessageType());
@@ -240,6 +264,51 @@ public class WebSocketClientService {
         metricsCollector.record(metrics);
     }
 
+    /**
+     * Records the message for dedup and advances the room's resume cursor.
+     * Returns false if it was already received (resume overlap).
+     */
+    private boolean firstSighting(ChatMessage msg) {
+        String roomId = msg.getRoomId();
+        if (roomId == null || msg.getTimestamp() == null) {
+            return true;
+        }
+        Set<String> seen = recentIds.computeIfAbsent(roomId, id -> Collections.newSetFromMap(
+                Collections.synchronizedMap(new LinkedHashMap<String, Boolean>() {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                        return size() > RECENT_IDS_PER_ROOM;
+                    }
+                })));
+        if (!seen.add(idOf(msg))) {
+            return false;
+        }
+        lastSeen.merge(roomId, msg, (current, candidate) ->
+                candidate.getTimestamp().isAfter(current.getTimestamp()) ? candidate : current);
+        return true;
+    }
+
+    /**
+     * The server sends a gap notice when it could only replay part of the missed
+     * range; the rest is available from GET /rooms/{roomId}/messages?after=...
+     */
+    private void handleReplayNotice(String roomId, JsonNode notice) {
+        replayGaps.incrementAndGet();
+        System.err.println("Replay gap in room " + roomId + ": after " + notice.path("after").asText()
+                + ", before " + notice.path("before").asText());
+    }
+
+    private static String idOf(ChatMessage msg) {
+        return msg.getServerMessageId() != null ? msg.getServerMessageId() : msg.getMessageId();
+    }
+
+    /**
+     * Server cursor format: epoch micros + "_" + message id.
+     */
+    private static String cursorOf(ChatMessage msg) {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, msg.getTimestamp()) + "_" + idOf(msg);
+    }
+
     /**
      * Extract messageId from server response JSON using Jackson
      */
@@ -281,6 +350,14 @@ public class WebSocketClientService {
         return connectionPool.size();
     }
 
+    public int getDuplicatesDropped() {
+        return duplicatesDropped.get();
+    }
+
+    public int getReplayGaps() {
+        return replayGaps.get();
+    }
+
     @PreDestroy
     public void cleanup() {
         scheduler.shutdown();
@@ -0,0 +1,202 @@
+package com.chatflow.server.analytics;
+
+import com.chatflow.server.database.PersistentMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process analytics over the message stream, in bounded memory:
+ * per-room message rates over sliding windows, unique users per room and
+ * window (HyperLogLog per minute, merged on read), and top users
+ * (Space-Saving). Fed by AnalyticsConsumer, so reads never touch the DB.
+ *
+ * Windows are on this node's clock at arrival, not the client timestamp.
+ */
+@Service
+public class AnalyticsService {
+
+    private static final int RATE_HORIZON_SECONDS = 300;
+
+    /**
+     * One HLL per minute in a ring; a window's uniques are the union of its minutes.
+     */
+    private final class RoomStats {
+        final SlidingWindowCounter rate = new SlidingWindowCounter(RATE_HORIZON_SECONDS);
+        final HyperLogLog[] minuteSketches = new HyperLogLog[uniqueWindowMinutes];
+        final long[] sketchMinutes = new long[uniqueWindowMinutes];
+
+        RoomStats() {
+            for (int i = 0; i < minuteSketches.length; i++) {
+                minuteSketches[i] = new HyperLogLog(sketchPrecision);
+                sketchMinutes[i] = -1;
+            }
+        }
+
+        synchronized void addUser(long userHash, long nowMinute) {
+            int index = (int) (nowMinute % minuteSketches.length);
+            if (sketchMinutes[index] != nowMinute) {
+                sketchMinutes[index] = nowMinute;
+                minuteSketches[index].clear();
+            }
+            minuteSketches[index].add(userHash);
+        }
+
+        synchronized long uniques(int windowMinutes, long nowMinute) {
+            HyperLogLog union = new HyperLogLog(sketchPrecision);
+            for (int i = 0; i < minuteSketches.length; i++) {
+                if (sketchMinutes[i] > nowMinute - windowMinutes && sketchMinutes[i] <= nowMinute) {
+                    union.merge(minuteSketches[i]);
+                }
+            }
+            return union.estimate();
+        }
+    }
+
+    private final Map<String, RoomStats> rooms = new ConcurrentHashMap<>();
+    private final Counter recorded;
+    private final Counter droppedRooms;
+    private volatile SpaceSaving<Integer> topUsers;
+    private SpaceSaving<Integer> previousTopUsers;
+    private volatile long topUsersWindowStart = System.currentTimeMillis();
+
+    @Value("${analytics.max-rooms:100}")
+    private int maxRooms;
+
+    @Value("${analytics.unique-window.minutes:15}")
+    private int uniqueWindowMinutes;
+
+    @Value("${analytics.hll.precision:11}")
+    private int sketchPrecision;
+
+    @Value("${analytics.top-users.capacity:200}")
+    private int topUsersCapacity;
+
+    // Heavy hitters restart every window; the previous window is kept for reads
+    @Value("${analytics.top-users.window.minutes:60}")
+    private long topUsersWindowMinutes;
+
+    public AnalyticsService(MeterRegistry meterRegistry) {
+        this.recorded = Counter.builder("chatflow.analytics.recorded")
+                .description("Messages fed into the analytics stage")
+                .register(meterRegistry);
+        this.droppedRooms = Counter.builder("chatflow.analytics.rooms.dropped")
+                .description("Messages for rooms beyond analytics.max-rooms")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        topUsers = new SpaceSaving<>(topUsersCapacity);
+        previousTopUsers = new SpaceSaving<>(topUsersCapacity);
+        long perRoomBytes = (long) uniqueWindowMinutes * (1L << sketchPrecision) + RATE_HORIZON_SECONDS * 16L;
+        System.out.println("Analytics: up to " + maxRooms + " rooms, ~" + perRoomBytes / 1024 + " KB per room, top "
+                + topUsersCapacity + " users per " + topUsersWindowMinutes + " min");
+    }
+
+    public void record(PersistentMessage message) {
+        long nowMillis = System.currentTimeMillis();
+        RoomStats stats = rooms.get(message.getRoomId());
+        if (stats == null) {
+            if (rooms.size() >= maxRooms) {
+                droppedRooms.increment();
+                return;
+            }
+            stats = rooms.computeIfAbsent(message.getRoomId(), id -> new RoomStats());
+        }
+        stats.rate.increment(nowMillis / 1000);
+        stats.addUser(HyperLogLog.hash(message.getUserId()), nowMillis / 60_000);
+
+        // Volatile read on the hot path; the lock is only taken to rotate
+        if (nowMillis - topUsersWindowStart >= topUsersWindowMinutes * 60_000) {
+            rotateTopUsers(nowMillis);
+        }
+        topUsers.offer(message.getUserId());
+        recorded.increment();
+    }
+
+    private synchronized void rotateTopUsers(long nowMillis) {
+        if (nowMillis - topUsersWindowStart < topUsersWindowMinutes * 60_000) {
+            return;
+        }
+        SpaceSaving<Integer> finished = topUsers;
+        previousTopUsers.clear();
+        topUsers = previousTopUsers;
+        previousTopUsers = finished;
+        topUsersWindowStart = nowMillis;
+    }
+
+    public Map<String, Object> roomSummary(String roomId) {
+        RoomStats stats = rooms.get(roomId);
+        if (stats == null) {
+            return null;
+        }
+        long nowMillis = System.currentTimeMillis();
+        long nowSecond = nowMillis / 1000;
+        long nowMinute = nowMillis / 60_000;
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("roomId", roomId);
+        Map<String, Object> rates = new LinkedHashMap<>();
+        rates.put("10s", stats.rate.sum(10, nowSecond) / 10.0);
+        rates.put("1m", stats.rate.sum(60, nowSecond) / 60.0);
+        rates.put("5m", stats.rate.sum(300, nowSecond) / 300.0);
+        summary.put("messagesPerSecond", rates);
+        Map<String, Object> uniques = new LinkedHashMap<>();
+        uniques.put("1m", stats.uniques(1, nowMinute));
+        uniques.put("5m", stats.uniques(Math.min(5, uniqueWindowMinutes), nowMinute));
+        uniques.put(uniqueWindowMinutes + "m", stats.uniques(uniqueWindowMinutes, nowMinute));
+        summary.put("uniqueUsers", uniques);
+        return summary;
+    }
+
+    /**
+     * Rooms ordered by their 1-minute rate, hottest first.
+     */
+    public List<Map<String, Object>> rooms() {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (String roomId : new TreeMap<>(rooms).keySet()) {
+            result.add(roomSummary(roomId));
+        }
+        result.sort((a, b) -> Double.compare(oneMinuteRate(b), oneMinuteRate(a)));
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static double oneMinuteRate(Map<String, Object> summary) {
+        return (Double) ((Map<String, Object>) summary.get("messagesPerSecond")).get("1m");
+    }
+
+    public Map<String, Object> topUsers(int limit, boolean previousWindow) {
+        SpaceSaving<Integer> sketch;
+        long windowStart;
+        synchronized (this) {
+            sketch = previousWindow ? previousTopUsers : topUsers;
+            windowStart = previousWindow ? topUsersWindowStart - topUsersWindowMinutes * 60_000 : topUsersWindowStart;
+        }
+        List<Map<String, Object>> users = new ArrayList<>();
+        for (SpaceSaving.Counter<Integer> counter : sketch.top(limit)) {
+            Map<String, Object> user = new LinkedHashMap<>();
+            user.put("userId", counter.getItem());
+            user.put("messages", counter.getCount());
+            user.put("maxOvercount", counter.getError());
+            users.add(user);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("windowStart", Instant.ofEpochMilli(windowStart).toString());
+        result.put("windowMinutes", topUsersWindowMinutes);
+        result.put("totalMessages", sketch.getTotal());
+        result.put("users", users);
+        return result;
+    }
+}
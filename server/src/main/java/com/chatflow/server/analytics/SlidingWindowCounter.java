@@ -0,0 +1,44 @@
+package com.chatflow.server.analytics;
+
+/**
+ * Event counts in one-second buckets over a fixed horizon. A bucket is
+ * reused once it falls out of the horizon, so memory is constant.
+ * Thread-safe.
+ */
+public class SlidingWindowCounter {
+
+    private final long[] counts;
+    private final long[] seconds;
+
+    public SlidingWindowCounter(int horizonSeconds) {
+        this.counts = new long[horizonSeconds];
+        this.seconds = new long[horizonSeconds];
+    }
+
+    public synchronized void increment(long nowSecond) {
+        int index = (int) (nowSecond % counts.length);
+        if (seconds[index] != nowSecond) {
+            seconds[index] = nowSecond;
+            counts[index] = 0;
+        }
+        counts[index]++;
+    }
+
+    /**
+     * Events in the last windowSeconds, including the current (partial) second.
+     */
+    public synchronized long sum(int windowSeconds, long nowSecond) {
+        int window = Math.min(windowSeconds, counts.length);
+        long sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (seconds[i] > nowSecond - window && seconds[i] <= nowSecond) {
+                sum += counts[i];
+            }
+        }
+        return sum;
+    }
+
+    public int getHorizonSeconds() {
+        return counts.length;
+    }
+}
@@ -0,0 +1,185 @@
+package com.chatflow.server.analytics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving heavy hitters: at most capacity counters. A new item takes
+ * over the smallest counter and inherits its count as error, so every item
+ * with a true frequency above total/capacity is guaranteed to be tracked.
+ * Kept as a stream-summary (counters grouped in count buckets), so both hits
+ * and replacements are O(1). Thread-safe.
+ */
+public class SpaceSaving<T> {
+
+    public static final class Counter<T> {
+        private final T item;
+        private final long count;
+        private final long error;
+
+        Counter(T item, long count, long error) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+        }
+
+        public T getItem() { return item; }
+        public long getCount() { return count; }
+        /** Upper bound on the overestimate; count - error is a guaranteed lower bound. */
+        public long getError() { return error; }
+    }
+
+    /**
+     * Counters with the same count share a bucket; buckets form a list in
+     * ascending count order, so the minimum is always the head bucket.
+     */
+    private static final class Bucket<T> {
+        final long count;
+        Bucket<T> prev;
+        Bucket<T> next;
+        Node<T> nodes;
+
+        Bucket(long count) {
+            this.count = count;
+        }
+    }
+
+    private static final class Node<T> {
+        T item;
+        long error;
+        Bucket<T> bucket;
+        Node<T> prev;
+        Node<T> next;
+    }
+
+    private final int capacity;
+    private final Map<T, Node<T>> counters;
+    private Bucket<T> smallest;
+    private Bucket<T> largest;
+    private long total;
+
+    public SpaceSaving(int capacity) {
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+    }
+
+    /**
+     * O(1): a hit moves the counter to the next bucket up; a miss with a full
+     * table takes over a counter of the smallest bucket.
+     */
+    public synchronized void offer(T item) {
+        total++;
+        Node<T> node = counters.get(item);
+        if (node != null) {
+            increment(node);
+            return;
+        }
+        if (counters.size() < capacity) {
+            node = new Node<>();
+            node.item = item;
+            Bucket<T> ones = smallest;
+            if (ones == null || ones.count != 1) {
+                ones = new Bucket<>(1);
+                linkAfter(null, ones);
+            }
+            attach(node, ones);
+            counters.put(item, node);
+            return;
+        }
+        node = smallest.nodes;
+        counters.remove(node.item);
+        node.item = item;
+        node.error = smallest.count;
+        counters.put(item, node);
+        increment(node);
+    }
+
+    public synchronized List<Counter<T>> top(int n) {
+        List<Counter<T>> result = new ArrayList<>(Math.min(n, counters.size()));
+        for (Bucket<T> bucket = largest; bucket != null && result.size() < n; bucket = bucket.prev) {
+            for (Node<T> node = bucket.nodes; node != null && result.size() < n; node = node.next) {
+                result.add(new Counter<>(node.item, bucket.count, node.error));
+            }
+        }
+        return result;
+    }
+
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    public synchronized void clear() {
+        counters.clear();
+        smallest = null;
+        largest = null;
+        total = 0;
+    }
+
+    private void increment(Node<T> node) {
+        Bucket<T> from = node.bucket;
+        Bucket<T> to = from.next;
+        if (to == null || to.count != from.count + 1) {
+            to = new Bucket<>(from.count + 1);
+            linkAfter(from, to);
+        }
+        detach(node);
+        attach(node, to);
+    }
+
+    private void attach(Node<T> node, Bucket<T> bucket) {
+        node.bucket = bucket;
+        node.prev = null;
+        node.next = bucket.nodes;
+        if (bucket.nodes != null) {
+            bucket.nodes.prev = node;
+        }
+        bucket.nodes = node;
+    }
+
+    /**
+     * Unlinks the node from its bucket, and the bucket from the list once empty.
+     */
+    private void detach(Node<T> node) {
+        Bucket<T> bucket = node.bucket;
+        if (node.prev != null) {
+            node.prev.next = node.next;
+        } else {
+            bucket.nodes = node.next;
+        }
+        if (node.next != null) {
+            node.next.prev = node.prev;
+        }
+        if (bucket.nodes == null) {
+            if (bucket.prev != null) {
+                bucket.prev.next = bucket.next;
+            } else {
+                smallest = bucket.next;
+            }
+            if (bucket.next != null) {
+                bucket.next.prev = bucket.prev;
+            } else {
+                largest = bucket.prev;
+            }
+        }
+    }
+
+    /**
+     * Inserts bucket after the given one, or at the head when after is null.
+     */
+    private void linkAfter(Bucket<T> after, Bucket<T> bucket) {
+        bucket.prev = after;
+        bucket.next = after != null ? after.next : smallest;
+        if (bucket.next != null) {
+            bucket.next.prev = bucket;
+        } else {
+            largest = bucket;
+        }
+        if (after != null) {
+            after.next = bucket;
+        } else {
+            smallest = bucket;
+        }
+    }
+}
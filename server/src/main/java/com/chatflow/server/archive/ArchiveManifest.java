@@ -0,0 +1,99 @@
+package com.chatflow.server.archive;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The list of archived segments, kept as manifest.json next to them. It is
+ * rewritten through a temp file and an atomic rename, so a crash leaves either
+ * the old or the new manifest; a segment file that isn't listed is ignored.
+ */
+public class ArchiveManifest {
+
+    static final String FILE_NAME = "manifest.json";
+
+    /**
+     * One archived time range [from, to) of the messages table.
+     */
+    public static class Segment {
+        private String file;
+        private String source;
+        private Instant from;
+        private Instant to;
+        private Instant minTimestamp;
+        private Instant maxTimestamp;
+        private long rows;
+        private long bytes;
+        private long rawBytes;
+        private List<String> rooms = new ArrayList<>();
+        private Instant archivedAt;
+
+        public String getFile() { return file; }
+        public void setFile(String file) { this.file = file; }
+        public String getSource() { return source; }
+        public void setSource(String source) { this.source = source; }
+        public Instant getFrom() { return from; }
+        public void setFrom(Instant from) { this.from = from; }
+        public Instant getTo() { return to; }
+        public void setTo(Instant to) { this.to = to; }
+        public Instant getMinTimestamp() { return minTimestamp; }
+        public void setMinTimestamp(Instant minTimestamp) { this.minTimestamp = minTimestamp; }
+        public Instant getMaxTimestamp() { return maxTimestamp; }
+        public void setMaxTimestamp(Instant maxTimestamp) { this.maxTimestamp = maxTimestamp; }
+        public long getRows() { return rows; }
+        public void setRows(long rows) { this.rows = rows; }
+        public long getBytes() { return bytes; }
+        public void setBytes(long bytes) { this.bytes = bytes; }
+        public long getRawBytes() { return rawBytes; }
+        public void setRawBytes(long rawBytes) { this.rawBytes = rawBytes; }
+        public List<String> getRooms() { return rooms; }
+        public void setRooms(List<String> rooms) { this.rooms = rooms; }
+        public Instant getArchivedAt() { return archivedAt; }
+        public void setArchivedAt(Instant archivedAt) { this.archivedAt = archivedAt; }
+    }
+
+    private List<Segment> segments = new ArrayList<>();
+
+    public List<Segment> getSegments() { return segments; }
+    public void setSegments(List<Segment> segments) { this.segments = segments; }
+
+    static ArchiveManifest load(Path dir, ObjectMapper objectMapper) throws IOException {
+        Path path = dir.resolve(FILE_NAME);
+        if (!Files.exists(path)) {
+            return new ArchiveManifest();
+        }
+        return objectMapper.readValue(path.toFile(), ArchiveManifest.class);
+    }
+
+    /**
+     * Copy with the segment added, ordered by time range.
+     */
+    ArchiveManifest with(Segment segment) {
+        ArchiveManifest copy = new ArchiveManifest();
+        copy.segments = new ArrayList<>(segments);
+        copy.segments.add(segment);
+        copy.segments.sort(Comparator.comparing(Segment::getFrom));
+        return copy;
+    }
+
+    ArchiveManifest without(Segment segment) {
+        ArchiveManifest copy = new ArchiveManifest();
+        copy.segments = new ArrayList<>(segments);
+        copy.segments.remove(segment);
+        return copy;
+    }
+
+    void save(Path dir, ObjectMapper objectMapper) throws IOException {
+        Path temp = dir.resolve(FILE_NAME + ".tmp");
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(temp.toFile(), this);
+        Files.move(temp, dir.resolve(FILE_NAME), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,172 @@
+package com.chatflow.server.archive;
+
+import com.chatflow.server.archive.ArchiveSegmentWriter.BlockInfo;
+import com.chatflow.server.database.PersistentMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a segment written by ArchiveSegmentWriter. The block index is loaded
+ * once on open; blocks are read with positional reads, so one reader can be
+ * shared by concurrent history requests.
+ */
+public class ArchiveSegmentReader implements Closeable {
+
+    private final FileChannel channel;
+    private final Map<String, List<BlockInfo>> blocksByRoom = new LinkedHashMap<>();
+
+    public ArchiveSegmentReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer tail = read(size - 12, 12);
+            long footerOffset = tail.getLong();
+            if (tail.getInt() != ArchiveSegmentWriter.MAGIC) {
+                throw new IOException("Not an archive segment: " + path);
+            }
+            DataInputStream footer = new DataInputStream(new ByteArrayInputStream(
+                    read(footerOffset, (int) (size - 12 - footerOffset)).array()));
+            int count = footer.readInt();
+            for (int i = 0; i < count; i++) {
+                BlockInfo block = new BlockInfo(footer.readUTF(), footer.readInt(), footer.readLong(),
+                        footer.readLong(), footer.readLong(), footer.readInt());
+                blocksByRoom.computeIfAbsent(block.roomId, k -> new ArrayList<>()).add(block);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * A room's blocks, oldest first.
+     */
+    List<BlockInfo> blocks(String roomId) {
+        return blocksByRoom.getOrDefault(roomId, Collections.emptyList());
+    }
+
+    /**
+     * Decodes a whole block, rows in (timestamp, message_id) order.
+     */
+    List<PersistentMessage> readBlock(BlockInfo block) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(read(block.offset, block.length).array()));
+        int rows = in.readInt();
+        DataInputStream[] columns = new DataInputStream[ArchiveSegmentWriter.COLUMN_COUNT];
+        Inflater inflater = new Inflater();
+        try {
+            for (int i = 0; i < columns.length; i++) {
+                byte[] raw = new byte[in.readInt()];
+                byte[] compressed = new byte[in.readInt()];
+                in.readFully(compressed);
+                inflater.reset();
+                inflater.setInput(compressed);
+                if (inflater.inflate(raw) != raw.length) {
+                    throw new IOException("Truncated column " + i + " in block of " + block.roomId);
+                }
+                columns[i] = new DataInputStream(new ByteArrayInputStream(raw));
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt block of " + block.roomId, e);
+        } finally {
+            inflater.end();
+        }
+
+        String[] users = readDictionary(columns[3]);
+        String[] types = readDictionary(columns[4]);
+        String[] servers = readDictionary(columns[5]);
+        String[] ips = readDictionary(columns[6]);
+
+        List<PersistentMessage> messages = new ArrayList<>(rows);
+        long micros = 0;
+        for (int r = 0; r < rows; r++) {
+            micros += unzigzag(readVarLong(columns[0]));
+            UUID messageId = new UUID(columns[1].readLong(), columns[1].readLong());
+            UUID clientMessageId = columns[2].readByte() == 0
+                    ? messageId
+                    : new UUID(columns[2].readLong(), columns[2].readLong());
+            String user = users[(int) readVarLong(columns[3])];
+            int separator = user.indexOf(':');
+            messages.add(new PersistentMessage(
+                    messageId,
+                    clientMessageId,
+                    block.roomId,
+                    Integer.parseInt(user.substring(0, separator)),
+                    user.substring(separator + 1),
+                    readString(columns[7]),
+                    types[(int) readVarLong(columns[4])],
+                    Instant.EPOCH.plus(micros, ChronoUnit.MICROS),
+                    servers[(int) readVarLong(columns[5])],
+                    ips[(int) readVarLong(columns[6])]
+            ));
+        }
+        return messages;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of segment");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static String[] readDictionary(DataInputStream in) throws IOException {
+        String[] values = new String[(int) readVarLong(in)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readString(in);
+        }
+        return values;
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = (int) unzigzag(readVarLong(in));
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
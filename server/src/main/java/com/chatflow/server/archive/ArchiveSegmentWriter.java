@@ -0,0 +1,267 @@
+package com.chatflow.server.archive;
+
+import com.chatflow.server.database.PersistentMessage;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.Deflater;
+
+/**
+ * Writes an archive segment: rows grouped into blocks of one room each, in
+ * (room, timestamp, message_id) order. Inside a block every column is stored
+ * and deflated separately; timestamps are delta-encoded varints and the
+ * repetitive string columns (user, type, server, client ip) are dictionary
+ * encoded per block. A footer indexes the blocks by room and time range, so
+ * a history read only inflates the blocks it needs.
+ *
+ * Layout: [block]* [footer: count, (room, rows, minMicros, maxMicros, offset, length)*]
+ * [footer offset: long] [MAGIC: int]
+ */
+public class ArchiveSegmentWriter implements Closeable {
+
+    static final int MAGIC = 0x43464131; // "CFA1"
+    static final int COLUMN_COUNT = 8;
+
+    static final class BlockInfo {
+        final String roomId;
+        final int rows;
+        final long minMicros;
+        final long maxMicros;
+        final long offset;
+        final int length;
+
+        BlockInfo(String roomId, int rows, long minMicros, long maxMicros, long offset, int length) {
+            this.roomId = roomId;
+            this.rows = rows;
+            this.minMicros = minMicros;
+            this.maxMicros = maxMicros;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final FileOutputStream file;
+    private final DataOutputStream out;
+    private final int blockRows;
+    private final List<BlockInfo> blocks = new ArrayList<>();
+    private final List<PersistentMessage> pending = new ArrayList<>();
+    private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+    private long position;
+    private long rows;
+
+    public ArchiveSegmentWriter(Path path, int blockRows) throws IOException {
+        this.file = new FileOutputStream(path.toFile());
+        this.out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16));
+        this.blockRows = blockRows;
+    }
+
+    /**
+     * Rows must arrive ordered by room, then timestamp and message id.
+     */
+    public void add(PersistentMessage message) throws IOException {
+        if (!pending.isEmpty()
+                && (pending.size() >= blockRows || !pending.get(0).getRoomId().equals(message.getRoomId()))) {
+            flushBlock();
+        }
+        pending.add(message);
+        rows++;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getBytes() {
+        return position;
+    }
+
+    public List<String> getRooms() {
+        List<String> rooms = new ArrayList<>();
+        for (BlockInfo block : blocks) {
+            if (rooms.isEmpty() || !rooms.get(rooms.size() - 1).equals(block.roomId)) {
+                rooms.add(block.roomId);
+            }
+        }
+        return rooms;
+    }
+
+    private void flushBlock() throws IOException {
+        ByteArrayOutputStream[] buffers = new ByteArrayOutputStream[COLUMN_COUNT];
+        DataOutputStream[] columns = new DataOutputStream[COLUMN_COUNT];
+        for (int i = 0; i < COLUMN_COUNT; i++) {
+            buffers[i] = new ByteArrayOutputStream();
+            columns[i] = new DataOutputStream(buffers[i]);
+        }
+        Dictionary users = new Dictionary();
+        Dictionary types = new Dictionary();
+        Dictionary servers = new Dictionary();
+        Dictionary ips = new Dictionary();
+
+        long previousMicros = 0;
+        long minMicros = Long.MAX_VALUE;
+        long maxMicros = Long.MIN_VALUE;
+        for (PersistentMessage msg : pending) {
+            long micros = toMicros(msg.getTimestamp());
+            minMicros = Math.min(minMicros, micros);
+            maxMicros = Math.max(maxMicros, micros);
+            writeVarLong(columns[0], zigzag(micros - previousMicros));
+            previousMicros = micros;
+
+            columns[1].writeLong(msg.getMessageId().getMostSignificantBits());
+            columns[1].writeLong(msg.getMessageId().getLeastSignificantBits());
+
+            UUID clientId = msg.getClientMessageId();
+            if (clientId == null || clientId.equals(msg.getMessageId())) {
+                columns[2].writeByte(0);
+            } else {
+                columns[2].writeByte(1);
+                columns[2].writeLong(clientId.getMostSignificantBits());
+                columns[2].writeLong(clientId.getLeastSignificantBits());
+            }
+
+            writeVarLong(columns[3], users.index(msg.getUserId() + ":" + msg.getUsername()));
+            writeVarLong(columns[4], types.index(msg.getMessageType()));
+            writeVarLong(columns[5], servers.index(msg.getServerId()));
+            writeVarLong(columns[6], ips.index(msg.getClientIp()));
+            writeString(columns[7], msg.getMessage());
+        }
+
+        // Dictionaries go first in their column so the reader can decode in one pass
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        DataOutputStream blockOut = new DataOutputStream(block);
+        blockOut.writeInt(pending.size());
+        for (int i = 0; i < COLUMN_COUNT; i++) {
+            byte[] raw;
+            if (i >= 3 && i <= 6) {
+                ByteArrayOutputStream withDictionary = new ByteArrayOutputStream();
+                DataOutputStream dictionaryOut = new DataOutputStream(withDictionary);
+                (i == 3 ? users : i == 4 ? types : i == 5 ? servers : ips).writeTo(dictionaryOut);
+                buffers[i].writeTo(withDictionary);
+                raw = withDictionary.toByteArray();
+            } else {
+                raw = buffers[i].toByteArray();
+            }
+            byte[] compressed = deflate(raw);
+            blockOut.writeInt(raw.length);
+            blockOut.writeInt(compressed.length);
+            blockOut.write(compressed);
+        }
+
+        byte[] bytes = block.toByteArray();
+        out.write(bytes);
+        blocks.add(new BlockInfo(pending.get(0).getRoomId(), pending.size(), minMicros, maxMicros, position, bytes.length));
+        position += bytes.length;
+        pending.clear();
+    }
+
+    private byte[] deflate(byte[] raw) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(chunk);
+            compressed.write(chunk, 0, n);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Flushes the last block, writes the footer and forces the file to disk.
+     */
+    public void finish() throws IOException {
+        if (!pending.isEmpty()) {
+            flushBlock();
+        }
+        long footerOffset = position;
+        out.writeInt(blocks.size());
+        for (BlockInfo block : blocks) {
+            out.writeUTF(block.roomId);
+            out.writeInt(block.rows);
+            out.writeLong(block.minMicros);
+            out.writeLong(block.maxMicros);
+            out.writeLong(block.offset);
+            out.writeInt(block.length);
+        }
+        out.writeLong(footerOffset);
+        out.writeInt(MAGIC);
+        out.flush();
+        position = file.getChannel().position();
+        file.getFD().sync();
+    }
+
+    @Override
+    public void close() throws IOException {
+        deflater.end();
+        out.close();
+    }
+
+    static long toMicros(Instant timestamp) {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, timestamp);
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Length-prefixed UTF-8; -1 (as zigzag) for null.
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarLong(out, zigzag(-1));
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, zigzag(bytes.length));
+        out.write(bytes);
+    }
+
+    /**
+     * Per-block string dictionary; entries are written in index order.
+     */
+    private static final class Dictionary {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int index(String value) {
+            String key = value != null ? value : "\u0000null";
+            Integer index = indexes.get(key);
+            if (index == null) {
+                index = values.size();
+                indexes.put(key, index);
+                values.add(value);
+            }
+            return index;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            writeVarLong(out, values.size());
+            for (String value : values) {
+                writeString(out, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.chatflow.server.archive;
+
+import com.chatflow.server.archive.ArchiveManifest.Segment;
+import com.chatflow.server.database.DimensionCache;
+import com.chatflow.server.database.PartitionManager;
+import com.chatflow.server.database.PersistentMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves messages older than archive.after.days out of PostgreSQL into
+ * segments on local disk, one segment per partition-sized time range.
+ *
+ * Partitioned table: the partition is detached first, so history reads stop
+ * seeing it in the database, then archived and dropped once the segment is in
+ * the manifest. A detached partition left behind by a crash is picked up on
+ * the next run. Flat table: the range is read and deleted in one
+ * REPEATABLE READ transaction, so exactly the archived rows are deleted.
+ */
+@Component
+public class ArchiveService {
+
+    private static final String PARTITION_PREFIX = "messages_p";
+
+    private static final String SELECT_SQL =
+            "SELECT message_id, client_message_id, room_id, user_id, username, message, " +
+                    "message_type, timestamp, server_id, client_ip, pg_column_size(m.*) FROM %s m ";
+
+    private final DataSource dataSource;
+    private final PartitionManager partitionManager;
+    private final DimensionCache dimensions;
+    private final ArchiveStore store;
+    private final Counter rowsArchived;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @Value("${archive.after.days:30}")
+    private int afterDays;
+
+    @Value("${archive.interval.ms:3600000}")
+    private long intervalMs;
+
+    @Value("${archive.block-rows:8192}")
+    private int blockRows;
+
+    @Value("${archive.fetch-size:5000}")
+    private int fetchSize;
+
+    public ArchiveService(DataSource dataSource, PartitionManager partitionManager, DimensionCache dimensions,
+                          ArchiveStore store, MeterRegistry meterRegistry) {
+        this.dataSource = dataSource;
+        this.partitionManager = partitionManager;
+        this.dimensions = dimensions;
+        this.store = store;
+        this.rowsArchived = Counter.builder("chatflow.archive.rows.archived")
+                .description("Rows moved from the database into archived segments")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!store.isEnabled()) {
+            return;
+        }
+        if (dimensions.isEnabled()) {
+            System.out.println("⚠️ Archiving is not supported with the normalized schema; disabled");
+            return;
+        }
+        scheduler.scheduleWithFixedDelay(this::run, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        System.out.println("✓ Archiving messages older than " + afterDays + " days every " + intervalMs + "ms");
+    }
+
+    public void run() {
+        try {
+            LocalDateTime cutoff = partitionManager.floor(LocalDateTime.now().minusDays(afterDays));
+            if (partitionManager.isEnabled()) {
+                archivePartitions(cutoff);
+            } else {
+                archiveFlat(cutoff);
+            }
+        } catch (Exception e) {
+            System.err.println("❌ Archiving failed: " + e.getMessage());
+        }
+    }
+
+    private void archivePartitions(LocalDateTime cutoff) throws SQLException, IOException {
+        String cutoffName = partitionManager.partitionName(cutoff);
+
+        // Left over from a run that died between DETACH and DROP
+        List<String> detached = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "SELECT relname FROM pg_class WHERE relkind = 'r' AND NOT relispartition " +
+                             "AND relname LIKE 'messages\\_p%' ORDER BY relname");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                if (isExpired(rs.getString(1), cutoffName)) {
+                    detached.add(rs.getString(1));
+                }
+            }
+            conn.commit();
+        }
+        for (String partition : detached) {
+            archivePartition(partition);
+        }
+
+        for (String partition : partitionManager.listPartitions()) {
+            if (!isExpired(partition, cutoffName)) {
+                continue;
+            }
+            try (Connection conn = dataSource.getConnection();
+                 Statement stmt = conn.createStatement()) {
+                stmt.execute("ALTER TABLE messages DETACH PARTITION " + partition);
+                conn.commit();
+            }
+            archivePartition(partition);
+        }
+    }
+
+    /**
+     * Names sort chronologically; legacy/default partitions don't follow the scheme.
+     */
+    private static boolean isExpired(String partition, String cutoffName) {
+        return partition.startsWith(PARTITION_PREFIX)
+                && partition.length() == cutoffName.length()
+                && partition.compareTo(cutoffName) < 0;
+    }
+
+    private void archivePartition(String partition) throws SQLException, IOException {
+        boolean archived = false;
+        for (Segment segment : store.getSegments()) {
+            archived |= partition.equals(segment.getSource());
+        }
+        LocalDateTime from = LocalDateTime.parse(partition.substring(PARTITION_PREFIX.length())
+                        + (partitionManager.isHourly() ? "" : "00"),
+                DateTimeFormatter.ofPattern("yyyyMMddHH"));
+
+        try (Connection conn = dataSource.getConnection()) {
+            if (!archived) {
+                Segment segment = writeSegment(conn, partition, from, partitionManager.next(from), false);
+                conn.commit();
+                if (segment != null) {
+                    store.addSegment(segment);
+                }
+            }
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("DROP TABLE " + partition);
+                conn.commit();
+            }
+        }
+        System.out.println("🧊 Archived and dropped partition " + partition);
+    }
+
+    private void archiveFlat(LocalDateTime cutoff) throws SQLException, IOException {
+        while (true) {
+            LocalDateTime oldest;
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement ps = conn.prepareStatement("SELECT MIN(timestamp) FROM messages WHERE timestamp < ?")) {
+                ps.setTimestamp(1, Timestamp.valueOf(cutoff));
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    Timestamp min = rs.getTimestamp(1);
+                    oldest = min != null ? min.toLocalDateTime() : null;
+                }
+                conn.commit();
+            }
+            if (oldest == null) {
+                return;
+            }
+            LocalDateTime from = partitionManager.floor(oldest);
+            if (!archiveRange(from, partitionManager.next(from))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Archives and deletes [from, to) of the flat table. False if nothing was deleted.
+     */
+    private boolean archiveRange(LocalDateTime from, LocalDateTime to) throws SQLException, IOException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            Segment segment = writeSegment(conn, "messages", from, to, true);
+            if (segment == null) {
+                conn.rollback();
+                return false;
+            }
+            store.addSegment(segment);
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "DELETE FROM messages WHERE timestamp >= ? AND timestamp < ?")) {
+                ps.setTimestamp(1, Timestamp.valueOf(from));
+                ps.setTimestamp(2, Timestamp.valueOf(to));
+                int deleted = ps.executeUpdate();
+                if (deleted != segment.getRows()) {
+                    throw new SQLException("Deleted " + deleted + " rows but archived " + segment.getRows());
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                store.removeSegment(segment);
+                Files.deleteIfExists(store.getDir().resolve(segment.getFile()));
+                throw e;
+            }
+            System.out.println("🧊 Archived " + segment.getRows() + " messages " + from + " .. " + to);
+            return true;
+        }
+    }
+
+    /**
+     * Streams the table (or range) into a new segment file. Returns null when
+     * there were no rows.
+     */
+    private Segment writeSegment(Connection conn, String table, LocalDateTime from, LocalDateTime to,
+                                 boolean filterRange) throws SQLException, IOException {
+        String name = "messages-" + from.format(DateTimeFormatter.ofPattern("yyyyMMddHH"))
+                + "-" + System.currentTimeMillis() + ".cfa";
+        Path dir = store.getDir();
+        Path temp = dir.resolve(name + ".tmp");
+        String sql = String.format(SELECT_SQL, table)
+                + (filterRange ? "WHERE timestamp >= ? AND timestamp < ? " : "")
+                + "ORDER BY room_id, timestamp, message_id";
+
+        long rawBytes = 0;
+        Instant min = null;
+        Instant max = null;
+        Segment segment = new Segment();
+        try (ArchiveSegmentWriter writer = new ArchiveSegmentWriter(temp, blockRows);
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setFetchSize(fetchSize);
+            if (filterRange) {
+                ps.setTimestamp(1, Timestamp.valueOf(from));
+                ps.setTimestamp(2, Timestamp.valueOf(to));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    UUID messageId = rs.getObject(1, UUID.class);
+                    UUID clientMessageId = rs.getObject(2, UUID.class);
+                    Instant timestamp = rs.getTimestamp(8).toInstant();
+                    writer.add(new PersistentMessage(
+                            messageId,
+                            clientMessageId != null ? clientMessageId : messageId,
+                            rs.getString(3),
+                            rs.getInt(4),
+                            rs.getString(5),
+                            rs.getString(6),
+                            rs.getString(7),
+                            timestamp,
+                            rs.getString(9),
+                            rs.getString(10)
+                    ));
+                    rawBytes += rs.getLong(11);
+                    min = min == null || timestamp.isBefore(min) ? timestamp : min;
+                    max = max == null || timestamp.isAfter(max) ? timestamp : max;
+                }
+            }
+            writer.finish();
+            segment.setRows(writer.getRows());
+            segment.setBytes(writer.getBytes());
+            segment.setRooms(writer.getRooms());
+        } catch (SQLException | IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        if (segment.getRows() == 0) {
+            Files.deleteIfExists(temp);
+            return null;
+        }
+        Files.move(temp, dir.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+        segment.setFile(name);
+        segment.setSource(table);
+        segment.setFrom(from.atZone(ZoneId.systemDefault()).toInstant());
+        segment.setTo(to.atZone(ZoneId.systemDefault()).toInstant());
+        segment.setMinTimestamp(min);
+        segment.setMaxTimestamp(max);
+        segment.setRawBytes(rawBytes);
+        segment.setArchivedAt(Instant.now());
+        rowsArchived.increment(segment.getRows());
+        return segment;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
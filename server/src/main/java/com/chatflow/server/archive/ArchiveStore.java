@@ -0,0 +1,282 @@
+package com.chatflow.server.archive;
+
+import com.chatflow.server.archive.ArchiveManifest.Segment;
+import com.chatflow.server.archive.ArchiveSegmentWriter.BlockInfo;
+import com.chatflow.server.database.MessageCursor;
+import com.chatflow.server.database.PersistentMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The cold tier: archived segments on local disk plus their manifest. History
+ * reads come here for the part of a room's timeline that has left the
+ * database; the manifest's time ranges and each segment's block index narrow
+ * a read down to the few blocks that can hold the page.
+ */
+@Component
+public class ArchiveStore {
+
+    private final ObjectMapper objectMapper;
+    private final Timer queryLatency;
+    private final Map<String, ArchiveSegmentReader> readers = new ConcurrentHashMap<>();
+    private volatile ArchiveManifest manifest = new ArchiveManifest();
+    private Path dir;
+
+    @Value("${archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${archive.dir:archive}")
+    private String dirName;
+
+    public ArchiveStore(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.queryLatency = Timer.builder("chatflow.archive.query.latency")
+                .description("History page reads served from archived segments")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        Gauge.builder("chatflow.archive.rows", this, s -> s.totals()[0])
+                .description("Rows held in archived segments")
+                .register(meterRegistry);
+        Gauge.builder("chatflow.archive.bytes", this, s -> s.totals()[1])
+                .description("Size of the archived segments on disk")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void load() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        dir = Paths.get(dirName).toAbsolutePath();
+        Files.createDirectories(dir);
+        manifest = ArchiveManifest.load(dir, objectMapper);
+        System.out.println("🧊 Archive at " + dir + ": " + manifest.getSegments().size() + " segments, "
+                + (long) totals()[0] + " rows");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    Path getDir() {
+        return dir;
+    }
+
+    public List<Segment> getSegments() {
+        return manifest.getSegments();
+    }
+
+    synchronized void addSegment(Segment segment) throws IOException {
+        ArchiveManifest updated = manifest.with(segment);
+        updated.save(dir, objectMapper);
+        manifest = updated;
+    }
+
+    synchronized void removeSegment(Segment segment) throws IOException {
+        ArchiveManifest updated = manifest.without(segment);
+        updated.save(dir, objectMapper);
+        manifest = updated;
+        ArchiveSegmentReader reader = readers.remove(segment.getFile());
+        if (reader != null) {
+            reader.close();
+        }
+    }
+
+    /**
+     * Whether archived rows of the room older than the cursor may exist
+     * (cursor == null: any archived rows of the room).
+     */
+    public boolean hasBefore(String roomId, MessageCursor cursor) {
+        for (Segment segment : manifest.getSegments()) {
+            if (segment.getRooms().contains(roomId)
+                    && (cursor == null || !segment.getMinTimestamp().isAfter(cursor.getTimestamp()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean hasAfter(String roomId, MessageCursor cursor) {
+        for (Segment segment : manifest.getSegments()) {
+            if (segment.getRooms().contains(roomId)
+                    && (cursor == null || !segment.getMaxTimestamp().isBefore(cursor.getTimestamp()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Newest archived timestamp of the room, or null.
+     */
+    public Instant newest(String roomId) {
+        Instant newest = null;
+        for (Segment segment : manifest.getSegments()) {
+            if (segment.getRooms().contains(roomId)
+                    && (newest == null || segment.getMaxTimestamp().isAfter(newest))) {
+                newest = segment.getMaxTimestamp();
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * Newest first, strictly before cursor (cursor == null: from the newest).
+     */
+    public int forEachBefore(String roomId, MessageCursor cursor, int limit, Consumer<PersistentMessage> consumer)
+            throws IOException {
+        long start = System.nanoTime();
+        long cursorMicros = cursor != null ? ArchiveSegmentWriter.toMicros(cursor.getTimestamp()) : Long.MAX_VALUE;
+        int rows = 0;
+        try {
+            List<Segment> segments = manifest.getSegments();
+            for (int s = segments.size() - 1; s >= 0 && rows < limit; s--) {
+                Segment segment = segments.get(s);
+                if (!segment.getRooms().contains(roomId)
+                        || (cursor != null && segment.getMinTimestamp().isAfter(cursor.getTimestamp()))) {
+                    continue;
+                }
+                ArchiveSegmentReader reader = reader(segment);
+                List<BlockInfo> blocks = reader.blocks(roomId);
+                for (int b = blocks.size() - 1; b >= 0 && rows < limit; b--) {
+                    if (blocks.get(b).minMicros > cursorMicros) {
+                        continue;
+                    }
+                    List<PersistentMessage> messages = reader.readBlock(blocks.get(b));
+                    for (int i = messages.size() - 1; i >= 0 && rows < limit; i--) {
+                        PersistentMessage message = messages.get(i);
+                        if (cursor == null || cursor.compareTo(message.getTimestamp(), message.getMessageId()) > 0) {
+                            consumer.accept(message);
+                            rows++;
+                        }
+                    }
+                }
+            }
+        } finally {
+            queryLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return rows;
+    }
+
+    /**
+     * Oldest first, strictly after cursor.
+     */
+    public int forEachAfter(String roomId, MessageCursor cursor, int limit, Consumer<PersistentMessage> consumer)
+            throws IOException {
+        long start = System.nanoTime();
+        long cursorMicros = ArchiveSegmentWriter.toMicros(cursor.getTimestamp());
+        int rows = 0;
+        try {
+            for (Segment segment : manifest.getSegments()) {
+                if (rows >= limit) {
+                    break;
+                }
+                if (!segment.getRooms().contains(roomId) || segment.getMaxTimestamp().isBefore(cursor.getTimestamp())) {
+                    continue;
+                }
+                ArchiveSegmentReader reader = reader(segment);
+                for (BlockInfo block : reader.blocks(roomId)) {
+                    if (rows >= limit) {
+                        break;
+                    }
+                    if (block.maxMicros < cursorMicros) {
+                        continue;
+                    }
+                    for (PersistentMessage message : reader.readBlock(block)) {
+                        if (rows >= limit) {
+                            break;
+                        }
+                        if (cursor.compareTo(message.getTimestamp(), message.getMessageId()) < 0) {
+                            consumer.accept(message);
+                            rows++;
+                        }
+                    }
+                }
+            }
+        } finally {
+            queryLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return rows;
+    }
+
+    private ArchiveSegmentReader reader(Segment segment) throws IOException {
+        try {
+            return readers.computeIfAbsent(segment.getFile(), file -> {
+                try {
+                    return new ArchiveSegmentReader(dir.resolve(file));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * [rows, bytes on disk, raw bytes in the database]
+     */
+    private double[] totals() {
+        double[] totals = new double[3];
+        for (Segment segment : manifest.getSegments()) {
+            totals[0] += segment.getRows();
+            totals[1] += segment.getBytes();
+            totals[2] += segment.getRawBytes();
+        }
+        return totals;
+    }
+
+    /**
+     * Size reduction against the row data the segments replaced, and archive read latency.
+     */
+    public Map<String, Object> report() {
+        double[] totals = totals();
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("enabled", enabled);
+        report.put("dir", dir != null ? dir.toString() : null);
+        report.put("segments", manifest.getSegments().size());
+        report.put("rows", (long) totals[0]);
+        report.put("bytes", (long) totals[1]);
+        report.put("rawBytes", (long) totals[2]);
+        report.put("compressionRatio", totals[1] > 0 ? Math.round(totals[2] / totals[1] * 100) / 100.0 : null);
+        report.put("bytesPerRow", totals[0] > 0 ? Math.round(totals[1] / totals[0] * 10) / 10.0 : null);
+        Map<String, Object> queries = new LinkedHashMap<>();
+        queries.put("count", queryLatency.count());
+        queries.put("meanMs", queryLatency.mean(TimeUnit.MILLISECONDS));
+        queries.put("maxMs", queryLatency.max(TimeUnit.MILLISECONDS));
+        report.put("queries", queries);
+        report.put("segmentList", manifest.getSegments());
+        return report;
+    }
+
+    @PreDestroy
+    public void close() {
+        for (ArchiveSegmentReader reader : readers.values()) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close archive segment: " + e.getMessage());
+            }
+        }
+        readers.clear();
+    }
+}
@@ -0,0 +1,47 @@
+package com.chatflow.server.controller;
+
+import com.chatflow.server.analytics.AnalyticsService;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Live traffic analytics, served from in-memory sketches (analytics.enabled).
+ * Unique-user counts are HyperLogLog estimates (~2% error at the default
+ * precision); top-user counts may overcount by at most maxOvercount.
+ */
+@RestController
+public class AnalyticsController {
+
+    private final AnalyticsService analytics;
+
+    public AnalyticsController(AnalyticsService analytics) {
+        this.analytics = analytics;
+    }
+
+    @GetMapping("/analytics/rooms")
+    public List<Map<String, Object>> rooms() {
+        return analytics.rooms();
+    }
+
+    @GetMapping("/analytics/rooms/{roomId}")
+    public Map<String, Object> room(@PathVariable String roomId) {
+        Map<String, Object> summary = analytics.roomSummary(roomId);
+        if (summary == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No recent traffic for " + roomId);
+        }
+        return summary;
+    }
+
+    @GetMapping("/analytics/top-users")
+    public Map<String, Object> topUsers(@RequestParam(defaultValue = "10") int limit,
+                                        @RequestParam(defaultValue = "false") boolean previous) {
+        return analytics.topUsers(Math.max(1, Math.min(limit, 100)), previous);
+    }
+}
@@ -0,0 +1,26 @@
+package com.chatflow.server.controller;
+
+import com.chatflow.server.archive.ArchiveStore;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Cold-tier report: archived segments, size against the database rows they
+ * replaced, and archive read latency.
+ */
+@RestController
+public class ArchiveController {
+
+    private final ArchiveStore archive;
+
+    public ArchiveController(ArchiveStore archive) {
+        this.archive = archive;
+    }
+
+    @GetMapping("/archive")
+    public Map<String, Object> report() {
+        return archive.report();
+    }
+}
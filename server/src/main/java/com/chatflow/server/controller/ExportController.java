@@ -0,0 +1,242 @@
+package com.chatflow.server.controller;
+
+import com.chatflow.server.database.MessageExportRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Bulk export of a time range as NDJSON or CSV, optionally gzipped, for ops.
+ *
+ * Rows go straight from the JDBC cursor to the response stream (chunked), so
+ * memory is one fetch plus the output buffer. The response is written on the
+ * request thread rather than as a StreamingResponseBody, so long exports
+ * aren't cut off by the async request timeout. Large ranges can be split
+ * with /export/messages/slices and fetched in parallel.
+ */
+@RestController
+public class ExportController {
+
+    private final MessageExportRepository exports;
+    private final ObjectMapper objectMapper;
+    private final Semaphore running;
+    private final int maxConcurrent;
+
+    @Value("${export.max-slices:32}")
+    private int maxSlices;
+
+    public ExportController(MessageExportRepository exports, ObjectMapper objectMapper,
+                            @Value("${export.max-concurrent:2}") int maxConcurrent) {
+        this.exports = exports;
+        this.objectMapper = objectMapper;
+        // Each export pins a read connection for its whole duration
+        this.running = new Semaphore(maxConcurrent);
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    @GetMapping("/export/messages")
+    public void export(@RequestParam String from,
+                       @RequestParam String to,
+                       @RequestParam(required = false) String roomId,
+                       @RequestParam(defaultValue = "ndjson") String format,
+                       @RequestParam(required = false) Boolean gzip,
+                       HttpServletRequest request,
+                       HttpServletResponse response) throws IOException {
+        Instant start = parseInstant(from);
+        Instant end = parseInstant(to);
+        if (!start.isBefore(end)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from must be before to");
+        }
+        boolean csv = "csv".equalsIgnoreCase(format);
+        if (!csv && !"ndjson".equalsIgnoreCase(format)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "format must be ndjson or csv");
+        }
+        boolean compress = gzip != null ? gzip : acceptsGzip(request);
+        if (!running.tryAcquire()) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many exports running");
+        }
+
+        try {
+            response.setContentType(csv ? "text/csv; charset=utf-8" : "application/x-ndjson");
+            if (compress) {
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            }
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"messages"
+                    + (roomId != null ? "-" + roomId : "") + "-" + start.toEpochMilli() + "." + (csv ? "csv" : "ndjson")
+                    + (compress ? ".gz" : "") + "\"");
+
+            OutputStream out = new BufferedOutputStream(response.getOutputStream(), 1 << 16);
+            if (compress) {
+                out = new GZIPOutputStream(out, 1 << 16);
+            }
+            long rows;
+            try {
+                rows = csv ? writeCsv(out, roomId, start, end) : writeNdjson(out, roomId, start, end);
+            } catch (SQLException | IOException | RuntimeException e) {
+                abort(response, e);
+                return;
+            }
+            // Only a complete export gets the gzip trailer and the final chunk
+            out.close();
+            System.out.println("📦 Exported " + rows + " messages " + start + " .. " + end
+                    + (roomId != null ? " for " + roomId : ""));
+        } finally {
+            running.release();
+        }
+    }
+
+    /**
+     * The body is deliberately left unfinished: closing it would write the gzip
+     * trailer and end the chunked body cleanly, making a failed export look
+     * complete. If nothing was sent yet the client gets a plain 500; otherwise
+     * the exception reaches the container, which drops the connection without
+     * the terminating chunk.
+     */
+    private static void abort(HttpServletResponse response, Exception e) throws IOException {
+        System.err.println("❌ Export failed: " + e.getMessage());
+        if (!response.isCommitted()) {
+            response.reset();
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Export failed");
+            return;
+        }
+        throw new IOException("Export failed after the response was committed", e);
+    }
+
+    private long writeNdjson(OutputStream out, String roomId, Instant from, Instant to) throws SQLException, IOException {
+        JsonGenerator json = objectMapper.getFactory().createGenerator(out);
+        long rows = exports.export(roomId, from, to, rs -> {
+            json.writeStartObject();
+            json.writeStringField("messageId", rs.getString(1));
+            json.writeStringField("clientMessageId", rs.getString(2));
+            json.writeStringField("roomId", rs.getString(3));
+            json.writeNumberField("userId", rs.getInt(4));
+            json.writeStringField("username", rs.getString(5));
+            json.writeStringField("message", rs.getString(6));
+            json.writeStringField("messageType", rs.getString(7));
+            json.writeStringField("timestamp", rs.getTimestamp(8).toInstant().toString());
+            json.writeStringField("serverId", rs.getString(9));
+            json.writeEndObject();
+            json.writeRaw('\n');
+        });
+        json.flush();
+        return rows;
+    }
+
+    private long writeCsv(OutputStream out, String roomId, Instant from, Instant to) throws SQLException, IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        writer.write(String.join(",", MessageExportRepository.COLUMNS));
+        writer.write('\n');
+        long rows = exports.export(roomId, from, to, rs -> {
+            for (int i = 1; i <= MessageExportRepository.COLUMNS.length; i++) {
+                if (i > 1) {
+                    writer.write(',');
+                }
+                String value = i == 8 ? rs.getTimestamp(i).toInstant().toString() : rs.getString(i);
+                writeCsvField(writer, value);
+            }
+            writer.write('\n');
+        });
+        writer.flush();
+        return rows;
+    }
+
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    /**
+     * Splits [from, to) into equal time slices, each with its own export URL,
+     * for fetching in parallel (up to export.max-concurrent at a time).
+     */
+    @GetMapping("/export/messages/slices")
+    public Map<String, Object> slices(@RequestParam String from,
+                                      @RequestParam String to,
+                                      @RequestParam(required = false) String roomId,
+                                      @RequestParam(defaultValue = "ndjson") String format,
+                                      @RequestParam(defaultValue = "4") int slices) {
+        Instant start = parseInstant(from);
+        Instant end = parseInstant(to);
+        if (!start.isBefore(end)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from must be before to");
+        }
+        int count = Math.max(1, Math.min(slices, maxSlices));
+        Duration width = Duration.between(start, end).dividedBy(count);
+
+        List<Map<String, Object>> ranges = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Instant sliceFrom = start.plus(width.multipliedBy(i));
+            // The last slice absorbs the rounding remainder
+            Instant sliceTo = i == count - 1 ? end : start.plus(width.multipliedBy(i + 1));
+            UriComponentsBuilder url = UriComponentsBuilder.fromPath("/export/messages")
+                    .queryParam("from", sliceFrom)
+                    .queryParam("to", sliceTo)
+                    .queryParam("format", format);
+            if (roomId != null) {
+                url.queryParam("roomId", roomId);
+            }
+            Map<String, Object> range = new LinkedHashMap<>();
+            range.put("from", sliceFrom.toString());
+            range.put("to", sliceTo.toString());
+            range.put("url", url.encode().toUriString());
+            ranges.add(range);
+        }
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("maxConcurrent", maxConcurrent);
+        body.put("slices", ranges);
+        return body;
+    }
+
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        String accept = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        return accept != null && accept.toLowerCase().contains("gzip");
+    }
+
+    private static Instant parseInstant(String value) {
+        try {
+            return Instant.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid instant: " + value);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.chatflow.server.controller;
+
+import com.chatflow.server.database.MessageCursor;
+import com.chatflow.server.database.MessageHistoryRepository;
+import com.chatflow.server.database.PersistentMessage;
+import com.chatflow.server.database.ReadRouter;
+import com.chatflow.server.model.ChatMessage;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+
+/**
+ * Room history. Pages are keyset-paginated: pass the previous page's
+ * nextCursor as before (going back in time, newest first) or after
+ * (catching up, oldest first). Rows are streamed to the client as they
+ * come off the JDBC cursor.
+ */
+@RestController
+public class MessageHistoryController {
+
+    private final MessageHistoryRepository history;
+    private final ObjectMapper objectMapper;
+
+    @Value("${history.max-page-size:1000}")
+    private int maxPageSize;
+
+    public MessageHistoryController(MessageHistoryRepository history, ObjectMapper objectMapper) {
+        this.history = history;
+        this.objectMapper = objectMapper;
+    }
+
+    @GetMapping("/rooms/{roomId}/messages")
+    public ResponseEntity<StreamingResponseBody> messages(@PathVariable String roomId,
+                                                          @RequestParam(required = false) String before,
+                                                          @RequestParam(required = false) String after,
+                                                          @RequestParam(defaultValue = "100") int limit) {
+        if (before != null && after != null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Use either before or after, not both");
+        }
+        MessageCursor cursor = parseCursor(after != null ? after : before);
+        int pageSize = Math.max(1, Math.min(limit, maxPageSize));
+
+        StreamingResponseBody body = out -> {
+            JsonGenerator json = objectMapper.getFactory().createGenerator(out);
+            json.writeStartObject();
+            json.writeStringField("roomId", roomId);
+            json.writeArrayFieldStart("messages");
+
+            PersistentMessage[] last = new PersistentMessage[1];
+            int rows;
+            try {
+                if (after != null) {
+                    rows = history.forEachAfter(ReadRouter.Consistency.REPLICA_OK, roomId, cursor, pageSize, m -> write(json, last, m));
+                } else {
+                    rows = history.forEachBefore(ReadRouter.Consistency.REPLICA_OK, roomId, cursor, pageSize, m -> write(json, last, m));
+                }
+            } catch (SQLException e) {
+                throw new IOException("History query failed for room " + roomId, e);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            json.writeEndArray();
+            // A short page means there is nothing further in this direction
+            if (rows == pageSize) {
+                json.writeStringField("nextCursor", MessageCursor.of(last[0]).toString());
+            } else {
+                json.writeNullField("nextCursor");
+            }
+            json.writeEndObject();
+            json.flush();
+        };
+
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    private void write(JsonGenerator json, PersistentMessage[] last, PersistentMessage message) {
+        try {
+            objectMapper.writeValue(json, ChatMessage.fromPersistent(message));
+            last[0] = message;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private MessageCursor parseCursor(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return MessageCursor.parse(value);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.chatflow.server.controller;
+
+import com.chatflow.server.presence.PresenceService;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cluster-wide presence from the in-memory view (presence.enabled). Eventually
+ * consistent across nodes: another node's changes show up within about one
+ * flush window.
+ */
+@RestController
+public class PresenceController {
+
+    private final PresenceService presence;
+
+    public PresenceController(PresenceService presence) {
+        this.presence = presence;
+    }
+
+    @GetMapping("/presence/rooms")
+    public Map<String, Object> rooms() {
+        checkEnabled();
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("nodes", presence.getNodes());
+        info.put("online", presence.onlineCounts());
+        return info;
+    }
+
+    @GetMapping("/presence/rooms/{roomId}")
+    public Map<String, Object> room(@PathVariable String roomId) {
+        checkEnabled();
+        Set<Integer> users = presence.onlineUsers(roomId);
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("roomId", roomId);
+        info.put("count", users.size());
+        info.put("userIds", users);
+        return info;
+    }
+
+    private void checkEnabled() {
+        if (!presence.isEnabled()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Presence is disabled (presence.enabled)");
+        }
+    }
+}
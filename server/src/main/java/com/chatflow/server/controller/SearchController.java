@@ -0,0 +1,104 @@
+package com.chatflow.server.controller;
+
+import com.chatflow.server.database.MessageCursor;
+import com.chatflow.server.database.MessageSearchRepository;
+import com.chatflow.server.database.PersistentMessage;
+import com.chatflow.server.model.ChatMessage;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+
+/**
+ * Keyword search over chat history, per room and/or per user. Newest matches
+ * first; pass nextCursor back as before for the next page.
+ */
+@RestController
+public class SearchController {
+
+    private final MessageSearchRepository search;
+    private final ObjectMapper objectMapper;
+
+    @Value("${search.max-page-size:100}")
+    private int maxPageSize;
+
+    public SearchController(MessageSearchRepository search, ObjectMapper objectMapper) {
+        this.search = search;
+        this.objectMapper = objectMapper;
+    }
+
+    @GetMapping("/search/messages")
+    public ResponseEntity<StreamingResponseBody> messages(@RequestParam String q,
+                                                          @RequestParam(required = false) String roomId,
+                                                          @RequestParam(required = false) Integer userId,
+                                                          @RequestParam(required = false) String before,
+                                                          @RequestParam(defaultValue = "20") int limit) {
+        if (!search.isEnabled()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Search is disabled (search.enabled)");
+        }
+        if (q.isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "q must not be empty");
+        }
+        MessageCursor cursor = parseCursor(before);
+        int pageSize = Math.max(1, Math.min(limit, maxPageSize));
+
+        StreamingResponseBody body = out -> {
+            JsonGenerator json = objectMapper.getFactory().createGenerator(out);
+            json.writeStartObject();
+            json.writeStringField("query", q);
+            json.writeArrayFieldStart("messages");
+
+            PersistentMessage[] last = new PersistentMessage[1];
+            int rows;
+            try {
+                rows = search.search(q, roomId, userId, cursor, pageSize, m -> write(json, last, m));
+            } catch (SQLException e) {
+                throw new IOException("Search failed for " + q, e);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            json.writeEndArray();
+            if (rows == pageSize) {
+                json.writeStringField("nextCursor", MessageCursor.of(last[0]).toString());
+            } else {
+                json.writeNullField("nextCursor");
+            }
+            json.writeEndObject();
+            json.flush();
+        };
+
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    private void write(JsonGenerator json, PersistentMessage[] last, PersistentMessage message) {
+        try {
+            objectMapper.writeValue(json, ChatMessage.fromPersistent(message));
+            last[0] = message;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private MessageCursor parseCursor(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return MessageCursor.parse(value);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+    }
+}
@@ -1,15 +1,43 @@
 package com.chatflow.server.controller;
 
+import com.chatflow.server.database.ReadRouter;
+import com.chatflow.server.database.SchemaManager;
+import com.chatflow.server.handler.SessionManager;
+import com.chatflow.server.rabbit.DeliveryLanes;
+import com.chatflow.server.rabbit.RoomSubscriptionManager;
+import com.zaxxer.hikari.HikariDataSource;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.sql.DataSource;
 import java.net.InetAddress;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 @RestController
 public class ServerController {
 
+    private final SessionManager sessionManager;
+    private final RoomSubscriptionManager subscriptions;
+    private final SchemaManager schemaManager;
+    private final DataSource dataSource;
+    private final ReadRouter readRouter;
+    private final DeliveryLanes lanes;
+
+    public ServerController(SessionManager sessionManager, RoomSubscriptionManager subscriptions,
+                            SchemaManager schemaManager, DataSource dataSource, ReadRouter readRouter,
+                            DeliveryLanes lanes) {
+        this.sessionManager = sessionManager;
+        this.subscriptions = subscriptions;
+        this.schemaManager = schemaManager;
+        this.dataSource = dataSource;
+        this.readRouter = readRouter;
+        this.lanes = lanes;
+    }
+
     @GetMapping("/health")
     public String health() {
         return "OK";
@@ -27,4 +55,35 @@ public class ServerController {
         }
         return info;
     }
-}
\ No newline at end of file
+
+    @GetMapping("/subscriptions")
+    public Map<String, Object> subscriptions() {
+        Map<String, Integer> localSessions = new TreeMap<>();
+        sessionManager.getSessions().forEach((roomId, sessions) -> localSessions.put(roomId, sessions.size()));
+
+        Map<String, Object> info = new HashMap<>();
+        info.put("boundRooms", new TreeSet<>(subscriptions.getBoundRooms()));
+        info.put("localSessions", localSessions);
+        return info;
+    }
+
+    @GetMapping("/db/storage")
+    public Map<String, Object> storage() {
+        return schemaManager.storageReport();
+    }
+
+    @GetMapping("/db/pools")
+    public Map<String, Object> pools() {
+        Map<String, Object> info = new LinkedHashMap<>();
+        if (dataSource instanceof HikariDataSource) {
+            info.put("writePool", ReadRouter.poolStatus((HikariDataSource) dataSource));
+        }
+        info.put("reads", readRouter.getStatus());
+        return info;
+    }
+
+    @GetMapping("/lanes")
+    public Map<String, Object> lanes() {
+        return lanes.getStats();
+    }
+}
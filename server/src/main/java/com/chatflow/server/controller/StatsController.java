@@ -0,0 +1,127 @@
+package com.chatflow.server.controller;
+
+import com.chatflow.server.database.MessageRepository;
+import com.chatflow.server.database.MessageStatsRepository;
+import com.chatflow.server.database.RollupWriter;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Message statistics served from the rollup tables (database.rollups.enabled).
+ * from/to are ISO-8601 instants; the range is half-open and defaults to the
+ * last hour (last day for users).
+ */
+@RestController
+public class StatsController {
+
+    private static final Set<String> ROOM_GRANULARITIES = Set.of("minute", "hour", "day");
+    private static final Set<String> USER_GRANULARITIES = Set.of("hour", "day");
+
+    private final MessageStatsRepository stats;
+    private final MessageRepository repository;
+    private final RollupWriter rollups;
+
+    public StatsController(MessageStatsRepository stats, MessageRepository repository, RollupWriter rollups) {
+        this.stats = stats;
+        this.repository = repository;
+        this.rollups = rollups;
+    }
+
+    @GetMapping("/stats/rooms")
+    public Map<String, Object> rooms(@RequestParam(required = false) String from,
+                                     @RequestParam(required = false) String to) {
+        Instant end = parseInstant(to, Instant.now());
+        Instant start = parseInstant(from, end.minus(Duration.ofHours(1)));
+        return response(start, end, "rooms", () -> stats.roomTotals(start, end));
+    }
+
+    @GetMapping("/stats/rooms/{roomId}")
+    public Map<String, Object> room(@PathVariable String roomId,
+                                    @RequestParam(required = false) String from,
+                                    @RequestParam(required = false) String to,
+                                    @RequestParam(defaultValue = "minute") String granularity) {
+        checkGranularity(granularity, ROOM_GRANULARITIES);
+        Instant end = parseInstant(to, Instant.now());
+        Instant start = parseInstant(from, end.minus(Duration.ofHours(1)));
+        return response(start, end, "buckets", () -> stats.roomSeries(roomId, granularity, start, end));
+    }
+
+    @GetMapping("/stats/users/{userId}")
+    public Map<String, Object> user(@PathVariable int userId,
+                                    @RequestParam(required = false) String from,
+                                    @RequestParam(required = false) String to,
+                                    @RequestParam(defaultValue = "hour") String granularity) {
+        checkGranularity(granularity, USER_GRANULARITIES);
+        Instant end = parseInstant(to, Instant.now());
+        Instant start = parseInstant(from, end.minus(Duration.ofDays(1)));
+        return response(start, end, "buckets", () -> stats.userSeries(userId, granularity, start, end));
+    }
+
+    @GetMapping("/stats/message-types")
+    public Map<String, Object> messageTypes(@RequestParam(required = false) String from,
+                                            @RequestParam(required = false) String to) {
+        Instant end = parseInstant(to, Instant.now());
+        Instant start = parseInstant(from, end.minus(Duration.ofHours(1)));
+        return response(start, end, "messageTypes", () -> stats.typeTotals(start, end));
+    }
+
+    /**
+     * Write amplification of the rollups since startup.
+     */
+    @GetMapping("/stats/rollups")
+    public Map<String, Object> rollups() {
+        return repository.getRollupStats();
+    }
+
+    private interface StatsQuery {
+        List<Map<String, Object>> run() throws SQLException;
+    }
+
+    private Map<String, Object> response(Instant from, Instant to, String field, StatsQuery query) {
+        if (!rollups.isEnabled()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Rollups are disabled (database.rollups.enabled)");
+        }
+        if (!from.isBefore(to)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from must be before to");
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("from", from.toString());
+        body.put("to", to.toString());
+        try {
+            body.put(field, query.run());
+        } catch (SQLException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Stats query failed", e);
+        }
+        return body;
+    }
+
+    private static void checkGranularity(String granularity, Set<String> allowed) {
+        if (!allowed.contains(granularity)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "granularity must be one of " + allowed);
+        }
+    }
+
+    private static Instant parseInstant(String value, Instant defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Instant.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid instant: " + value);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.chatflow.server.database;
+
+/**
+ * Settles broker deliveries once the DB batch holding them has committed.
+ * Implemented per consumer channel; see ChannelAckTracker.
+ */
+public interface AckTracker {
+
+    void committed(long deliveryTag);
+
+    void failed(long deliveryTag);
+
+    /**
+     * Send whatever acks the committed tags allow, in bulk.
+     */
+    void flush();
+}
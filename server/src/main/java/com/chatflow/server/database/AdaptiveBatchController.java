@@ -0,0 +1,93 @@
+package com.chatflow.server.database;
+
+/**
+ * Per-writer AIMD controller for batch size and flush interval.
+ *
+ * Batch size grows additively while commits stay under the target latency and
+ * the writer is filling its batches (or the buffer is backing up), and shrinks
+ * multiplicatively when a commit is slow or fails. The flush interval follows
+ * buffer fill: short when the buffer is nearly empty (latency matters more than
+ * batching), longer as it fills (let batches get big).
+ */
+public class AdaptiveBatchController {
+
+    public enum Decision { INCREASE, DECREASE, BACKOFF, HOLD }
+
+    private static final double DECREASE_FACTOR = 0.7;
+    private static final double BACKOFF_FACTOR = 0.5;
+    private static final double HIGH_FILL = 0.5;
+    private static final double LOW_FILL = 0.05;
+
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final int increaseStep;
+    private final long minFlushIntervalMs;
+    private final long maxFlushIntervalMs;
+    private final long targetLatencyMs;
+
+    private volatile int batchSize;
+    private volatile long flushIntervalMs;
+    private volatile Decision lastDecision = Decision.HOLD;
+
+    public AdaptiveBatchController(int initialBatchSize, long initialFlushIntervalMs,
+                                   int minBatchSize, int maxBatchSize,
+                                   long minFlushIntervalMs, long maxFlushIntervalMs,
+                                   long targetLatencyMs) {
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.increaseStep = Math.max(1, (maxBatchSize - minBatchSize) / 20);
+        this.minFlushIntervalMs = minFlushIntervalMs;
+        this.maxFlushIntervalMs = maxFlushIntervalMs;
+        this.targetLatencyMs = targetLatencyMs;
+        this.batchSize = clamp(initialBatchSize, minBatchSize, maxBatchSize);
+        this.flushIntervalMs = clamp(initialFlushIntervalMs, minFlushIntervalMs, maxFlushIntervalMs);
+    }
+
+    /**
+     * Feed back the outcome of one batchInsert.
+     *
+     * @param flushedSize rows in the batch
+     * @param commitLatencyMs time spent in batchInsert
+     * @param failed      whether the batch was rolled back
+     * @param bufferFill  write buffer fill ratio (0..1) after the flush
+     */
+    public Decision onBatch(int flushedSize, long commitLatencyMs, boolean failed, double bufferFill) {
+        Decision decision;
+        int current = batchSize;
+
+        if (failed) {
+            batchSize = clamp((int) (current * BACKOFF_FACTOR), minBatchSize, maxBatchSize);
+            decision = Decision.BACKOFF;
+        } else if (commitLatencyMs > targetLatencyMs) {
+            batchSize = clamp((int) (current * DECREASE_FACTOR), minBatchSize, maxBatchSize);
+            decision = Decision.DECREASE;
+        } else if (flushedSize >= current || bufferFill > HIGH_FILL) {
+            batchSize = clamp(current + increaseStep, minBatchSize, maxBatchSize);
+            decision = Decision.INCREASE;
+        } else {
+            decision = Decision.HOLD;
+        }
+
+        long interval = flushIntervalMs;
+        if (bufferFill < LOW_FILL) {
+            flushIntervalMs = clamp(interval / 2, minFlushIntervalMs, maxFlushIntervalMs);
+        } else if (bufferFill > HIGH_FILL) {
+            flushIntervalMs = clamp(interval * 2, minFlushIntervalMs, maxFlushIntervalMs);
+        }
+
+        lastDecision = decision;
+        return decision;
+    }
+
+    public int getBatchSize() { return batchSize; }
+    public long getFlushIntervalMs() { return flushIntervalMs; }
+    public Decision getLastDecision() { return lastDecision; }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -2,9 +2,12 @@ package com.chatflow.server.database;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 
 import javax.sql.DataSource;
 
@@ -29,21 +32,69 @@ public class DatabaseConfig {
     @Value("${database.pool.min-idle:10}")
     private int minIdle;
 
+    @Value("${database.read.pool.max-size:5}")
+    private int readPoolSize;
+
+    // Reads give up quickly when their pool is exhausted instead of piling up
+    @Value("${database.read.pool.connection-timeout.ms:2000}")
+    private long readConnectionTimeoutMs;
+
+    // Optional streaming replica; empty sends all reads to the primary's read pool
+    @Value("${database.read.replica.endpoint:}")
+    private String replicaEndpoint;
+
+    @Value("${database.read.replica.max-lag.ms:5000}")
+    private long replicaMaxLagMs;
+
+    @Value("${database.read.replica.lag-check.ms:1000}")
+    private long replicaLagCheckMs;
+
+    /**
+     * Write pool: writers, schema and partition maintenance. Primary so that
+     * plain DataSource injection keeps meaning "the primary, for writes".
+     */
     @Bean
-    public DataSource dataSource() {
+    @Primary
+    public DataSource dataSource(MeterRegistry meterRegistry) {
+        HikariDataSource dataSource = pool("chatflow-write", endpoint, maxPoolSize, minIdle, 30000, false, meterRegistry);
+        System.out.println("✓ Database connection pool initialized: " + maxPoolSize + " connections");
+        return dataSource;
+    }
+
+    /**
+     * Read pools are separate from the write pool, so a burst of history or
+     * stats queries can exhaust them without taking connections from ingestion.
+     */
+    @Bean
+    public ReadRouter readRouter(MeterRegistry meterRegistry) {
+        HikariDataSource primaryReads = pool("chatflow-read", endpoint, readPoolSize, 1,
+                readConnectionTimeoutMs, true, meterRegistry);
+        HikariDataSource replicaReads = replicaEndpoint.isBlank() ? null
+                : pool("chatflow-replica", replicaEndpoint, readPoolSize, 1, readConnectionTimeoutMs, true, meterRegistry);
+        System.out.println("✓ Read pool initialized: " + readPoolSize + " connections"
+                + (replicaReads != null ? ", replica " + replicaEndpoint + " (max lag " + replicaMaxLagMs + "ms)" : ", no replica"));
+        return new ReadRouter(primaryReads, replicaReads, replicaMaxLagMs, replicaLagCheckMs, meterRegistry);
+    }
+
+    private HikariDataSource pool(String name, String host, int maxSize, int minIdleConnections,
+                                  long connectionTimeoutMs, boolean readOnly, MeterRegistry meterRegistry) {
         HikariConfig config = new HikariConfig();
 
-        String jdbcUrl = String.format("jdbc:postgresql://%s:5432/%s", endpoint, dbName);
+        String jdbcUrl = String.format("jdbc:postgresql://%s:5432/%s", host, dbName);
         config.setJdbcUrl(jdbcUrl);
         config.setUsername(username);
         config.setPassword(password);
+        config.setPoolName(name);
 
         // Connection pool settings
-        config.setMaximumPoolSize(maxPoolSize);
-        config.setMinimumIdle(minIdle);
-        config.setConnectionTimeout(30000);
+        config.setMaximumPoolSize(maxSize);
+        config.setMinimumIdle(Math.min(minIdleConnections, maxSize));
+        config.setConnectionTimeout(connectionTimeoutMs);
         config.setIdleTimeout(600000);
         config.setMaxLifetime(1800000);
+        config.setReadOnly(readOnly);
+        // hikaricp.connections.{active,idle,pending,timeout,...} tagged with the pool name
+        config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
 
         // Performance optimizations
         config.setAutoCommit(false);
@@ -51,9 +102,6 @@ public class DatabaseConfig {
         config.addDataSourceProperty("prepStmtCacheSize", "250");
         config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
 
-        HikariDataSource dataSource = new HikariDataSource(config);
-        System.out.println("✓ Database connection pool initialized: " + maxPoolSize + " connections");
-
-        return dataSource;
+        return new HikariDataSource(config);
     }
-}
\ No newline at end of file
+}
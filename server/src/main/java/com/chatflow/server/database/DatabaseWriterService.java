@@ -1,7 +1,9 @@
 package com.chatflow.server.database;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
@@ -9,17 +11,29 @@ import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.ToIntFunction;
 
 @Service
 @DependsOn("schemaManager") // Wait for schema to be initialized
 public class DatabaseWriterService {
 
     private final MessageRepository repository;
-    private final ObjectMapper objectMapper;
-    private BlockingQueue<String> writeBuffer;
+    private final MeterRegistry meterRegistry;
+    private WriteRingBuffer writeBuffer;
+    private WriteRingBuffer[] shardBuffers;
+    private AtomicLongArray openBatchSince;
     private ExecutorService writerExecutor;
+    private Timer writeLatency;
+
+    // shared: all writers drain one buffer; sharded: rooms are hashed to a
+    // writer that owns its buffer and a pinned connection
+    @Value("${database.writer.mode:shared}")
+    private String writerMode;
 
     @Value("${database.writer.threads:10}")
     private int writerThreads;
@@ -33,85 +47,222 @@ public class DatabaseWriterService {
     @Value("${database.buffer.size:10000}")
     private int bufferSize;
 
+    @Value("${database.writer.wait-strategy:blocking}")
+    private String waitStrategy;
+
+    @Value("${database.batch.adaptive:false}")
+    private boolean adaptive;
+
+    @Value("${database.batch.min-size:100}")
+    private int minBatchSize;
+
+    @Value("${database.batch.max-size:10000}")
+    private int maxBatchSize;
+
+    @Value("${database.flush.min-interval.ms:5}")
+    private long minFlushIntervalMs;
+
+    @Value("${database.flush.max-interval.ms:500}")
+    private long maxFlushIntervalMs;
+
+    @Value("${database.batch.target-latency.ms:100}")
+    private long targetLatencyMs;
+
     private volatile boolean running = true;
 
-    public DatabaseWriterService(MessageRepository repository, ObjectMapper objectMapper) {
+    public DatabaseWriterService(MessageRepository repository, MeterRegistry meterRegistry) {
         this.repository = repository;
-        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
     }
 
     @PostConstruct
     public void start() {
         // Initialize with config values
-        this.writeBuffer = new ArrayBlockingQueue<>(bufferSize);
         this.writerExecutor = Executors.newFixedThreadPool(writerThreads);
+        this.openBatchSince = new AtomicLongArray(writerThreads + 1);
+
+        if (isSharded()) {
+            // Each shard holds an equal share of the buffer, but at least one starting batch
+            int shardCapacity = Math.max(bufferSize / writerThreads, batchSize);
+            shardBuffers = new WriteRingBuffer[writerThreads];
+            for (int i = 0; i < writerThreads; i++) {
+                shardBuffers[i] = new WriteRingBuffer(shardCapacity, WaitStrategy.of(waitStrategy));
+                Gauge.builder("chatflow.db.shard.buffer.size", shardBuffers[i], WriteRingBuffer::size)
+                        .description("Messages waiting in a writer shard's buffer")
+                        .tag("shard", String.valueOf(i + 1))
+                        .register(meterRegistry);
+            }
+        } else {
+            this.writeBuffer = new WriteRingBuffer(bufferSize, WaitStrategy.of(waitStrategy));
+        }
 
-        System.out.println("🚀 Starting " + writerThreads + " database writer threads");
+        Gauge.builder("chatflow.db.buffer.size", this, DatabaseWriterService::getBufferSize)
+                .description("Messages waiting in the DB write ring buffer")
+                .register(meterRegistry);
+        this.writeLatency = Timer.builder("chatflow.db.write.latency")
+                .description("Time from enqueue of a batch's oldest message to its commit")
+                .tag("mode", writerMode.toLowerCase())
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .register(meterRegistry);
+
+        System.out.println("🚀 Starting " + writerThreads + " database writer threads (" + writerMode + ")");
         System.out.println("   Batch size: " + batchSize);
         System.out.println("   Flush interval: " + flushIntervalMs + "ms");
-        System.out.println("   Buffer size: " + bufferSize);
+        System.out.println("   Buffer size: " + (isSharded()
+                ? writerThreads + " x " + shardBuffers[0].getCapacity() + " (ring per shard)"
+                : writeBuffer.getCapacity() + " (ring)"));
+        System.out.println("   Wait strategy: " + waitStrategy);
+        if (adaptive) {
+            System.out.println("   Adaptive batching: " + minBatchSize + "-" + maxBatchSize + " rows, "
+                    + minFlushIntervalMs + "-" + maxFlushIntervalMs + "ms, target " + targetLatencyMs + "ms");
+        }
 
         for (int i = 0; i < writerThreads; i++) {
             final int writerId = i + 1;
-            writerExecutor.submit(() -> writerLoop(writerId));
+            if (isSharded()) {
+                WriteRingBuffer buffer = shardBuffers[i];
+                registerLag(writerId, buffer);
+                writerExecutor.submit(() -> {
+                    try (MessageRepository.PinnedWriter pinned = repository.openPinnedWriter()) {
+                        writerLoop(writerId, buffer, pinned::batchInsert);
+                    }
+                });
+            } else {
+                registerLag(writerId, writeBuffer);
+                writerExecutor.submit(() -> writerLoop(writerId, writeBuffer, repository::batchInsert));
+            }
+        }
+    }
+
+    private boolean isSharded() {
+        return "sharded".equalsIgnoreCase(writerMode);
+    }
+
+    /**
+     * Rooms map to a fixed shard, so one writer commits a room's messages in the
+     * order this node enqueued them.
+     */
+    private int shardOf(String roomId) {
+        return Math.floorMod(roomId.hashCode(), shardBuffers.length);
+    }
+
+    /**
+     * Lag is the age of the oldest message the writer hasn't committed yet,
+     * whether it is still queued or already in the open batch.
+     */
+    private void registerLag(int writerId, WriteRingBuffer buffer) {
+        Gauge.builder("chatflow.db.writer.lag", () -> {
+                    long since = openBatchSince.get(writerId);
+                    long batchAge = since > 0 ? System.nanoTime() - since : 0;
+                    return TimeUnit.NANOSECONDS.toMillis(Math.max(batchAge, buffer.headAgeNanos()));
+                })
+                .description("Age of the oldest uncommitted message per writer")
+                .baseUnit("milliseconds")
+                .tag("writer", String.valueOf(writerId))
+                .register(meterRegistry);
+    }
+
+    /**
+     * Static settings are a controller pinned to a single batch size and interval.
+     */
+    private AdaptiveBatchController newController(int writerId) {
+        AdaptiveBatchController controller = adaptive
+                ? new AdaptiveBatchController(batchSize, flushIntervalMs, minBatchSize, maxBatchSize,
+                        minFlushIntervalMs, maxFlushIntervalMs, targetLatencyMs)
+                : new AdaptiveBatchController(batchSize, flushIntervalMs, batchSize, batchSize,
+                        flushIntervalMs, flushIntervalMs, Long.MAX_VALUE);
+
+        String writer = String.valueOf(writerId);
+        Gauge.builder("chatflow.db.writer.batch.size", controller, AdaptiveBatchController::getBatchSize)
+                .description("Current target batch size")
+                .tag("writer", writer)
+                .register(meterRegistry);
+        Gauge.builder("chatflow.db.writer.flush.interval", controller, AdaptiveBatchController::getFlushIntervalMs)
+                .description("Current flush interval")
+                .baseUnit("milliseconds")
+                .tag("writer", writer)
+                .register(meterRegistry);
+        return controller;
+    }
+
+    /**
+     * Registered once per writer, so the flush path only increments.
+     */
+    private Map<AdaptiveBatchController.Decision, Counter> decisionCounters(int writerId) {
+        Map<AdaptiveBatchController.Decision, Counter> counters = new EnumMap<>(AdaptiveBatchController.Decision.class);
+        for (AdaptiveBatchController.Decision decision : AdaptiveBatchController.Decision.values()) {
+            counters.put(decision, Counter.builder("chatflow.db.writer.decisions")
+                    .description("Batch controller decisions")
+                    .tag("writer", String.valueOf(writerId))
+                    .tag("decision", decision.name().toLowerCase())
+                    .register(meterRegistry));
         }
+        return counters;
     }
 
-    private void writerLoop(int writerId) {
-        List<PersistentMessage> batch = new ArrayList<>(batchSize);
+    private void writerLoop(int writerId, WriteRingBuffer buffer, ToIntFunction<List<PersistentMessage>> sink) {
+        AdaptiveBatchController controller = newController(writerId);
+        Map<AdaptiveBatchController.Decision, Counter> decisions = adaptive ? decisionCounters(writerId) : null;
+        int targetBatchSize = controller.getBatchSize();
+        long targetFlushMs = controller.getFlushIntervalMs();
+
+        // Reused across flushes so the loop itself doesn't allocate
+        List<PersistentMessage> batch = new ArrayList<>(adaptive ? maxBatchSize : targetBatchSize);
+        PendingAcks acks = new PendingAcks(adaptive ? maxBatchSize : targetBatchSize);
         long lastFlushTime = System.currentTimeMillis();
+        long oldestEnqueueNanos = 0;
 
-        while (running || !writeBuffer.isEmpty()) {
+        while (running || !buffer.isEmpty()) {
             try {
-                // Drain available messages
-                List<String> jsonMessages = new ArrayList<>();
-                writeBuffer.drainTo(jsonMessages, batchSize - batch.size());
-
-                // Parse JSON to PersistentMessage
-                for (String json : jsonMessages) {
-                    try {
-                        JsonNode node = objectMapper.readTree(json);
-                        PersistentMessage msg = new PersistentMessage(
-                                node.get("messageId").asText(),
-                                node.get("roomId").asText(),
-                                node.get("userId").asText(),
-                                node.get("username").asText(),
-                                node.get("message").asText(),
-                                node.get("messageType").asText(),
-                                java.time.Instant.parse(node.get("timestamp").asText()),
-                                node.has("serverId") ? node.get("serverId").asText() : null,
-                                node.has("clientIp") ? node.get("clientIp").asText() : null
-                        );
-                        batch.add(msg);
-                    } catch (Exception e) {
-                        System.err.println("❌ Failed to parse message: " + e.getMessage());
-                    }
+                // Drain available messages (already typed, no parsing on this thread)
+                long drainedOldest = buffer.drainTo(batch, acks, targetBatchSize - batch.size());
+                if (oldestEnqueueNanos == 0 && drainedOldest != 0) {
+                    oldestEnqueueNanos = drainedOldest;
+                    openBatchSince.set(writerId, drainedOldest);
                 }
 
                 long now = System.currentTimeMillis();
                 long timeSinceFlush = now - lastFlushTime;
 
                 // Flush if batch full or timeout reached
-                boolean shouldFlush = batch.size() >= batchSize ||
-                        (timeSinceFlush >= flushIntervalMs && !batch.isEmpty());
+                boolean shouldFlush = batch.size() >= targetBatchSize ||
+                        (timeSinceFlush >= targetFlushMs && !batch.isEmpty());
 
                 if (shouldFlush) {
-                    int inserted = repository.batchInsert(batch);
+                    long flushStart = System.nanoTime();
+                    int inserted = sink.applyAsInt(batch);
+                    settle(acks, inserted);
+                    long commitLatencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - flushStart);
+                    writeLatency.record(System.nanoTime() - oldestEnqueueNanos, TimeUnit.NANOSECONDS);
+
+                    AdaptiveBatchController.Decision decision = controller.onBatch(batch.size(), commitLatencyMs,
+                            inserted < 0, (double) buffer.size() / buffer.getCapacity());
+                    if (adaptive) {
+                        decisions.get(decision).increment();
+                    }
+                    targetBatchSize = controller.getBatchSize();
+                    targetFlushMs = controller.getFlushIntervalMs();
 
-                    if (inserted > 0 && inserted % 10000 < batchSize) {
+                    if (inserted > 0 && inserted % 10000 < targetBatchSize) {
                         System.out.println(String.format(
                                 "Writer %d: ✓ %d messages (buffer: %d, latency: %dms)",
-                                writerId, inserted, writeBuffer.size(), timeSinceFlush
+                                writerId, inserted, buffer.size(), timeSinceFlush
                         ));
                     }
 
                     batch.clear();
+                    oldestEnqueueNanos = 0;
+                    openBatchSince.set(writerId, 0);
                     lastFlushTime = now;
+                    continue;
                 }
 
-                // Small sleep if buffer empty
-                if (writeBuffer.isEmpty()) {
-                    Thread.sleep(10);
+                // Nothing more to take right now: wait for data, or until the batch is due
+                if (buffer.isEmpty() && running) {
+                    long waitMs = batch.isEmpty()
+                            ? targetFlushMs
+                            : Math.max(1, targetFlushMs - timeSinceFlush);
+                    buffer.awaitData(TimeUnit.MILLISECONDS.toNanos(waitMs));
                 }
 
             } catch (InterruptedException e) {
@@ -125,7 +276,8 @@ public class DatabaseWriterService {
         // Final flush on shutdown
         if (!batch.isEmpty()) {
             try {
-                int inserted = repository.batchInsert(batch);
+                int inserted = sink.applyAsInt(batch);
+                settle(acks, inserted);
                 System.out.println("Writer " + writerId + " final flush: " + inserted + " messages");
             } catch (Exception e) {
                 System.err.println("Writer " + writerId + " final flush failed: " + e.getMessage());
@@ -135,16 +287,58 @@ public class DatabaseWriterService {
         System.out.println("Database writer " + writerId + " stopped");
     }
 
-    public boolean enqueue(String messageJson) {
+    /**
+     * Ack-after-commit: acks go out only once the batch is durable; a rolled-back
+     * batch is returned to the broker for redelivery.
+     */
+    private void settle(PendingAcks acks, int inserted) {
+        if (acks.size() == 0) {
+            return;
+        }
+        if (inserted >= 0) {
+            acks.commit();
+        } else {
+            acks.fail();
+        }
+    }
+
+    public boolean enqueue(PersistentMessage message) {
+        return enqueue(message, null, 0);
+    }
+
+    /**
+     * Enqueue a message whose broker delivery is acked by ackTracker after its batch commits.
+     */
+    public boolean enqueue(PersistentMessage message, AckTracker ackTracker, long deliveryTag) {
+        WriteRingBuffer buffer = isSharded() ? shardBuffers[shardOf(message.getRoomId())] : writeBuffer;
         try {
-            return writeBuffer.offer(messageJson, 100, TimeUnit.MILLISECONDS);
+            return buffer.offer(message, ackTracker, deliveryTag, 100);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             return false;
         }
     }
 
+    /**
+     * Messages the writers can hold in flight (open batches plus the same again
+     * queued), capped by the ring. Used to size consumer prefetch.
+     */
+    public int getPipelineCapacity() {
+        long perWriter = adaptive ? maxBatchSize : batchSize;
+        if (isSharded()) {
+            return (int) Math.min((long) shardBuffers[0].getCapacity() * writerThreads, perWriter * writerThreads * 2);
+        }
+        return (int) Math.min(writeBuffer.getCapacity(), perWriter * writerThreads * 2);
+    }
+
     public int getBufferSize() {
+        if (isSharded()) {
+            int size = 0;
+            for (WriteRingBuffer buffer : shardBuffers) {
+                size += buffer.size();
+            }
+            return size;
+        }
         return writeBuffer.size();
     }
 
@@ -152,6 +346,13 @@ public class DatabaseWriterService {
     public void shutdown() {
         System.out.println("🛑 Shutting down database writers...");
         running = false;
+        if (isSharded()) {
+            for (WriteRingBuffer buffer : shardBuffers) {
+                buffer.wakeAll();
+            }
+        } else {
+            writeBuffer.wakeAll();
+        }
 
         writerExecutor.shutdown();
         try {
@@ -165,4 +366,4 @@ public class DatabaseWriterService {
         repository.printStats();
         System.out.println("✓ Database writers stopped");
     }
-}
\ No newline at end of file
+}
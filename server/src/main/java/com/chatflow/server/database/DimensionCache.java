@@ -0,0 +1,172 @@
+package com.chatflow.server.database;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read-through cache of the dimension tables used by the normalized schema
+ * (rooms, users, servers, message_types). Lookups on the writer path are
+ * in-memory; a miss upserts the name in its own short transaction on the
+ * writer's connection, once per name per node. Keys never change, so entries
+ * are never invalidated.
+ */
+@Component
+public class DimensionCache {
+
+    private static final String ROOM_SQL =
+            "INSERT INTO rooms (room_id) VALUES (?) " +
+                    "ON CONFLICT (room_id) DO UPDATE SET room_id = EXCLUDED.room_id RETURNING room_key";
+    private static final String USER_SQL =
+            "INSERT INTO users (user_id, username) VALUES (?, ?) " +
+                    "ON CONFLICT (user_id, username) DO UPDATE SET username = EXCLUDED.username RETURNING user_key";
+    private static final String SERVER_SQL =
+            "INSERT INTO servers (server_id) VALUES (?) " +
+                    "ON CONFLICT (server_id) DO UPDATE SET server_id = EXCLUDED.server_id RETURNING server_key";
+    private static final String TYPE_SQL =
+            "INSERT INTO message_types (message_type) VALUES (?) " +
+                    "ON CONFLICT (message_type) DO UPDATE SET message_type = EXCLUDED.message_type RETURNING type_key";
+
+    private final DataSource dataSource;
+    private final Map<String, Integer> rooms = new ConcurrentHashMap<>();
+    private final Map<String, Integer> users = new ConcurrentHashMap<>();
+    private final Map<String, Integer> servers = new ConcurrentHashMap<>();
+    private final Map<String, Integer> types = new ConcurrentHashMap<>();
+    private final Counter misses;
+
+    @Value("${database.schema.normalized:false}")
+    private volatile boolean enabled;
+
+    public DimensionCache(DataSource dataSource, MeterRegistry meterRegistry) {
+        this.dataSource = dataSource;
+        this.misses = Counter.builder("chatflow.db.dimension.misses")
+                .description("Dimension lookups that went to the database")
+                .register(meterRegistry);
+        Gauge.builder("chatflow.db.dimension.size", users, Map::size)
+                .description("Cached user dimension entries")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * SchemaManager overrides the setting when the existing schema doesn't match it.
+     */
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Load existing dimension rows so a restarted node starts warm.
+     */
+    void warm() throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            load(stmt, "SELECT room_id, room_key FROM rooms", rooms);
+            load(stmt, "SELECT user_id || ':' || username, user_key FROM users", users);
+            load(stmt, "SELECT server_id, server_key FROM servers", servers);
+            load(stmt, "SELECT message_type, type_key FROM message_types", types);
+            conn.commit();
+        }
+        System.out.println("   ✓ Dimension cache warmed: " + rooms.size() + " rooms, " + users.size()
+                + " users, " + servers.size() + " servers, " + types.size() + " message types");
+    }
+
+    private void load(Statement stmt, String sql, Map<String, Integer> cache) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                cache.put(rs.getString(1), rs.getInt(2));
+            }
+        }
+    }
+
+    /**
+     * Cached key of a dimension that ensure() has resolved for the batch.
+     */
+    public int roomKey(String roomId) throws SQLException {
+        return cached(rooms, roomId);
+    }
+
+    public int userKey(int userId, String username) throws SQLException {
+        return cached(users, userId + ":" + username);
+    }
+
+    /**
+     * Returns null for a null server id (the column is nullable).
+     */
+    public Integer serverKey(String serverId) throws SQLException {
+        return serverId == null ? null : cached(servers, serverId);
+    }
+
+    public int typeKey(String messageType) throws SQLException {
+        return cached(types, messageType);
+    }
+
+    private static int cached(Map<String, Integer> cache, String name) throws SQLException {
+        Integer key = cache.get(name);
+        if (key == null) {
+            throw new SQLException("Dimension not resolved: " + name);
+        }
+        return key;
+    }
+
+    /**
+     * Make sure every dimension referenced by the batch exists and is cached.
+     * Misses are upserted on the writer's own connection, so a miss never
+     * waits for a second pool connection while the writer holds one. Must be
+     * called before the batch does any work on conn: each miss commits on it.
+     */
+    public void ensure(Connection conn, List<PersistentMessage> messages) throws SQLException {
+        for (PersistentMessage msg : messages) {
+            if (!rooms.containsKey(msg.getRoomId())) {
+                resolve(conn, rooms, msg.getRoomId(), ROOM_SQL, msg.getRoomId());
+            }
+            String user = msg.getUserId() + ":" + msg.getUsername();
+            if (!users.containsKey(user)) {
+                resolve(conn, users, user, USER_SQL, msg.getUserId(), msg.getUsername());
+            }
+            if (msg.getServerId() != null && !servers.containsKey(msg.getServerId())) {
+                resolve(conn, servers, msg.getServerId(), SERVER_SQL, msg.getServerId());
+            }
+            if (!types.containsKey(msg.getMessageType())) {
+                resolve(conn, types, msg.getMessageType(), TYPE_SQL, msg.getMessageType());
+            }
+        }
+    }
+
+    /**
+     * One short transaction per miss, so two writers upserting the same names
+     * in a different order can't deadlock. Concurrent misses on the same name
+     * both upsert and get the same key back; it is cached only once committed.
+     */
+    private void resolve(Connection conn, Map<String, Integer> cache, String name, String sql,
+                         Object... params) throws SQLException {
+        misses.increment();
+        int key;
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                ps.setObject(i + 1, params[i]);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                key = rs.getInt(1);
+            }
+        }
+        conn.commit();
+        cache.put(name, key);
+    }
+}
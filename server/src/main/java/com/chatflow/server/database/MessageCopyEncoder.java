@@ -0,0 +1,83 @@
+package com.chatflow.server.database;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
+/**
+ * Writes messages in PostgreSQL's binary COPY format
+ * (COPY ... FROM STDIN (FORMAT binary)).
+ *
+ * Column order matches MessageRepository.COPY_COLUMNS.
+ */
+public class MessageCopyEncoder {
+
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    private static final LocalDateTime PG_EPOCH = LocalDateTime.of(2000, 1, 1, 0, 0);
+    private static final short FIELD_COUNT = 10;
+
+    private final DataOutputStream out;
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    public MessageCopyEncoder(OutputStream out) {
+        this.out = new DataOutputStream(out);
+    }
+
+    public void writeHeader() throws IOException {
+        out.write(SIGNATURE);
+        out.writeInt(0); // flags
+        out.writeInt(0); // header extension length
+    }
+
+    public void write(PersistentMessage msg) throws IOException {
+        out.writeShort(FIELD_COUNT);
+        writeUuid(msg.getMessageId());
+        writeText(msg.getRoomId());
+        out.writeInt(4);
+        out.writeInt(msg.getUserId());
+        writeText(msg.getUsername());
+        writeText(msg.getMessage());
+        writeText(msg.getMessageType());
+        writeTimestamp(msg.getTimestamp());
+        writeText(msg.getServerId());
+        writeText(msg.getClientIp());
+        writeUuid(msg.getClientMessageId());
+    }
+
+    public void writeTrailer() throws IOException {
+        out.writeShort(-1);
+        out.flush();
+    }
+
+    private void writeUuid(UUID uuid) throws IOException {
+        out.writeInt(16);
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private void writeText(String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * TIMESTAMP (without time zone) is microseconds since 2000-01-01.
+     * Converted through the JVM zone to match PreparedStatement.setTimestamp.
+     */
+    private void writeTimestamp(Instant instant) throws IOException {
+        LocalDateTime local = LocalDateTime.ofInstant(instant, zone);
+        out.writeInt(8);
+        out.writeLong(ChronoUnit.MICROS.between(PG_EPOCH, local));
+    }
+}
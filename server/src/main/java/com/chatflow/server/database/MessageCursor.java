@@ -0,0 +1,78 @@
+package com.chatflow.server.database;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Keyset position in a room's history: (timestamp, message_id), the sort key
+ * of the read path. Serialized as "<epoch micros>_<message id>"; micros match
+ * the precision PostgreSQL stores.
+ */
+public final class MessageCursor {
+
+    private final Instant timestamp;
+    private final UUID messageId;
+
+    public MessageCursor(Instant timestamp, UUID messageId) {
+        this.timestamp = timestamp.truncatedTo(ChronoUnit.MICROS);
+        this.messageId = messageId;
+    }
+
+    public static MessageCursor of(PersistentMessage message) {
+        return new MessageCursor(message.getTimestamp(), message.getMessageId());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the value isn't a cursor
+     */
+    public static MessageCursor parse(String value) {
+        int separator = value.indexOf('_');
+        if (separator <= 0) {
+            throw new IllegalArgumentException("Invalid cursor: " + value);
+        }
+        long micros = Long.parseLong(value.substring(0, separator));
+        Instant timestamp = Instant.EPOCH.plus(micros, ChronoUnit.MICROS);
+        return new MessageCursor(timestamp, UUID.fromString(value.substring(separator + 1)));
+    }
+
+    public Instant getTimestamp() { return timestamp; }
+    public UUID getMessageId() { return messageId; }
+
+    /**
+     * Same order as the database: UUIDs compare as unsigned bytes there,
+     * unlike UUID.compareTo.
+     */
+    public int compareTo(Instant otherTimestamp, UUID otherMessageId) {
+        int byTime = timestamp.compareTo(otherTimestamp.truncatedTo(ChronoUnit.MICROS));
+        if (byTime != 0) {
+            return byTime;
+        }
+        int byHigh = Long.compareUnsigned(messageId.getMostSignificantBits(), otherMessageId.getMostSignificantBits());
+        return byHigh != 0 ? byHigh
+                : Long.compareUnsigned(messageId.getLeastSignificantBits(), otherMessageId.getLeastSignificantBits());
+    }
+
+    public int compareTo(MessageCursor other) {
+        return compareTo(other.timestamp, other.messageId);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof MessageCursor)) return false;
+        MessageCursor other = (MessageCursor) o;
+        return timestamp.equals(other.timestamp) && messageId.equals(other.messageId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(timestamp, messageId);
+    }
+
+    @Override
+    public String toString() {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, timestamp) + "_" + messageId;
+    }
+}
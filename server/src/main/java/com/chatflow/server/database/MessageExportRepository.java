@@ -0,0 +1,83 @@
+package com.chatflow.server.database;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+
+/**
+ * Streams a time range of messages off a server-side cursor. With autocommit
+ * off and a fetch size set, pgjdbc holds only one fetch of rows at a time, so
+ * heap stays flat however large the range is, and a slow reader simply
+ * delays the next fetch.
+ */
+@Repository
+public class MessageExportRepository {
+
+    public static final String[] COLUMNS = {
+            "message_id", "client_message_id", "room_id", "user_id", "username",
+            "message", "message_type", "timestamp", "server_id"
+    };
+
+    private static final String SELECT_SQL =
+            "SELECT " + String.join(", ", COLUMNS) + " FROM messages WHERE timestamp >= ? AND timestamp < ? ";
+
+    /**
+     * Handles the current row; must not keep references to the ResultSet.
+     */
+    public interface RowHandler {
+        void row(ResultSet rs) throws SQLException, IOException;
+    }
+
+    private final ReadRouter readRouter;
+    private final Counter rowsExported;
+
+    @Value("${export.fetch-size:5000}")
+    private int fetchSize;
+
+    public MessageExportRepository(ReadRouter readRouter, MeterRegistry meterRegistry) {
+        this.readRouter = readRouter;
+        this.rowsExported = Counter.builder("chatflow.export.rows")
+                .description("Rows streamed out by the export endpoint")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Rows in [from, to), optionally for one room, in (timestamp, message_id)
+     * order. Returns the number of rows handed to handler.
+     */
+    public long export(String roomId, Instant from, Instant to, RowHandler handler) throws SQLException, IOException {
+        String sql = SELECT_SQL + (roomId != null ? "AND room_id = ? " : "") + "ORDER BY timestamp, message_id";
+        long rows = 0;
+        try (Connection conn = readRouter.getConnection(ReadRouter.Consistency.REPLICA_OK);
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setFetchSize(fetchSize);
+            ps.setTimestamp(1, Timestamp.from(from));
+            ps.setTimestamp(2, Timestamp.from(to));
+            if (roomId != null) {
+                ps.setString(3, roomId);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    handler.row(rs);
+                    rows++;
+                    if (rows % fetchSize == 0) {
+                        rowsExported.increment(fetchSize);
+                    }
+                }
+            }
+            conn.commit();
+        } finally {
+            rowsExported.increment(rows % fetchSize);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,178 @@
+package com.chatflow.server.database;
+
+import com.chatflow.server.archive.ArchiveStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Read path for room history, keyset-paginated on (timestamp, message_id)
+ * so every page is a range scan on idx_room_timestamp regardless of depth.
+ *
+ * When archiving is on, pages that reach into archived time ranges are
+ * merged from the database and the archive, so callers see one timeline.
+ */
+@Repository
+public class MessageHistoryRepository {
+
+    private static final String SELECT_COLUMNS =
+            "SELECT message_id, client_message_id, room_id, user_id, username, message, " +
+                    "message_type, timestamp, server_id FROM messages ";
+
+    private static final String LATEST_SQL = SELECT_COLUMNS +
+            "WHERE room_id = ? ORDER BY timestamp DESC, message_id DESC LIMIT ?";
+
+    private static final String BEFORE_SQL = SELECT_COLUMNS +
+            "WHERE room_id = ? AND (timestamp, message_id) < (?, ?) " +
+            "ORDER BY timestamp DESC, message_id DESC LIMIT ?";
+
+    private static final String AFTER_SQL = SELECT_COLUMNS +
+            "WHERE room_id = ? AND (timestamp, message_id) > (?, ?) " +
+            "ORDER BY timestamp, message_id LIMIT ?";
+
+    private final ReadRouter readRouter;
+    private final ArchiveStore archive;
+    private final Timer queryLatency;
+
+    // Rows per round trip; the result is streamed through a cursor instead of buffered
+    @Value("${history.fetch-size:200}")
+    private int fetchSize;
+
+    @Value("${history.query-timeout.s:5}")
+    private int queryTimeoutSeconds;
+
+    public MessageHistoryRepository(ReadRouter readRouter, ArchiveStore archive, MeterRegistry meterRegistry) {
+        this.readRouter = readRouter;
+        this.archive = archive;
+        this.queryLatency = Timer.builder("chatflow.history.query.latency")
+                .description("Room history page queries, including streaming the rows out")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Newest messages first. cursor == null starts at the newest message.
+     */
+    public int forEachBefore(ReadRouter.Consistency consistency, String roomId, MessageCursor cursor, int limit,
+                             Consumer<PersistentMessage> consumer) throws SQLException {
+        String sql = cursor == null ? LATEST_SQL : BEFORE_SQL;
+        if (!archive.isEnabled() || !archive.hasBefore(roomId, cursor)) {
+            return query(consistency, sql, roomId, cursor, limit, consumer);
+        }
+        List<PersistentMessage> recent = new ArrayList<>(limit);
+        query(consistency, sql, roomId, cursor, limit, recent::add);
+        // A full page entirely newer than anything archived needs no archive read
+        if (recent.size() == limit && recent.get(limit - 1).getTimestamp().isAfter(archive.newest(roomId))) {
+            recent.forEach(consumer);
+            return recent.size();
+        }
+        List<PersistentMessage> archived = new ArrayList<>(limit);
+        try {
+            archive.forEachBefore(roomId, cursor, limit, archived::add);
+        } catch (IOException e) {
+            throw new SQLException("Archive read failed for " + roomId, e);
+        }
+        return merge(recent, archived, -1, limit, consumer);
+    }
+
+    /**
+     * Oldest first, strictly after cursor. Used for catching up.
+     */
+    public int forEachAfter(ReadRouter.Consistency consistency, String roomId, MessageCursor cursor, int limit,
+                            Consumer<PersistentMessage> consumer) throws SQLException {
+        if (!archive.isEnabled() || !archive.hasAfter(roomId, cursor)) {
+            return query(consistency, AFTER_SQL, roomId, cursor, limit, consumer);
+        }
+        List<PersistentMessage> archived = new ArrayList<>(limit);
+        try {
+            archive.forEachAfter(roomId, cursor, limit, archived::add);
+        } catch (IOException e) {
+            throw new SQLException("Archive read failed for " + roomId, e);
+        }
+        List<PersistentMessage> recent = new ArrayList<>(limit);
+        query(consistency, AFTER_SQL, roomId, cursor, limit, recent::add);
+        return merge(archived, recent, 1, limit, consumer);
+    }
+
+    /**
+     * Merges two pages sorted in the same direction (1 ascending, -1 descending)
+     * into the first limit rows. A row found in both tiers is sent once.
+     */
+    private static int merge(List<PersistentMessage> a, List<PersistentMessage> b, int direction, int limit,
+                             Consumer<PersistentMessage> consumer) {
+        int i = 0;
+        int j = 0;
+        int rows = 0;
+        while (rows < limit && (i < a.size() || j < b.size())) {
+            int order = i == a.size() ? 1 : j == b.size() ? -1
+                    : direction * MessageCursor.of(a.get(i)).compareTo(MessageCursor.of(b.get(j)));
+            if (order == 0) {
+                j++;
+                continue;
+            }
+            consumer.accept(order < 0 ? a.get(i++) : b.get(j++));
+            rows++;
+        }
+        return rows;
+    }
+
+    private int query(ReadRouter.Consistency consistency, String sql, String roomId, MessageCursor cursor, int limit,
+                      Consumer<PersistentMessage> consumer) throws SQLException {
+        long start = System.nanoTime();
+        int rows = 0;
+        // autocommit is off in the pool, which pgjdbc needs to honour the fetch size
+        try (Connection conn = readRouter.getConnection(consistency);
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setFetchSize(fetchSize);
+            ps.setQueryTimeout(queryTimeoutSeconds);
+            int i = 1;
+            ps.setString(i++, roomId);
+            if (cursor != null) {
+                ps.setTimestamp(i++, Timestamp.from(cursor.getTimestamp()));
+                ps.setObject(i++, cursor.getMessageId());
+            }
+            ps.setInt(i, limit);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    consumer.accept(toMessage(rs));
+                    rows++;
+                }
+            }
+            conn.commit();
+        } finally {
+            queryLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return rows;
+    }
+
+    private PersistentMessage toMessage(ResultSet rs) throws SQLException {
+        UUID messageId = rs.getObject(1, UUID.class);
+        UUID clientMessageId = rs.getObject(2, UUID.class);
+        return new PersistentMessage(
+                messageId,
+                clientMessageId != null ? clientMessageId : messageId,
+                rs.getString(3),
+                rs.getInt(4),
+                rs.getString(5),
+                rs.getString(6),
+                rs.getString(7),
+                rs.getTimestamp(8).toInstant(),
+                rs.getString(9),
+                null
+        );
+    }
+}
@@ -1,89 +1,348 @@
 package com.chatflow.server.database;
 
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
 import javax.sql.DataSource;
+import java.io.IOException;
 import java.sql.*;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.WeakHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 @Repository
 public class MessageRepository {
 
     private final DataSource dataSource;
+    private final DimensionCache dimensions;
+    private final RollupWriter rollups;
     private final AtomicLong successCount = new AtomicLong(0);
     private final AtomicLong failureCount = new AtomicLong(0);
     private final AtomicLong totalLatency = new AtomicLong(0);
+    private final AtomicLong rowsSubmitted = new AtomicLong(0);
+    private final AtomicLong writeNanos = new AtomicLong(0);
+    // Physical connections that already have the staging table; dropped with the connection
+    private final Set<PGConnection> stagingReady =
+            Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    @Value("${database.write.strategy:batch}")
+    private String writeStrategy;
 
     private static final String INSERT_SQL =
             "INSERT INTO messages (message_id, room_id, user_id, username, " +
-                    "message, message_type, timestamp, server_id, client_ip) " +
-                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) " +
-                    "ON CONFLICT (message_id) DO NOTHING";
+                    "message, message_type, timestamp, server_id, client_ip, client_message_id) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+                    "ON CONFLICT DO NOTHING";
+
+    private static final String COPY_COLUMNS =
+            "message_id, room_id, user_id, username, message, message_type, timestamp, server_id, client_ip, client_message_id";
+
+    // Session-local, created once per physical connection and emptied on every commit
+    private static final String CREATE_STAGING_SQL =
+            "CREATE TEMP TABLE IF NOT EXISTS messages_staging (" +
+                    "    message_id UUID," +
+                    "    room_id VARCHAR(10)," +
+                    "    user_id INTEGER," +
+                    "    username VARCHAR(20)," +
+                    "    message TEXT," +
+                    "    message_type VARCHAR(10)," +
+                    "    timestamp TIMESTAMP," +
+                    "    server_id VARCHAR(50)," +
+                    "    client_ip VARCHAR(45)," +
+                    "    client_message_id UUID" +
+                    ") ON COMMIT DELETE ROWS";
+
+    private static final String COPY_SQL =
+            "COPY messages_staging (" + COPY_COLUMNS + ") FROM STDIN (FORMAT binary)";
+
+    // ON CONFLICT DO NOTHING also drops duplicates inside the same staged batch.
+    // No conflict target: duplicates are caught by the primary key or by the
+    // client_message_id unique index (server-assigned ids differ across retries)
+    private static final String MERGE_SQL =
+            "INSERT INTO messages (" + COPY_COLUMNS + ") " +
+                    "SELECT " + COPY_COLUMNS + " FROM messages_staging " +
+                    "ON CONFLICT DO NOTHING";
+
+    // Normalized schema: dimension keys instead of repeated strings
+    private static final String NORMALIZED_COLUMNS =
+            "message_id, room_key, user_key, type_key, timestamp, server_key, client_ip, client_message_id, message";
 
-    public MessageRepository(DataSource dataSource) {
+    private static final String INSERT_NORMALIZED_SQL =
+            "INSERT INTO messages_n (" + NORMALIZED_COLUMNS + ") " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?::inet, ?, ?) " +
+                    "ON CONFLICT DO NOTHING";
+
+    // Staged rows are still wide; keys are joined in on the server. The
+    // dimension rows are guaranteed to exist by DimensionCache.ensure
+    private static final String MERGE_NORMALIZED_SQL =
+            "INSERT INTO messages_n (" + NORMALIZED_COLUMNS + ") " +
+                    "SELECT s.message_id, r.room_key, u.user_key, t.type_key, s.timestamp, sv.server_key, " +
+                    "       NULLIF(split_part(s.client_ip, '%', 1), '')::inet, s.client_message_id, s.message " +
+                    "FROM messages_staging s " +
+                    "JOIN rooms r ON r.room_id = s.room_id " +
+                    "JOIN users u ON u.user_id = s.user_id AND u.username = s.username " +
+                    "JOIN message_types t ON t.message_type = s.message_type " +
+                    "LEFT JOIN servers sv ON sv.server_id = s.server_id " +
+                    "ON CONFLICT DO NOTHING";
+
+    public MessageRepository(DataSource dataSource, DimensionCache dimensions, RollupWriter rollups) {
         this.dataSource = dataSource;
+        this.dimensions = dimensions;
+        this.rollups = rollups;
     }
 
     /**
-     * Batch insert messages for high throughput
+     * Batch insert messages for high throughput.
+     * database.write.strategy selects JDBC batching ("batch") or binary COPY
+     * into a staging table followed by a merge ("copy").
+     * Returns the number of new rows, or -1 if the batch was rolled back.
      */
     public int batchInsert(List<PersistentMessage> messages) {
         if (messages == null || messages.isEmpty()) {
             return 0;
         }
 
-        long startTime = Instant.now().toEpochMilli();
         Connection conn = null;
-        PreparedStatement ps = null;
 
         try {
             conn = dataSource.getConnection();
-            ps = conn.prepareStatement(INSERT_SQL);
+            return write(conn, null, messages);
 
-            for (PersistentMessage msg : messages) {
-                ps.setObject(1, msg.getMessageId());
-                ps.setString(2, msg.getRoomId());
-                ps.setInt(3, msg.getUserId());
-                ps.setString(4, msg.getUsername());
-                ps.setString(5, msg.getMessage());
-                ps.setString(6, msg.getMessageType());
-                ps.setTimestamp(7, Timestamp.from(msg.getTimestamp()));
-                ps.setString(8, msg.getServerId());
-                ps.setString(9, msg.getClientIp());
+        } catch (SQLException | IOException e) {
+            rollbackQuietly(conn);
+            recordFailure(messages, e);
+            return -1;
+
+        } finally {
+            if (conn != null) try { conn.close(); } catch (SQLException e) { }
+        }
+    }
+
+    /**
+     * A writer that keeps one connection and prepared statement for its lifetime,
+     * so the driver can switch to a server-side prepared plan. Used by one thread only.
+     */
+    public PinnedWriter openPinnedWriter() {
+        return new PinnedWriter();
+    }
+
+    public class PinnedWriter implements AutoCloseable {
+
+        private Connection conn;
+        private PreparedStatement insert;
+
+        private PinnedWriter() {
+        }
+
+        /**
+         * Same contract as MessageRepository.batchInsert. After a failure the
+         * connection is dropped and a fresh one is opened for the next batch.
+         */
+        public int batchInsert(List<PersistentMessage> messages) {
+            if (messages == null || messages.isEmpty()) {
+                return 0;
+            }
+            try {
+                if (conn == null) {
+                    conn = dataSource.getConnection();
+                    insert = isCopy() ? null : conn.prepareStatement(insertSql());
+                }
+                return write(conn, insert, messages);
+
+            } catch (SQLException | IOException e) {
+                rollbackQuietly(conn);
+                recordFailure(messages, e);
+                close();
+                return -1;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (insert != null) try { insert.close(); } catch (SQLException e) { }
+            if (conn != null) try { conn.close(); } catch (SQLException e) { }
+            insert = null;
+            conn = null;
+        }
+    }
+
+    private int write(Connection conn, PreparedStatement insert, List<PersistentMessage> messages)
+            throws SQLException, IOException {
+        long startTime = Instant.now().toEpochMilli();
+        long startNanos = System.nanoTime();
+
+        // Dimension misses go first, on this connection, before the batch's transaction
+        if (dimensions.isEnabled()) {
+            dimensions.ensure(conn, messages);
+        }
+
+        // Rollups only count rows that were new, not duplicates dropped by ON CONFLICT
+        List<PersistentMessage> newRows = rollups.isEnabled() ? new ArrayList<>(messages.size()) : null;
+        int inserted;
+        if (isCopy()) {
+            inserted = copyInsert(conn, messages, newRows);
+        } else if (insert != null) {
+            inserted = jdbcBatchInsert(insert, messages, newRows);
+        } else {
+            try (PreparedStatement ps = conn.prepareStatement(insertSql())) {
+                inserted = jdbcBatchInsert(ps, messages, newRows);
+            }
+        }
+        if (newRows != null) {
+            rollups.apply(conn, newRows);
+        }
+        conn.commit();
+
+        long elapsed = System.currentTimeMillis() - startTime;
+        successCount.addAndGet(inserted);
+        totalLatency.addAndGet(elapsed);
+        rowsSubmitted.addAndGet(messages.size());
+        writeNanos.addAndGet(System.nanoTime() - startNanos);
+
+        return inserted;
+    }
+
+    private boolean isCopy() {
+        return "copy".equalsIgnoreCase(writeStrategy);
+    }
+
+    private String insertSql() {
+        return dimensions.isEnabled() ? INSERT_NORMALIZED_SQL : INSERT_SQL;
+    }
+
+    private void rollbackQuietly(Connection conn) {
+        if (conn != null) {
+            try { conn.rollback(); } catch (SQLException ex) { }
+        }
+    }
+
+    private void recordFailure(List<PersistentMessage> messages, Exception e) {
+        failureCount.addAndGet(messages.size());
+        System.err.println("❌ Batch insert failed: " + e.getMessage());
+    }
+
+    private int jdbcBatchInsert(PreparedStatement ps, List<PersistentMessage> messages,
+                                List<PersistentMessage> newRows) throws SQLException {
+        boolean normalized = dimensions.isEnabled();
+        for (PersistentMessage msg : messages) {
+            if (normalized) {
+                bindNormalized(ps, msg);
                 ps.addBatch();
+                continue;
             }
+            ps.setObject(1, msg.getMessageId());
+            ps.setString(2, msg.getRoomId());
+            ps.setInt(3, msg.getUserId());
+            ps.setString(4, msg.getUsername());
+            ps.setString(5, msg.getMessage());
+            ps.setString(6, msg.getMessageType());
+            ps.setTimestamp(7, Timestamp.from(msg.getTimestamp()));
+            ps.setString(8, msg.getServerId());
+            ps.setString(9, msg.getClientIp());
+            ps.setObject(10, msg.getClientMessageId());
+            ps.addBatch();
+        }
 
-            int[] results = ps.executeBatch();
-            conn.commit();
+        int[] results = ps.executeBatch();
 
-            int inserted = 0;
-            for (int result : results) {
-                if (result > 0 || result == Statement.SUCCESS_NO_INFO) {
-                    inserted++;
+        int inserted = 0;
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] > 0 || results[i] == Statement.SUCCESS_NO_INFO) {
+                inserted++;
+                if (newRows != null) {
+                    newRows.add(messages.get(i));
                 }
             }
+        }
+        return inserted;
+    }
 
-            long elapsed = System.currentTimeMillis() - startTime;
-            successCount.addAndGet(inserted);
-            totalLatency.addAndGet(elapsed);
+    private void bindNormalized(PreparedStatement ps, PersistentMessage msg) throws SQLException {
+        ps.setObject(1, msg.getMessageId());
+        ps.setShort(2, (short) dimensions.roomKey(msg.getRoomId()));
+        ps.setInt(3, dimensions.userKey(msg.getUserId(), msg.getUsername()));
+        ps.setShort(4, (short) dimensions.typeKey(msg.getMessageType()));
+        ps.setTimestamp(5, Timestamp.from(msg.getTimestamp()));
+        Integer serverKey = dimensions.serverKey(msg.getServerId());
+        if (serverKey != null) {
+            ps.setShort(6, serverKey.shortValue());
+        } else {
+            ps.setNull(6, Types.SMALLINT);
+        }
+        ps.setString(7, toInet(msg.getClientIp()));
+        ps.setObject(8, msg.getClientMessageId());
+        ps.setString(9, msg.getMessage());
+    }
 
-            return inserted;
+    /**
+     * INET doesn't accept an IPv6 zone suffix (fe80::1%eth0).
+     */
+    private static String toInet(String clientIp) {
+        if (clientIp == null) {
+            return null;
+        }
+        int zone = clientIp.indexOf('%');
+        return zone >= 0 ? clientIp.substring(0, zone) : clientIp;
+    }
 
-        } catch (SQLException e) {
-            if (conn != null) {
-                try { conn.rollback(); } catch (SQLException ex) { }
+    /**
+     * Streams the batch with binary COPY into a session temp table, then merges it.
+     * One round trip for the data instead of one bind/execute per row.
+     */
+    private int copyInsert(Connection conn, List<PersistentMessage> messages,
+                           List<PersistentMessage> newRows) throws SQLException, IOException {
+        PGConnection pgConn = conn.unwrap(PGConnection.class);
+        if (!stagingReady.contains(pgConn)) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(CREATE_STAGING_SQL);
             }
+            // Committed on its own, so a later rollback can't take the table with it
+            conn.commit();
+            stagingReady.add(pgConn);
+        }
 
-            failureCount.addAndGet(messages.size());
-            System.err.println("❌ Batch insert failed: " + e.getMessage());
-            return 0;
+        boolean normalized = dimensions.isEnabled();
 
-        } finally {
-            if (ps != null) try { ps.close(); } catch (SQLException e) { }
-            if (conn != null) try { conn.close(); } catch (SQLException e) { }
+        try (PGCopyOutputStream copyOut = new PGCopyOutputStream(pgConn, COPY_SQL, 1 << 16)) {
+            MessageCopyEncoder encoder = new MessageCopyEncoder(copyOut);
+            encoder.writeHeader();
+            for (PersistentMessage msg : messages) {
+                encoder.write(msg);
+            }
+            encoder.writeTrailer();
         }
+
+        String merge = normalized ? MERGE_NORMALIZED_SQL : MERGE_SQL;
+        if (newRows == null) {
+            try (Statement stmt = conn.createStatement()) {
+                return stmt.executeUpdate(merge);
+            }
+        }
+
+        // The merge reports which staged rows were new
+        Set<UUID> insertedIds = new HashSet<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(merge + " RETURNING message_id")) {
+            while (rs.next()) {
+                insertedIds.add(rs.getObject(1, UUID.class));
+            }
+        }
+        int inserted = insertedIds.size();
+        for (PersistentMessage msg : messages) {
+            if (insertedIds.remove(msg.getMessageId())) {
+                newRows.add(msg);
+            }
+        }
+        return inserted;
     }
 
     public long getSuccessCount() { return successCount.get(); }
@@ -93,10 +352,24 @@ public class MessageRepository {
         return count > 0 ? (double) totalLatency.get() / count : 0;
     }
 
+    /**
+     * Rows submitted per second of time spent inside batchInsert, for comparing strategies.
+     */
+    public double getRowsPerSecond() {
+        long nanos = writeNanos.get();
+        return nanos > 0 ? rowsSubmitted.get() * 1_000_000_000.0 / nanos : 0;
+    }
+
+    public Map<String, Object> getRollupStats() {
+        return rollups.getStats(writeNanos.get());
+    }
+
     public void printStats() {
         System.out.println("\n=== Database Statistics ===");
+        System.out.println("Write strategy: " + writeStrategy + (dimensions.isEnabled() ? " (normalized)" : ""));
         System.out.println("Messages written: " + successCount.get());
         System.out.println("Failed writes: " + failureCount.get());
         System.out.println("Average batch latency: " + String.format("%.2f", getAverageLatency()) + "ms");
+        System.out.println("Write rate: " + String.format("%.0f", getRowsPerSecond()) + " rows/sec");
     }
-}
\ No newline at end of file
+}
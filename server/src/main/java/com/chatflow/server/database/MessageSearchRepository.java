@@ -0,0 +1,120 @@
+package com.chatflow.server.database;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Keyword search over messages.search_vector, a generated tsvector column
+ * kept up to date by PostgreSQL on insert and indexed with GIN (search.enabled).
+ * Results are newest first and keyset-paginated on (timestamp, message_id),
+ * the same cursor as room history.
+ */
+@Repository
+public class MessageSearchRepository {
+
+    private static final String SELECT_COLUMNS =
+            "SELECT message_id, client_message_id, room_id, user_id, username, message, " +
+                    "message_type, timestamp, server_id FROM messages ";
+
+    private final ReadRouter readRouter;
+    private final Timer queryLatency;
+
+    @Value("${search.enabled:false}")
+    private boolean enabled;
+
+    @Value("${history.fetch-size:200}")
+    private int fetchSize;
+
+    @Value("${history.query-timeout.s:5}")
+    private int queryTimeoutSeconds;
+
+    public MessageSearchRepository(ReadRouter readRouter, MeterRegistry meterRegistry) {
+        this.readRouter = readRouter;
+        this.queryLatency = Timer.builder("chatflow.search.query.latency")
+                .description("Full-text search page queries")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Matches for a websearch-style query ("quoted phrase", or, -excluded),
+     * optionally narrowed to a room and/or user, strictly before cursor.
+     */
+    public int search(String query, String roomId, Integer userId, MessageCursor before, int limit,
+                      Consumer<PersistentMessage> consumer) throws SQLException {
+        StringBuilder sql = new StringBuilder(SELECT_COLUMNS)
+                .append("WHERE search_vector @@ websearch_to_tsquery('simple', ?) ");
+        List<Object> params = new ArrayList<>();
+        params.add(query);
+        if (roomId != null) {
+            sql.append("AND room_id = ? ");
+            params.add(roomId);
+        }
+        if (userId != null) {
+            sql.append("AND user_id = ? ");
+            params.add(userId);
+        }
+        if (before != null) {
+            sql.append("AND (timestamp, message_id) < (?, ?) ");
+            params.add(Timestamp.from(before.getTimestamp()));
+            params.add(before.getMessageId());
+        }
+        sql.append("ORDER BY timestamp DESC, message_id DESC LIMIT ?");
+        params.add(limit);
+
+        long start = System.nanoTime();
+        int rows = 0;
+        try (Connection conn = readRouter.getConnection(ReadRouter.Consistency.REPLICA_OK);
+             PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            ps.setFetchSize(fetchSize);
+            ps.setQueryTimeout(queryTimeoutSeconds);
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    consumer.accept(toMessage(rs));
+                    rows++;
+                }
+            }
+            conn.commit();
+        } finally {
+            queryLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return rows;
+    }
+
+    private PersistentMessage toMessage(ResultSet rs) throws SQLException {
+        UUID messageId = rs.getObject(1, UUID.class);
+        UUID clientMessageId = rs.getObject(2, UUID.class);
+        return new PersistentMessage(
+                messageId,
+                clientMessageId != null ? clientMessageId : messageId,
+                rs.getString(3),
+                rs.getInt(4),
+                rs.getString(5),
+                rs.getString(6),
+                rs.getString(7),
+                rs.getTimestamp(8).toInstant(),
+                rs.getString(9),
+                null
+        );
+    }
+}
@@ -0,0 +1,119 @@
+package com.chatflow.server.database;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read side of the rollup tables maintained by RollupWriter. Every query is a
+ * range scan over buckets, so its cost depends on the time range and
+ * granularity, not on how many messages were sent. Served from the replica
+ * when there is one.
+ */
+@Repository
+public class MessageStatsRepository {
+
+    private static final String ROOM_SERIES_SQL =
+            "SELECT date_trunc(?, bucket) AS b, SUM(messages) FROM " + RollupWriter.ROOM_MINUTE_TABLE + " " +
+                    "WHERE room_id = ? AND bucket >= ? AND bucket < ? GROUP BY b ORDER BY b";
+
+    private static final String USER_SERIES_SQL =
+            "SELECT date_trunc(?, bucket) AS b, SUM(messages) FROM " + RollupWriter.USER_HOUR_TABLE + " " +
+                    "WHERE user_id = ? AND bucket >= ? AND bucket < ? GROUP BY b ORDER BY b";
+
+    private static final String ROOM_TOTALS_SQL =
+            "SELECT room_id, SUM(messages) AS total FROM " + RollupWriter.ROOM_MINUTE_TABLE + " " +
+                    "WHERE bucket >= ? AND bucket < ? GROUP BY room_id ORDER BY total DESC";
+
+    private static final String TYPE_TOTALS_SQL =
+            "SELECT message_type, SUM(messages) AS total FROM " + RollupWriter.TYPE_MINUTE_TABLE + " " +
+                    "WHERE bucket >= ? AND bucket < ? GROUP BY message_type ORDER BY total DESC";
+
+    private final ReadRouter readRouter;
+
+    @Value("${history.query-timeout.s:5}")
+    private int queryTimeoutSeconds;
+
+    public MessageStatsRepository(ReadRouter readRouter) {
+        this.readRouter = readRouter;
+    }
+
+    /**
+     * Message counts for one room per bucket; granularity is a date_trunc unit
+     * no finer than a minute.
+     */
+    public List<Map<String, Object>> roomSeries(String roomId, String granularity, Instant from, Instant to)
+            throws SQLException {
+        return series(ROOM_SERIES_SQL, granularity, roomId, from, to);
+    }
+
+    /**
+     * Message counts for one user per bucket; no finer than an hour.
+     */
+    public List<Map<String, Object>> userSeries(int userId, String granularity, Instant from, Instant to)
+            throws SQLException {
+        return series(USER_SERIES_SQL, granularity, userId, from, to);
+    }
+
+    public List<Map<String, Object>> roomTotals(Instant from, Instant to) throws SQLException {
+        return totals(ROOM_TOTALS_SQL, "roomId", from, to);
+    }
+
+    public List<Map<String, Object>> typeTotals(Instant from, Instant to) throws SQLException {
+        return totals(TYPE_TOTALS_SQL, "messageType", from, to);
+    }
+
+    private List<Map<String, Object>> series(String sql, String granularity, Object key, Instant from, Instant to)
+            throws SQLException {
+        List<Map<String, Object>> points = new ArrayList<>();
+        try (Connection conn = readRouter.getConnection(ReadRouter.Consistency.REPLICA_OK);
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setQueryTimeout(queryTimeoutSeconds);
+            ps.setString(1, granularity);
+            ps.setObject(2, key);
+            ps.setTimestamp(3, Timestamp.from(from));
+            ps.setTimestamp(4, Timestamp.from(to));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Map<String, Object> point = new LinkedHashMap<>();
+                    point.put("bucket", rs.getTimestamp(1).toInstant().toString());
+                    point.put("messages", rs.getLong(2));
+                    points.add(point);
+                }
+            }
+            conn.commit();
+        }
+        return points;
+    }
+
+    private List<Map<String, Object>> totals(String sql, String keyName, Instant from, Instant to)
+            throws SQLException {
+        List<Map<String, Object>> totals = new ArrayList<>();
+        try (Connection conn = readRouter.getConnection(ReadRouter.Consistency.REPLICA_OK);
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setQueryTimeout(queryTimeoutSeconds);
+            ps.setTimestamp(1, Timestamp.from(from));
+            ps.setTimestamp(2, Timestamp.from(to));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Map<String, Object> total = new LinkedHashMap<>();
+                    total.put(keyName, rs.getString(1));
+                    total.put("messages", rs.getLong(2));
+                    totals.add(total);
+                }
+            }
+            conn.commit();
+        }
+        return totals;
+    }
+}
@@ -0,0 +1,261 @@
+package com.chatflow.server.database;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lifecycle of the range partitions of a partitioned messages table:
+ * creates partitions ahead of time and detaches/drops those past retention.
+ *
+ * Partitions are named messages_pYYYYMMDD (daily) or messages_pYYYYMMDDHH (hourly).
+ * Bounds are local TIMESTAMP values in the JVM zone, same as the insert path.
+ * Ingress keeps message timestamps within ingress.timestamp.max-skew.ms of
+ * server time, so partitions are made from now minus that skew onwards.
+ * Rows that still reached messages_default for a range (e.g. written before
+ * its partition existed) are moved into the partition when it is created.
+ */
+@Component
+public class PartitionManager {
+
+    private static final String PARTITION_PREFIX = "messages_p";
+    private static final String CHECK_VIOLATION = "23514";
+
+    // Generated columns (search_vector) can't be inserted and are recomputed anyway
+    private static final String INSERTABLE_COLUMNS_SQL =
+            "SELECT string_agg(quote_ident(attname), ', ' ORDER BY attnum) FROM pg_attribute " +
+                    "WHERE attrelid = 'messages'::regclass AND attnum > 0 AND NOT attisdropped AND attgenerated = ''";
+
+    private final DataSource dataSource;
+    private final MessageRepository repository;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicLong partitionCount = new AtomicLong(0);
+    private final AtomicLong rowEstimate = new AtomicLong(0);
+
+    @Value("${database.partitioning.enabled:false}")
+    private boolean enabled;
+
+    @Value("${database.partitioning.interval:daily}")
+    private String interval;
+
+    @Value("${database.partitioning.premake:3}")
+    private int premake;
+
+    @Value("${database.partitioning.retention:0}")
+    private int retention;
+
+    @Value("${database.partitioning.maintenance-interval.ms:600000}")
+    private long maintenanceIntervalMs;
+
+    @Value("${ingress.timestamp.max-skew.ms:300000}")
+    private long maxSkewMs;
+
+    public PartitionManager(DataSource dataSource, MessageRepository repository, MeterRegistry meterRegistry) {
+        this.dataSource = dataSource;
+        this.repository = repository;
+        Gauge.builder("chatflow.db.partitions", partitionCount, AtomicLong::get)
+                .description("Partitions attached to the messages table")
+                .register(meterRegistry);
+        Gauge.builder("chatflow.db.messages.rows.estimate", rowEstimate, AtomicLong::get)
+                .description("Planner row estimate for the messages table")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isHourly() {
+        return "hourly".equalsIgnoreCase(interval);
+    }
+
+    /**
+     * Start of the partition containing the given time.
+     */
+    public LocalDateTime floor(LocalDateTime time) {
+        return isHourly() ? time.truncatedTo(ChronoUnit.HOURS) : time.truncatedTo(ChronoUnit.DAYS);
+    }
+
+    public LocalDateTime next(LocalDateTime start) {
+        return isHourly() ? start.plusHours(1) : start.plusDays(1);
+    }
+
+    public String partitionName(LocalDateTime start) {
+        return PARTITION_PREFIX + start.format(DateTimeFormatter.ofPattern(isHourly() ? "yyyyMMddHH" : "yyyyMMdd"));
+    }
+
+    /**
+     * Create partitions up front and schedule periodic maintenance.
+     * Called by SchemaManager once the parent table exists.
+     */
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        maintain();
+        scheduler.scheduleWithFixedDelay(this::maintain, maintenanceIntervalMs, maintenanceIntervalMs, TimeUnit.MILLISECONDS);
+        System.out.println("✓ Partition maintenance scheduled (" + interval + ", premake " + premake
+                + ", retention " + (retention > 0 ? retention + " partitions" : "unlimited") + ")");
+    }
+
+    public void maintain() {
+        try {
+            createAhead();
+            if (retention > 0) {
+                dropExpired();
+            }
+            reportGrowth();
+        } catch (Exception e) {
+            System.err.println("❌ Partition maintenance failed: " + e.getMessage());
+        }
+    }
+
+    private void createAhead() throws SQLException {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime last = floor(now);
+        for (int i = 0; i < premake; i++) {
+            last = next(last);
+        }
+        LocalDateTime start = floor(now.minus(maxSkewMs, ChronoUnit.MILLIS));
+        for (; !start.isAfter(last); start = next(start)) {
+            // Each partition in its own transaction: an overlap with an attached
+            // legacy table must not abort the rest
+            createPartition(start, next(start));
+        }
+    }
+
+    private void createPartition(LocalDateTime start, LocalDateTime end) throws SQLException {
+        String name = partitionName(start);
+        String create = String.format(
+                "CREATE TABLE IF NOT EXISTS %s PARTITION OF messages FOR VALUES FROM ('%s') TO ('%s')",
+                name, start, end);
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            try {
+                stmt.execute(create);
+                conn.commit();
+                return;
+            } catch (SQLException e) {
+                conn.rollback();
+                if (!CHECK_VIOLATION.equals(e.getSQLState())) {
+                    System.err.println("⚠️ Skipped: " + create + " (" + e.getMessage() + ")");
+                    return;
+                }
+            }
+            // messages_default holds rows of this range: move them into the new partition
+            try {
+                int moved = moveOutOfDefault(stmt, create, start, end);
+                conn.commit();
+                System.out.println("📦 Created partition " + name + ", moved " + moved + " rows out of messages_default");
+            } catch (SQLException e) {
+                conn.rollback();
+                System.err.println("❌ Could not create partition " + name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * One transaction: writes are held off for its duration (the create needs
+     * an exclusive lock anyway), so no row lands in default between the copy
+     * and the delete.
+     */
+    private int moveOutOfDefault(Statement stmt, String create, LocalDateTime start, LocalDateTime end)
+            throws SQLException {
+        stmt.execute("LOCK TABLE messages IN EXCLUSIVE MODE");
+        String columns;
+        try (ResultSet rs = stmt.executeQuery(INSERTABLE_COLUMNS_SQL)) {
+            rs.next();
+            columns = rs.getString(1);
+        }
+        // Literal bounds as in the create: CREATE TABLE AS takes no bind parameters
+        String range = String.format("WHERE timestamp >= '%s' AND timestamp < '%s'", start, end);
+        stmt.execute("CREATE TEMP TABLE partition_move ON COMMIT DROP AS SELECT * FROM messages_default " + range);
+        stmt.executeUpdate("DELETE FROM messages_default " + range);
+        stmt.execute(create);
+        return stmt.executeUpdate("INSERT INTO messages (" + columns + ") SELECT " + columns + " FROM partition_move");
+    }
+
+    private void dropExpired() throws SQLException {
+        LocalDateTime cutoff = floor(LocalDateTime.now());
+        for (int i = 0; i < retention; i++) {
+            cutoff = isHourly() ? cutoff.minusHours(1) : cutoff.minusDays(1);
+        }
+        String cutoffName = partitionName(cutoff);
+
+        for (String partition : listPartitions()) {
+            // Names sort chronologically; skip legacy/default partitions that don't follow the scheme
+            if (!partition.startsWith(PARTITION_PREFIX)
+                    || partition.length() != cutoffName.length()
+                    || partition.compareTo(cutoffName) >= 0) {
+                continue;
+            }
+            try (Connection conn = dataSource.getConnection();
+                 Statement stmt = conn.createStatement()) {
+                stmt.execute("ALTER TABLE messages DETACH PARTITION " + partition);
+                stmt.execute("DROP TABLE " + partition);
+                conn.commit();
+                System.out.println("🗑️  Dropped expired partition " + partition);
+            }
+        }
+    }
+
+    public List<String> listPartitions() throws SQLException {
+        List<String> partitions = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                     "SELECT c.relname FROM pg_inherits i " +
+                             "JOIN pg_class c ON c.oid = i.inhrelid " +
+                             "JOIN pg_class p ON p.oid = i.inhparent " +
+                             "WHERE p.relname = 'messages' ORDER BY c.relname")) {
+            while (rs.next()) {
+                partitions.add(rs.getString(1));
+            }
+            conn.commit();
+        }
+        return partitions;
+    }
+
+    /**
+     * Track insert throughput against table size so degradation with growth is visible.
+     */
+    private void reportGrowth() throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                     "SELECT COUNT(*), COALESCE(SUM(GREATEST(c.reltuples, 0)), 0)::bigint FROM pg_inherits i " +
+                             "JOIN pg_class c ON c.oid = i.inhrelid " +
+                             "JOIN pg_class p ON p.oid = i.inhparent " +
+                             "WHERE p.relname = 'messages'")) {
+            if (rs.next()) {
+                partitionCount.set(rs.getLong(1));
+                rowEstimate.set(rs.getLong(2));
+            }
+            conn.commit();
+        }
+        System.out.println(String.format("📈 messages: %d partitions, ~%d rows, write rate %.0f rows/sec",
+                partitionCount.get(), rowEstimate.get(), repository.getRowsPerSecond()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,74 @@
+package com.chatflow.server.database;
+
+import java.util.Arrays;
+
+/**
+ * Delivery tags for the messages in one writer batch, kept in parallel with
+ * the batch list. Reused across flushes, so it only grows, never reallocates
+ * per batch.
+ */
+public class PendingAcks {
+
+    private AckTracker[] trackers;
+    private long[] tags;
+    private int size = 0;
+
+    public PendingAcks(int initialCapacity) {
+        this.trackers = new AckTracker[Math.max(16, initialCapacity)];
+        this.tags = new long[trackers.length];
+    }
+
+    void add(AckTracker tracker, long tag) {
+        if (size == tags.length) {
+            trackers = Arrays.copyOf(trackers, size * 2);
+            tags = Arrays.copyOf(tags, size * 2);
+        }
+        trackers[size] = tracker;
+        tags[size] = tag;
+        size++;
+    }
+
+    /**
+     * Batch committed: mark every tag, then flush each distinct tracker once.
+     */
+    public void commit() {
+        settle(true);
+    }
+
+    /**
+     * Batch rolled back: return every delivery to the broker.
+     */
+    public void fail() {
+        settle(false);
+    }
+
+    private void settle(boolean committed) {
+        for (int i = 0; i < size; i++) {
+            if (trackers[i] == null) continue;
+            if (committed) {
+                trackers[i].committed(tags[i]);
+            } else {
+                trackers[i].failed(tags[i]);
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            AckTracker tracker = trackers[i];
+            if (tracker == null) continue;
+            tracker.flush();
+            // Clear later references to the same tracker so it's flushed once
+            for (int j = i; j < size; j++) {
+                if (trackers[j] == tracker) trackers[j] = null;
+            }
+        }
+        clear();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(trackers, 0, size, null);
+        size = 0;
+    }
+}
@@ -5,6 +5,7 @@ import java.util.UUID;
 
 public class PersistentMessage {
     private final UUID messageId;
+    private final UUID clientMessageId;
     private final String roomId;
     private final int userId;
     private final String username;
@@ -17,9 +18,27 @@ public class PersistentMessage {
     public PersistentMessage(String messageId, String roomId, String userId, String username,
                              String message, String messageType, Instant timestamp,
                              String serverId, String clientIp) {
-        this.messageId = UUID.fromString(messageId);
+        this(UUID.fromString(messageId), roomId, Integer.parseInt(userId), username,
+                message, messageType, timestamp, serverId, clientIp);
+    }
+
+    public PersistentMessage(UUID messageId, String roomId, int userId, String username,
+                             String message, String messageType, Instant timestamp,
+                             String serverId, String clientIp) {
+        this(messageId, messageId, roomId, userId, username, message, messageType, timestamp, serverId, clientIp);
+    }
+
+    /**
+     * messageId is the server-assigned key; clientMessageId is the id the client
+     * sent, kept for deduplicating retries.
+     */
+    public PersistentMessage(UUID messageId, UUID clientMessageId, String roomId, int userId, String username,
+                             String message, String messageType, Instant timestamp,
+                             String serverId, String clientIp) {
+        this.messageId = messageId;
+        this.clientMessageId = clientMessageId;
         this.roomId = roomId;
-        this.userId = Integer.parseInt(userId);
+        this.userId = userId;
         this.username = username;
         this.message = message;
         this.messageType = messageType;
@@ -30,6 +49,7 @@ public class PersistentMessage {
 
     // Getters
     public UUID getMessageId() { return messageId; }
+    public UUID getClientMessageId() { return clientMessageId; }
     public String getRoomId() { return roomId; }
     public int getUserId() { return userId; }
     public String getUsername() { return username; }
@@ -0,0 +1,100 @@
+package com.chatflow.server.database;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Fixed-layout binary encoding of PersistentMessage for the persistence exchange.
+ *
+ * Layout (big-endian): version byte, message id (2 longs), client message id
+ * (2 longs, since v2), epoch seconds (long), nanos (int), user id (int), then
+ * roomId, username, message, messageType, serverId and clientIp as short
+ * length + UTF-8 bytes (length -1 = null). v1 records are still decoded so
+ * mixed-version nodes can share the persistence queue during a rollout.
+ */
+public final class PersistentMessageCodec {
+
+    private static final byte VERSION = 2;
+    private static final byte VERSION_1 = 1;
+    private static final int FIXED_SIZE = 1 + 16 + 16 + 8 + 4 + 4;
+
+    private PersistentMessageCodec() {}
+
+    public static byte[] encode(PersistentMessage msg) {
+        byte[] roomId = utf8(msg.getRoomId());
+        byte[] username = utf8(msg.getUsername());
+        byte[] message = utf8(msg.getMessage());
+        byte[] messageType = utf8(msg.getMessageType());
+        byte[] serverId = utf8(msg.getServerId());
+        byte[] clientIp = utf8(msg.getClientIp());
+
+        int size = FIXED_SIZE + sized(roomId) + sized(username) + sized(message)
+                + sized(messageType) + sized(serverId) + sized(clientIp);
+
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.put(VERSION);
+        buf.putLong(msg.getMessageId().getMostSignificantBits());
+        buf.putLong(msg.getMessageId().getLeastSignificantBits());
+        buf.putLong(msg.getClientMessageId().getMostSignificantBits());
+        buf.putLong(msg.getClientMessageId().getLeastSignificantBits());
+        buf.putLong(msg.getTimestamp().getEpochSecond());
+        buf.putInt(msg.getTimestamp().getNano());
+        buf.putInt(msg.getUserId());
+        putString(buf, roomId);
+        putString(buf, username);
+        putString(buf, message);
+        putString(buf, messageType);
+        putString(buf, serverId);
+        putString(buf, clientIp);
+        return buf.array();
+    }
+
+    public static PersistentMessage decode(byte[] body) {
+        ByteBuffer buf = ByteBuffer.wrap(body);
+        byte version = buf.get();
+        if (version != VERSION && version != VERSION_1) {
+            throw new IllegalArgumentException("Unsupported persistence record version: " + version);
+        }
+        UUID messageId = new UUID(buf.getLong(), buf.getLong());
+        UUID clientMessageId = version == VERSION_1 ? messageId : new UUID(buf.getLong(), buf.getLong());
+        Instant timestamp = Instant.ofEpochSecond(buf.getLong(), buf.getInt());
+        int userId = buf.getInt();
+        String roomId = getString(buf);
+        String username = getString(buf);
+        String message = getString(buf);
+        String messageType = getString(buf);
+        String serverId = getString(buf);
+        String clientIp = getString(buf);
+        return new PersistentMessage(messageId, clientMessageId, roomId, userId, username,
+                message, messageType, timestamp, serverId, clientIp);
+    }
+
+    private static byte[] utf8(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static int sized(byte[] bytes) {
+        return 2 + (bytes != null ? bytes.length : 0);
+    }
+
+    private static void putString(ByteBuffer buf, byte[] bytes) {
+        if (bytes == null) {
+            buf.putShort((short) -1);
+            return;
+        }
+        buf.putShort((short) bytes.length);
+        buf.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buf) {
+        int length = buf.getShort();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(buf.array(), buf.position(), length, StandardCharsets.UTF_8);
+        buf.position(buf.position() + length);
+        return value;
+    }
+}
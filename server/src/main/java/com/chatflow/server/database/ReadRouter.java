@@ -0,0 +1,170 @@
+package com.chatflow.server.database;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands out connections for read-only queries. Callers say how fresh the
+ * data has to be: REPLICA_OK reads go to the replica while its measured lag
+ * is within database.read.replica.max-lag.ms, PRIMARY reads (and replica
+ * reads while it lags or is down) go to the primary's read pool. Neither
+ * touches the write pool.
+ */
+public class ReadRouter implements AutoCloseable {
+
+    public enum Consistency {
+        /** Must see everything committed so far, e.g. resuming a session from a cursor. */
+        PRIMARY,
+        /** May be up to max-lag behind, e.g. browsing history or dashboards. */
+        REPLICA_OK
+    }
+
+    // Replay LSN catching up to receive LSN means the replica has applied all it got;
+    // replay timestamp alone keeps growing while the primary is idle
+    private static final String LAG_SQL =
+            "SELECT CASE WHEN NOT pg_is_in_recovery() THEN 0 " +
+                    "WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+                    "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0) END";
+
+    private final HikariDataSource primaryReads;
+    private final HikariDataSource replicaReads;
+    private final long maxLagMs;
+    private final ScheduledExecutorService lagChecker;
+    private final Counter replicaRoutes;
+    private final Counter primaryRoutes;
+    private final Counter replicaFallbacks;
+
+    // -1 while unknown or unreachable
+    private volatile long replicaLagMs = -1;
+
+    ReadRouter(HikariDataSource primaryReads, HikariDataSource replicaReads, long maxLagMs, long lagCheckMs,
+               MeterRegistry meterRegistry) {
+        this.primaryReads = primaryReads;
+        this.replicaReads = replicaReads;
+        this.maxLagMs = maxLagMs;
+        this.replicaRoutes = routes(meterRegistry, "replica");
+        this.primaryRoutes = routes(meterRegistry, "primary");
+        this.replicaFallbacks = Counter.builder("chatflow.db.read.replica.fallbacks")
+                .description("Replica-eligible reads sent to the primary because the replica lagged or failed")
+                .register(meterRegistry);
+
+        if (replicaReads != null) {
+            Gauge.builder("chatflow.db.read.replica.lag", () -> replicaLagMs)
+                    .description("Replica replay lag in ms (-1 = unknown or unreachable)")
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+            lagChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "replica-lag-check");
+                t.setDaemon(true);
+                return t;
+            });
+            lagChecker.scheduleWithFixedDelay(this::checkLag, 0, lagCheckMs, TimeUnit.MILLISECONDS);
+        } else {
+            lagChecker = null;
+        }
+    }
+
+    private static Counter routes(MeterRegistry meterRegistry, String target) {
+        return Counter.builder("chatflow.db.read.routes")
+                .description("Read connections handed out, by target")
+                .tag("target", target)
+                .register(meterRegistry);
+    }
+
+    /**
+     * A read-only connection with autocommit off; close it when done.
+     */
+    public Connection getConnection(Consistency consistency) throws SQLException {
+        if (consistency == Consistency.REPLICA_OK && replicaReads != null) {
+            if (replicaUsable()) {
+                try {
+                    Connection conn = replicaReads.getConnection();
+                    replicaRoutes.increment();
+                    return conn;
+                } catch (SQLException e) {
+                    // Pool timeout or replica down; the next lag check decides when to come back
+                    replicaLagMs = -1;
+                }
+            }
+            replicaFallbacks.increment();
+        }
+        primaryRoutes.increment();
+        return primaryReads.getConnection();
+    }
+
+    private boolean replicaUsable() {
+        long lag = replicaLagMs;
+        return lag >= 0 && lag <= maxLagMs;
+    }
+
+    private void checkLag() {
+        try (Connection conn = replicaReads.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(LAG_SQL)) {
+            rs.next();
+            long lag = Math.round(rs.getDouble(1));
+            conn.commit();
+            if (replicaUsable() && lag > maxLagMs) {
+                System.err.println("⚠️ Replica lag " + lag + "ms over " + maxLagMs + "ms; reading from primary");
+            }
+            replicaLagMs = lag;
+        } catch (Exception e) {
+            if (replicaLagMs >= 0) {
+                System.err.println("⚠️ Replica unreachable, reading from primary: " + e.getMessage());
+            }
+            replicaLagMs = -1;
+        }
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("replicaConfigured", replicaReads != null);
+        if (replicaReads != null) {
+            status.put("replicaLagMs", replicaLagMs);
+            status.put("replicaInUse", replicaUsable());
+            status.put("maxLagMs", maxLagMs);
+        }
+        status.put("primaryReadPool", poolStatus(primaryReads));
+        if (replicaReads != null) {
+            status.put("replicaPool", poolStatus(replicaReads));
+        }
+        return status;
+    }
+
+    public static Map<String, Object> poolStatus(HikariDataSource pool) {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("name", pool.getPoolName());
+        status.put("maxSize", pool.getMaximumPoolSize());
+        HikariPoolMXBean bean = pool.getHikariPoolMXBean();
+        if (bean != null) {
+            status.put("active", bean.getActiveConnections());
+            status.put("idle", bean.getIdleConnections());
+            status.put("waiting", bean.getThreadsAwaitingConnection());
+        }
+        return status;
+    }
+
+    @Override
+    public void close() {
+        if (lagChecker != null) {
+            lagChecker.shutdownNow();
+        }
+        primaryReads.close();
+        if (replicaReads != null) {
+            replicaReads.close();
+        }
+    }
+}
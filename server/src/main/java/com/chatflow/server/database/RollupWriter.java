@@ -0,0 +1,233 @@
+package com.chatflow.server.database;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps pre-aggregated message counts (room per minute, user per hour, type
+ * per minute) in step with the messages table. Each batch is counted in
+ * memory and upserted in the writer's own transaction, one statement per
+ * rollup, so counts are exact and only cover rows that were really inserted.
+ *
+ * Keys are sent in sorted order so concurrent writers lock rollup rows in the
+ * same order and can't deadlock. The upserts run last, right before commit,
+ * because the current minute's type rows are shared by every writer.
+ */
+@Component
+public class RollupWriter {
+
+    static final String ROOM_MINUTE_TABLE = "message_stats_room_minute";
+    static final String USER_HOUR_TABLE = "message_stats_user_hour";
+    static final String TYPE_MINUTE_TABLE = "message_stats_type_minute";
+
+    private static final String UPSERT_ROOM_SQL =
+            "INSERT INTO " + ROOM_MINUTE_TABLE + " (room_id, bucket, messages) " +
+                    "SELECT * FROM unnest(?::varchar[], ?::timestamp[], ?::bigint[]) " +
+                    "ON CONFLICT (room_id, bucket) DO UPDATE SET messages = " + ROOM_MINUTE_TABLE + ".messages + EXCLUDED.messages";
+
+    private static final String UPSERT_USER_SQL =
+            "INSERT INTO " + USER_HOUR_TABLE + " (user_id, bucket, messages) " +
+                    "SELECT * FROM unnest(?::integer[], ?::timestamp[], ?::bigint[]) " +
+                    "ON CONFLICT (user_id, bucket) DO UPDATE SET messages = " + USER_HOUR_TABLE + ".messages + EXCLUDED.messages";
+
+    private static final String UPSERT_TYPE_SQL =
+            "INSERT INTO " + TYPE_MINUTE_TABLE + " (message_type, bucket, messages) " +
+                    "SELECT * FROM unnest(?::varchar[], ?::timestamp[], ?::bigint[]) " +
+                    "ON CONFLICT (message_type, bucket) DO UPDATE SET messages = " + TYPE_MINUTE_TABLE + ".messages + EXCLUDED.messages";
+
+    /**
+     * A rollup row: dimension value plus time bucket, ordered the way the primary key is.
+     */
+    private static final class Key<D extends Comparable<D>> implements Comparable<Key<D>> {
+        final D dimension;
+        final LocalDateTime bucket;
+
+        Key(D dimension, LocalDateTime bucket) {
+            this.dimension = dimension;
+            this.bucket = bucket;
+        }
+
+        @Override
+        public int compareTo(Key<D> other) {
+            int byDimension = dimension.compareTo(other.dimension);
+            return byDimension != 0 ? byDimension : bucket.compareTo(other.bucket);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key<?> other = (Key<?>) o;
+            return dimension.equals(other.dimension) && bucket.equals(other.bucket);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(dimension, bucket);
+        }
+    }
+
+    private final Timer upsertLatency;
+    private final DistributionSummary amplification;
+    private final Counter rollupRows;
+    private final AtomicLong messagesCounted = new AtomicLong(0);
+    private final AtomicLong rowsUpserted = new AtomicLong(0);
+    private final AtomicLong upsertNanos = new AtomicLong(0);
+
+    @Value("${database.rollups.enabled:false}")
+    private boolean enabled;
+
+    public RollupWriter(MeterRegistry meterRegistry) {
+        this.upsertLatency = Timer.builder("chatflow.db.rollup.latency")
+                .description("Time spent upserting rollups per batch, inside the write transaction")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.amplification = DistributionSummary.builder("chatflow.db.rollup.amplification")
+                .description("Rollup rows upserted per inserted message, per batch")
+                .register(meterRegistry);
+        this.rollupRows = Counter.builder("chatflow.db.rollup.rows")
+                .description("Rollup rows upserted")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Creates the rollup tables; when they are new, seeds them from the
+     * messages already stored so they start out consistent.
+     */
+    void createTables(Statement stmt) throws SQLException {
+        boolean exists;
+        try (ResultSet rs = stmt.executeQuery("SELECT to_regclass('" + ROOM_MINUTE_TABLE + "') IS NOT NULL")) {
+            rs.next();
+            exists = rs.getBoolean(1);
+        }
+
+        System.out.println("📋 Creating rollup tables...");
+        stmt.execute("CREATE TABLE IF NOT EXISTS " + ROOM_MINUTE_TABLE + " (room_id VARCHAR(10) NOT NULL, " +
+                "bucket TIMESTAMP NOT NULL, messages BIGINT NOT NULL, PRIMARY KEY (room_id, bucket))");
+        stmt.execute("CREATE TABLE IF NOT EXISTS " + USER_HOUR_TABLE + " (user_id INTEGER NOT NULL, " +
+                "bucket TIMESTAMP NOT NULL, messages BIGINT NOT NULL, PRIMARY KEY (user_id, bucket))");
+        stmt.execute("CREATE TABLE IF NOT EXISTS " + TYPE_MINUTE_TABLE + " (message_type VARCHAR(10) NOT NULL, " +
+                "bucket TIMESTAMP NOT NULL, messages BIGINT NOT NULL, PRIMARY KEY (message_type, bucket))");
+        // Time-range queries across all rooms (GET /stats/rooms)
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_" + ROOM_MINUTE_TABLE + "_bucket ON " + ROOM_MINUTE_TABLE + "(bucket)");
+
+        if (!exists) {
+            stmt.execute("INSERT INTO " + ROOM_MINUTE_TABLE + " SELECT room_id, date_trunc('minute', timestamp), COUNT(*) " +
+                    "FROM messages GROUP BY 1, 2");
+            stmt.execute("INSERT INTO " + USER_HOUR_TABLE + " SELECT user_id, date_trunc('hour', timestamp), COUNT(*) " +
+                    "FROM messages GROUP BY 1, 2");
+            stmt.execute("INSERT INTO " + TYPE_MINUTE_TABLE + " SELECT message_type, date_trunc('minute', timestamp), COUNT(*) " +
+                    "FROM messages GROUP BY 1, 2");
+            System.out.println("   ✓ Rollup tables created and backfilled from messages");
+        } else {
+            System.out.println("   ✓ Rollup tables ready");
+        }
+    }
+
+    /**
+     * Adds the batch's newly inserted messages to the rollups. Runs on the
+     * caller's connection and commits with it.
+     */
+    void apply(Connection conn, List<PersistentMessage> inserted) throws SQLException {
+        if (inserted.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+
+        TreeMap<Key<String>, Long> rooms = new TreeMap<>();
+        TreeMap<Key<Integer>, Long> users = new TreeMap<>();
+        TreeMap<Key<String>, Long> types = new TreeMap<>();
+        for (PersistentMessage msg : inserted) {
+            // Bucketed as stored (TIMESTAMP in the JVM zone), to match date_trunc in the backfill
+            LocalDateTime stored = Timestamp.from(msg.getTimestamp()).toLocalDateTime();
+            LocalDateTime minute = stored.truncatedTo(ChronoUnit.MINUTES);
+            LocalDateTime hour = stored.truncatedTo(ChronoUnit.HOURS);
+            rooms.merge(new Key<>(msg.getRoomId(), minute), 1L, Long::sum);
+            users.merge(new Key<>(msg.getUserId(), hour), 1L, Long::sum);
+            types.merge(new Key<>(msg.getMessageType(), minute), 1L, Long::sum);
+        }
+
+        upsert(conn, UPSERT_ROOM_SQL, "varchar", rooms);
+        upsert(conn, UPSERT_USER_SQL, "int4", users);
+        upsert(conn, UPSERT_TYPE_SQL, "varchar", types);
+
+        long elapsed = System.nanoTime() - start;
+        int rows = rooms.size() + users.size() + types.size();
+        upsertLatency.record(elapsed, TimeUnit.NANOSECONDS);
+        amplification.record((double) rows / inserted.size());
+        rollupRows.increment(rows);
+        messagesCounted.addAndGet(inserted.size());
+        rowsUpserted.addAndGet(rows);
+        upsertNanos.addAndGet(elapsed);
+    }
+
+    private <D extends Comparable<D>> void upsert(Connection conn, String sql, String dimensionType,
+                                                  TreeMap<Key<D>, Long> counts) throws SQLException {
+        Object[] dimensions = new Object[counts.size()];
+        Timestamp[] buckets = new Timestamp[counts.size()];
+        Long[] messages = new Long[counts.size()];
+        int i = 0;
+        for (Map.Entry<Key<D>, Long> entry : counts.entrySet()) {
+            dimensions[i] = entry.getKey().dimension;
+            buckets[i] = Timestamp.valueOf(entry.getKey().bucket);
+            messages[i] = entry.getValue();
+            i++;
+        }
+
+        Array dimensionArray = conn.createArrayOf(dimensionType, dimensions);
+        Array bucketArray = conn.createArrayOf("timestamp", buckets);
+        Array messageArray = conn.createArrayOf("int8", messages);
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setArray(1, dimensionArray);
+            ps.setArray(2, bucketArray);
+            ps.setArray(3, messageArray);
+            ps.executeUpdate();
+        } finally {
+            dimensionArray.free();
+            bucketArray.free();
+            messageArray.free();
+        }
+    }
+
+    /**
+     * Write amplification since startup: extra rows written per message and
+     * the share of write time spent on rollups.
+     */
+    public Map<String, Object> getStats(long totalWriteNanos) {
+        long messages = messagesCounted.get();
+        long rows = rowsUpserted.get();
+        long nanos = upsertNanos.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("messagesCounted", messages);
+        stats.put("rollupRowsUpserted", rows);
+        stats.put("rollupRowsPerMessage", messages > 0 ? (double) rows / messages : 0.0);
+        stats.put("rollupTimeMs", nanos / 1_000_000);
+        stats.put("shareOfWriteTime", totalWriteNanos > 0 ? (double) nanos / totalWriteNanos : 0.0);
+        return stats;
+    }
+}
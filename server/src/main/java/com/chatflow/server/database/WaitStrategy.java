@@ -0,0 +1,137 @@
+package com.chatflow.server.database;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * How idle writer threads wait for the ring buffer to fill.
+ * Selected with database.writer.wait-strategy: blocking, yielding or parking.
+ */
+public interface WaitStrategy {
+
+    /**
+     * Wait until the ring may have data, or at most timeoutNanos.
+     */
+    void await(WriteRingBuffer ring, long timeoutNanos) throws InterruptedException;
+
+    /**
+     * Called by producers after publishing.
+     */
+    void signal();
+
+    /**
+     * Wake every waiter, used on shutdown.
+     */
+    void signalAll();
+
+    static WaitStrategy of(String name) {
+        switch (name.toLowerCase()) {
+            case "blocking": return new Blocking();
+            case "yielding": return new Yielding();
+            case "parking": return new Parking();
+            default: throw new IllegalArgumentException("Unknown wait strategy: " + name);
+        }
+    }
+
+    /**
+     * Lock + condition. Lowest CPU when idle; producers only take the lock
+     * when a writer is actually waiting.
+     */
+    class Blocking implements WaitStrategy {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private volatile int waiters = 0;
+
+        @Override
+        public void await(WriteRingBuffer ring, long timeoutNanos) throws InterruptedException {
+            lock.lock();
+            try {
+                waiters++;
+                if (ring.isEmpty()) {
+                    notEmpty.awaitNanos(timeoutNanos);
+                }
+            } finally {
+                waiters--;
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void signal() {
+            if (waiters > 0) {
+                signalAll();
+            }
+        }
+
+        @Override
+        public void signalAll() {
+            lock.lock();
+            try {
+                notEmpty.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Busy-spin briefly, then yield. Lowest hand-off latency, burns a core per idle writer.
+     */
+    class Yielding implements WaitStrategy {
+        private static final int SPIN_TRIES = 100;
+
+        @Override
+        public void await(WriteRingBuffer ring, long timeoutNanos) throws InterruptedException {
+            long deadline = System.nanoTime() + timeoutNanos;
+            int spins = SPIN_TRIES;
+            while (ring.isEmpty() && System.nanoTime() < deadline) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (spins > 0) {
+                    spins--;
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+
+        @Override
+        public void signal() {}
+
+        @Override
+        public void signalAll() {}
+    }
+
+    /**
+     * Polls with short parks. Middle ground: no lock on the producer path,
+     * wake-up latency bounded by the park interval.
+     */
+    class Parking implements WaitStrategy {
+        private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+        @Override
+        public void await(WriteRingBuffer ring, long timeoutNanos) throws InterruptedException {
+            long deadline = System.nanoTime() + timeoutNanos;
+            while (ring.isEmpty()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return;
+                }
+                LockSupport.parkNanos(Math.min(remaining, PARK_NANOS));
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+
+        @Override
+        public void signal() {}
+
+        @Override
+        public void signalAll() {}
+    }
+}
@@ -0,0 +1,163 @@
+package com.chatflow.server.database;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded multi-producer / multi-consumer ring buffer for the DB write path.
+ *
+ * Each slot carries a sequence number (Vyukov-style bounded queue): producers
+ * claim a slot by CAS on the tail, consumers claim a whole run of published
+ * slots with a single CAS on the head. Entries are allocated once up front and
+ * reused, so steady-state publishing and draining allocate nothing.
+ */
+public class WriteRingBuffer {
+
+    static final class Entry {
+        PersistentMessage message;
+        long enqueueNanos;
+        AckTracker ackTracker;
+        long deliveryTag;
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final Entry[] entries;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong(0);
+    private final AtomicLong head = new AtomicLong(0);
+    private final WaitStrategy waitStrategy;
+
+    public WriteRingBuffer(int requestedCapacity, WaitStrategy waitStrategy) {
+        int size = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.entries = new Entry[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            entries[i] = new Entry();
+            sequences.set(i, i);
+        }
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Publish a message, waiting up to timeoutMs for space. Returns false if still full.
+     */
+    public boolean offer(PersistentMessage message, long timeoutMs) throws InterruptedException {
+        return offer(message, null, 0, timeoutMs);
+    }
+
+    /**
+     * Publish a message whose broker delivery is settled by ackTracker after commit.
+     */
+    public boolean offer(PersistentMessage message, AckTracker ackTracker, long deliveryTag,
+                         long timeoutMs) throws InterruptedException {
+        long deadline = 0;
+        while (true) {
+            long pos = tail.get();
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    Entry entry = entries[index];
+                    entry.message = message;
+                    entry.enqueueNanos = System.nanoTime();
+                    entry.ackTracker = ackTracker;
+                    entry.deliveryTag = deliveryTag;
+                    sequences.set(index, pos + 1);
+                    waitStrategy.signal();
+                    return true;
+                }
+            } else if (diff < 0) {
+                // Full: back off until a consumer frees a slot
+                long now = System.nanoTime();
+                if (deadline == 0) {
+                    deadline = now + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+                } else if (now >= deadline) {
+                    return false;
+                }
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(10));
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+    }
+
+    /**
+     * Move up to max published messages into sink, and their delivery tags into acks.
+     * Returns the enqueue time (System.nanoTime) of the oldest drained message, or 0 if none.
+     */
+    public long drainTo(List<PersistentMessage> sink, PendingAcks acks, int max) {
+        while (true) {
+            long pos = head.get();
+            int available = 0;
+            while (available < max && sequences.get((int) ((pos + available) & mask)) == pos + available + 1) {
+                available++;
+            }
+            if (available == 0) {
+                return 0;
+            }
+            if (!head.compareAndSet(pos, pos + available)) {
+                continue;
+            }
+
+            long oldest = 0;
+            for (int i = 0; i < available; i++) {
+                long seq = pos + i;
+                int index = (int) (seq & mask);
+                Entry entry = entries[index];
+                sink.add(entry.message);
+                if (i == 0) {
+                    oldest = entry.enqueueNanos;
+                }
+                if (entry.ackTracker != null) {
+                    acks.add(entry.ackTracker, entry.deliveryTag);
+                    entry.ackTracker = null;
+                }
+                entry.message = null;
+                sequences.set(index, seq + capacity);
+            }
+            return oldest;
+        }
+    }
+
+    public void awaitData(long timeoutNanos) throws InterruptedException {
+        waitStrategy.await(this, timeoutNanos);
+    }
+
+    public void wakeAll() {
+        waitStrategy.signalAll();
+    }
+
+    public boolean isEmpty() {
+        long pos = head.get();
+        return sequences.get((int) (pos & mask)) != pos + 1;
+    }
+
+    /**
+     * Age of the oldest queued message, 0 if empty. Racy with consumers, good enough for a gauge.
+     */
+    public long headAgeNanos() {
+        long pos = head.get();
+        int index = (int) (pos & mask);
+        if (sequences.get(index) != pos + 1) {
+            return 0;
+        }
+        return Math.max(0, System.nanoTime() - entries[index].enqueueNanos);
+    }
+
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
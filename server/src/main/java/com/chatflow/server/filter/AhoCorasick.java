@@ -0,0 +1,150 @@
+package com.chatflow.server.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Case-insensitive multi-term matcher. The trie is compiled into a full
+ * transition table over the alphabet of characters that occur in the terms
+ * (every other character maps to symbol 0, which leads back to the root), so
+ * matching is one table lookup per input character, independent of the
+ * number of terms. Terms ending at a state are found through dictionary
+ * suffix links. Immutable once built; safe to share between threads.
+ *
+ * Memory is states x alphabet ints: 10k English terms are ~80k states x ~40
+ * symbols, about 13 MB.
+ */
+final class AhoCorasick {
+
+    interface MatchHandler {
+        /**
+         * term is an index into the build list; [start, end) in the text.
+         * Return false to stop matching.
+         */
+        boolean match(int term, int start, int end);
+    }
+
+    private final char[] symbols = new char[Character.MAX_VALUE + 1];
+    private final int alphabet;
+    private final int[] delta;
+    private final int[] terminal;
+    private final int[] dictLink;
+    private final int[] lengths;
+
+    /**
+     * Identical terms (after case folding) keep the index of their first occurrence.
+     */
+    AhoCorasick(List<String> terms) {
+        List<String> folded = new ArrayList<>(terms.size());
+        char[] symbolOfFolded = new char[Character.MAX_VALUE + 1];
+        int nextSymbol = 1;
+        int maxStates = 1;
+        for (String term : terms) {
+            String f = fold(term);
+            folded.add(f);
+            maxStates += f.length();
+            for (int i = 0; i < f.length(); i++) {
+                if (symbolOfFolded[f.charAt(i)] == 0) {
+                    symbolOfFolded[f.charAt(i)] = (char) nextSymbol++;
+                }
+            }
+        }
+        if (nextSymbol > Character.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many distinct characters in terms");
+        }
+        this.alphabet = nextSymbol;
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            symbols[c] = symbolOfFolded[Character.toLowerCase((char) c)];
+        }
+
+        // Trie: a zero entry means "no child" until the table is completed below
+        int[] table = new int[maxStates * alphabet];
+        int[] ends = new int[maxStates];
+        Arrays.fill(ends, -1);
+        int[] depth = new int[maxStates];
+        int states = 1;
+        for (int t = 0; t < folded.size(); t++) {
+            String f = folded.get(t);
+            if (f.isEmpty()) {
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < f.length(); i++) {
+                int slot = state * alphabet + symbolOfFolded[f.charAt(i)];
+                if (table[slot] == 0) {
+                    table[slot] = states;
+                    depth[states] = depth[state] + 1;
+                    states++;
+                }
+                state = table[slot];
+            }
+            if (ends[state] < 0) {
+                ends[state] = t;
+            }
+        }
+
+        // Breadth-first: fill missing transitions from the failure state and
+        // link each state to the nearest terminal on its failure chain
+        int[] fail = new int[states];
+        int[] links = new int[states];
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        for (int sym = 1; sym < alphabet; sym++) {
+            int child = table[sym];
+            if (child != 0) {
+                queue[tail++] = child;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            int failRow = fail[state] * alphabet;
+            int row = state * alphabet;
+            for (int sym = 1; sym < alphabet; sym++) {
+                int child = table[row + sym];
+                // The row is untouched until now, so non-zero entries are real trie children
+                if (child != 0) {
+                    fail[child] = table[failRow + sym];
+                    links[child] = ends[fail[child]] >= 0 ? fail[child] : links[fail[child]];
+                    queue[tail++] = child;
+                } else {
+                    table[row + sym] = table[failRow + sym];
+                }
+            }
+        }
+
+        this.delta = Arrays.copyOf(table, states * alphabet);
+        this.terminal = Arrays.copyOf(ends, states);
+        this.dictLink = links;
+        this.lengths = new int[folded.size()];
+        for (int t = 0; t < folded.size(); t++) {
+            lengths[t] = folded.get(t).length();
+        }
+    }
+
+    static String fold(String term) {
+        StringBuilder folded = new StringBuilder(term.length());
+        for (int i = 0; i < term.length(); i++) {
+            folded.append(Character.toLowerCase(term.charAt(i)));
+        }
+        return folded.toString();
+    }
+
+    int getStates() {
+        return terminal.length;
+    }
+
+    void match(CharSequence text, MatchHandler handler) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = delta[state * alphabet + symbols[text.charAt(i)]];
+            for (int s = terminal[state] >= 0 ? state : dictLink[state]; s != 0; s = dictLink[s]) {
+                int term = terminal[s];
+                if (!handler.match(term, i + 1 - lengths[term], i + 1)) {
+                    return;
+                }
+            }
+        }
+    }
+}
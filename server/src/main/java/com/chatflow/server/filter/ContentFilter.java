@@ -0,0 +1,241 @@
+package com.chatflow.server.filter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Screens message text against the blocklist in filter.terms.path, one term
+ * per line, optionally prefixed with the action ("reject:", "mask:" or
+ * "flag:"; filter.default-action otherwise). Lines starting with # are
+ * comments. Matching is case-insensitive and, with filter.whole-words, only
+ * counts terms that aren't part of a longer word.
+ *
+ * The file is polled every filter.reload.ms; a changed list is compiled off
+ * the ingress path and swapped in atomically, and a list that fails to load
+ * leaves the current one in place.
+ */
+@Component
+public class ContentFilter {
+
+    /**
+     * Outcome of a check. text is the masked text for MASK, the input otherwise.
+     */
+    public static final class Result {
+        static final Result CLEAN = new Result(FilterAction.ALLOW, null, 0);
+
+        private final FilterAction action;
+        private final String text;
+        private final int matches;
+
+        Result(FilterAction action, String text, int matches) {
+            this.action = action;
+            this.text = text;
+            this.matches = matches;
+        }
+
+        public FilterAction getAction() { return action; }
+        public String getText() { return text; }
+        public int getMatches() { return matches; }
+    }
+
+    /**
+     * A compiled term list; replaced as a whole on reload.
+     */
+    static final class Compiled {
+        final AhoCorasick matcher;
+        final FilterAction[] actions;
+
+        Compiled(AhoCorasick matcher, FilterAction[] actions) {
+            this.matcher = matcher;
+            this.actions = actions;
+        }
+    }
+
+    private final Map<FilterAction, Counter> actionCounters = new EnumMap<>(FilterAction.class);
+    private final ScheduledExecutorService reloader = Executors.newSingleThreadScheduledExecutor();
+    private volatile Compiled compiled;
+    private volatile int termCount;
+    private FileTime loadedVersion;
+
+    @Value("${filter.terms.path:}")
+    private String termsPath;
+
+    @Value("${filter.default-action:mask}")
+    private String defaultAction;
+
+    @Value("${filter.whole-words:true}")
+    private boolean wholeWords;
+
+    @Value("${filter.reload.ms:5000}")
+    private long reloadMs;
+
+    public ContentFilter(MeterRegistry meterRegistry) {
+        for (FilterAction action : FilterAction.values()) {
+            if (action != FilterAction.ALLOW) {
+                actionCounters.put(action, Counter.builder("chatflow.filter.actions")
+                        .description("Messages that matched the blocklist, by resulting action")
+                        .tag("action", action.name().toLowerCase())
+                        .register(meterRegistry));
+            }
+        }
+        Gauge.builder("chatflow.filter.terms", this, f -> f.termCount)
+                .description("Terms in the loaded blocklist")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (termsPath.isBlank()) {
+            return;
+        }
+        reload();
+        reloader.scheduleWithFixedDelay(this::reload, reloadMs, reloadMs, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isEnabled() {
+        return compiled != null;
+    }
+
+    private void reload() {
+        Path path = Paths.get(termsPath);
+        try {
+            FileTime version = Files.getLastModifiedTime(path);
+            if (version.equals(loadedVersion)) {
+                return;
+            }
+            long start = System.nanoTime();
+            Map<String, FilterAction> terms = parse(Files.readAllLines(path, StandardCharsets.UTF_8),
+                    FilterAction.valueOf(defaultAction.toUpperCase()));
+            compiled = compile(terms);
+            termCount = terms.size();
+            loadedVersion = version;
+            System.out.println("🛡️ Content filter loaded " + terms.size() + " terms ("
+                    + compiled.matcher.getStates() + " states) in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+        } catch (IOException | RuntimeException e) {
+            System.err.println("⚠️ Content filter reload failed, keeping the current list: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Folded term -> most severe action given for it.
+     */
+    static Map<String, FilterAction> parse(List<String> lines, FilterAction defaultAction) {
+        Map<String, FilterAction> terms = new LinkedHashMap<>();
+        for (String line : lines) {
+            String term = line.trim();
+            if (term.isEmpty() || term.startsWith("#")) {
+                continue;
+            }
+            FilterAction action = defaultAction;
+            int colon = term.indexOf(':');
+            if (colon > 0) {
+                try {
+                    action = FilterAction.valueOf(term.substring(0, colon).trim().toUpperCase());
+                    term = term.substring(colon + 1).trim();
+                } catch (IllegalArgumentException e) {
+                    // Not an action prefix; the colon is part of the term
+                }
+            }
+            if (!term.isEmpty() && action != FilterAction.ALLOW) {
+                terms.merge(AhoCorasick.fold(term), action, (a, b) -> a.compareTo(b) >= 0 ? a : b);
+            }
+        }
+        return terms;
+    }
+
+    static Compiled compile(Map<String, FilterAction> terms) {
+        List<String> list = new ArrayList<>(terms.keySet());
+        return new Compiled(new AhoCorasick(list), terms.values().toArray(new FilterAction[0]));
+    }
+
+    public Result check(String text) {
+        Compiled current = compiled;
+        if (current == null || text == null) {
+            return Result.CLEAN;
+        }
+        Result result = check(current, text, wholeWords);
+        if (result.action != FilterAction.ALLOW) {
+            actionCounters.get(result.action).increment();
+        }
+        return result;
+    }
+
+    static Result check(Compiled compiled, String text, boolean wholeWords) {
+        Scan scan = new Scan(compiled.actions, text, wholeWords);
+        compiled.matcher.match(text, scan);
+        if (scan.matches == 0) {
+            return Result.CLEAN;
+        }
+        return new Result(scan.worst, scan.worst == FilterAction.MASK ? new String(scan.masked) : text, scan.matches);
+    }
+
+    /**
+     * Per-check match state; stops at the first REJECT.
+     */
+    private static final class Scan implements AhoCorasick.MatchHandler {
+        private final FilterAction[] actions;
+        private final String text;
+        private final boolean wholeWords;
+        private FilterAction worst = FilterAction.ALLOW;
+        private int matches;
+        private char[] masked;
+
+        Scan(FilterAction[] actions, String text, boolean wholeWords) {
+            this.actions = actions;
+            this.text = text;
+            this.wholeWords = wholeWords;
+        }
+
+        @Override
+        public boolean match(int term, int start, int end) {
+            if (wholeWords && !isWordBoundary(text, start, end)) {
+                return true;
+            }
+            FilterAction action = actions[term];
+            matches++;
+            if (action.compareTo(worst) > 0) {
+                worst = action;
+            }
+            if (action == FilterAction.MASK) {
+                if (masked == null) {
+                    masked = text.toCharArray();
+                }
+                for (int i = start; i < end; i++) {
+                    masked[i] = '*';
+                }
+            }
+            return action != FilterAction.REJECT;
+        }
+    }
+
+    private static boolean isWordBoundary(String text, int start, int end) {
+        return (start == 0 || !Character.isLetterOrDigit(text.charAt(start - 1)))
+                && (end == text.length() || !Character.isLetterOrDigit(text.charAt(end)));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reloader.shutdownNow();
+    }
+}
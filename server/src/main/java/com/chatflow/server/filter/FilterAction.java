@@ -0,0 +1,15 @@
+package com.chatflow.server.filter;
+
+/**
+ * What happens to a message that contains a blocked term, in increasing
+ * severity; the most severe match wins.
+ */
+public enum FilterAction {
+    ALLOW,
+    // Delivered unchanged, counted and logged for review
+    FLAG,
+    // Delivered with the term replaced by asterisks
+    MASK,
+    // Not delivered; the sender gets a REJECTED ack
+    REJECT
+}
@@ -0,0 +1,431 @@
+package com.chatflow.server.handler;
+
+import com.chatflow.server.database.MessageCursor;
+import com.chatflow.server.database.MessageHistoryRepository;
+import com.chatflow.server.database.PersistentMessage;
+import com.chatflow.server.database.ReadRouter;
+import com.chatflow.server.model.ChatMessage;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays history to a joining session before live traffic: everything after
+ * the client's cursor (resume), or the last N messages of the room.
+ *
+ * Served from RecentHistory when the ring reaches back far enough, inline on
+ * the connecting thread. Otherwise the request waits a short coalescing
+ * window and is answered together with every other request for the room
+ * from a single query; those batches are rate-limited, so a mass reconnect
+ * after a node restart costs a handful of queries rather than one per client.
+ * Live frames arriving meanwhile are held by the session's ReplayGate.
+ *
+ * The seam between the database and the ring is keyed on cursors, not on
+ * arrival: the database serves everything strictly after the client's
+ * cursor and below the ring's smallest cursor, plus evicted messages up to
+ * the ring's eviction mark that the ring no longer holds. Persistence is
+ * asynchronous (and may run on another node), so an evicted message can be
+ * missing from the database still; the DB part then stops before it and a
+ * GAP notice tells the client to page that range in over the history API
+ * later. Nothing is sent twice and nothing is skipped silently.
+ *
+ * Replays are sent on a small pool of their own, so one slow session doesn't
+ * hold up the scheduler and every other room's replay.
+ */
+@Component
+public class HistoryReplayer {
+
+    private static final class Request {
+        final WebSocketSession session;
+        final MessageCursor since;
+        final int count;
+        final List<RecentHistory.Entry> recent;
+        final MessageCursor oldestInMemory;
+        final MessageCursor evictedUpTo;
+        final Set<MessageCursor> inMemory = new HashSet<>();
+        final List<MessageCursor> recentlyEvicted;
+
+        Request(WebSocketSession session, MessageCursor since, int count, RecentHistory.Snapshot snapshot) {
+            this.session = session;
+            this.since = since;
+            this.count = count;
+            this.recent = snapshot.getEntries();
+            // The ring is in arrival order; its first entry need not have the smallest cursor
+            this.oldestInMemory = snapshot.getOldest();
+            this.evictedUpTo = snapshot.getEvictedUpTo();
+            this.recentlyEvicted = snapshot.getRecentlyEvicted();
+            for (RecentHistory.Entry entry : recent) {
+                inMemory.add(entry.getCursor());
+            }
+        }
+
+        /**
+         * DB rows this request needs: strictly after since, and either older
+         * than the ring or evicted from it out of cursor order.
+         */
+        boolean needs(MessageCursor cursor) {
+            if (cursor.compareTo(since) <= 0) {
+                return false;
+            }
+            if (oldestInMemory == null || oldestInMemory.compareTo(cursor) > 0) {
+                return true;
+            }
+            return evictedUpTo != null && evictedUpTo.compareTo(cursor) >= 0 && !inMemory.contains(cursor);
+        }
+
+        /**
+         * Smallest evicted message this request needs that the fetched rows
+         * lack: not committed yet. Only cursors the fetch reached count.
+         */
+        MessageCursor firstUncommitted(Set<MessageCursor> fetched, MessageCursor lastFetched, boolean truncated) {
+            MessageCursor first = null;
+            for (MessageCursor cursor : recentlyEvicted) {
+                if (needs(cursor) && !fetched.contains(cursor)
+                        && (!truncated || cursor.compareTo(lastFetched) <= 0)
+                        && (first == null || cursor.compareTo(first) < 0)) {
+                    first = cursor;
+                }
+            }
+            return first;
+        }
+
+        /**
+         * Highest cursor the DB part may have to cover; null if the ring is empty.
+         */
+        MessageCursor dbUpTo() {
+            if (oldestInMemory == null) {
+                return null;
+            }
+            return evictedUpTo != null && evictedUpTo.compareTo(oldestInMemory) > 0 ? evictedUpTo : oldestInMemory;
+        }
+    }
+
+    private final RecentHistory recentHistory;
+    private final MessageHistoryRepository historyRepository;
+    private final ObjectMapper objectMapper;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final ExecutorService senders;
+    private final Map<String, List<Request>> waiting = new HashMap<>();
+    private final Counter framesFromMemory;
+    private final Counter framesFromDatabase;
+    private final Counter servedFromMemory;
+    private final Counter servedCoalesced;
+    private final Counter dbBatches;
+    private final Counter throttled;
+    private long nextBatchNanos;
+
+    // Messages replayed on join when the client has no cursor
+    @Value("${history.replay.count:50}")
+    private int replayCount;
+
+    // Upper bound for the DB part of a replay; anything older is announced as a gap
+    @Value("${history.replay.max-db-rows:1000}")
+    private int maxDbRows;
+
+    @Value("${history.replay.coalesce.ms:100}")
+    private long coalesceMs;
+
+    @Value("${history.replay.db-batches-per-second:20}")
+    private int dbBatchesPerSecond;
+
+    // Live frames held per session while its replay is pending; beyond that the session is closed
+    @Value("${history.replay.max-held:10000}")
+    private int maxHeld;
+
+    public HistoryReplayer(RecentHistory recentHistory, MessageHistoryRepository historyRepository,
+                           ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                           @Value("${history.replay.send-threads:4}") int sendThreads) {
+        this.recentHistory = recentHistory;
+        this.senders = Executors.newFixedThreadPool(Math.max(1, sendThreads), r -> {
+            Thread thread = new Thread(r, "replay-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.historyRepository = historyRepository;
+        this.objectMapper = objectMapper;
+        this.framesFromMemory = framesCounter(meterRegistry, "memory");
+        this.framesFromDatabase = framesCounter(meterRegistry, "database");
+        this.servedFromMemory = requestsCounter(meterRegistry, "memory");
+        this.servedCoalesced = requestsCounter(meterRegistry, "coalesced");
+        this.dbBatches = Counter.builder("chatflow.replay.db.batches")
+                .description("Coalesced replay queries against the database")
+                .register(meterRegistry);
+        this.throttled = Counter.builder("chatflow.replay.db.throttled")
+                .description("Replay batches delayed by the rate limit")
+                .register(meterRegistry);
+    }
+
+    private static Counter framesCounter(MeterRegistry registry, String source) {
+        return Counter.builder("chatflow.replay.frames")
+                .description("Frames replayed to joining sessions")
+                .tag("source", source)
+                .register(registry);
+    }
+
+    private static Counter requestsCounter(MeterRegistry registry, String path) {
+        return Counter.builder("chatflow.replay.requests")
+                .description("Replays by how they were served")
+                .tag("path", path)
+                .register(registry);
+    }
+
+    public int getReplayCount() {
+        return replayCount;
+    }
+
+    /**
+     * Must run before the session is added to the room.
+     */
+    public void prepare(WebSocketSession session) {
+        ReplayGate.install(session, maxHeld);
+    }
+
+    /**
+     * Runs once the session is in the room. since == null replays the last count messages.
+     */
+    public void start(WebSocketSession session, String roomId, MessageCursor since, int count) {
+        // Strictly after the client's (timestamp, id): nothing it already has is re-sent
+        Request request = new Request(session, since, count, recentHistory.snapshot(roomId));
+
+        boolean inMemory = since != null
+                ? request.oldestInMemory != null && request.dbUpTo().compareTo(since) <= 0
+                : request.recent.size() >= count;
+        if (inMemory) {
+            servedFromMemory.increment();
+            // Ring only, at most its capacity: sent inline on the connecting thread
+            release(request, List.of(), null);
+            return;
+        }
+
+        servedCoalesced.increment();
+        synchronized (waiting) {
+            List<Request> requests = waiting.computeIfAbsent(roomId, id -> new ArrayList<>());
+            if (requests.isEmpty()) {
+                scheduler.schedule(() -> process(roomId), coalesceMs, TimeUnit.MILLISECONDS);
+            }
+            requests.add(request);
+        }
+    }
+
+    /**
+     * Scheduler thread only.
+     */
+    private void process(String roomId) {
+        List<Request> batch;
+        synchronized (waiting) {
+            batch = waiting.remove(roomId);
+        }
+        if (batch == null) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (nextBatchNanos != 0 && nextBatchNanos - now > 0) {
+            throttled.increment();
+            synchronized (waiting) {
+                List<Request> requests = waiting.computeIfAbsent(roomId, id -> new ArrayList<>());
+                requests.addAll(0, batch);
+            }
+            scheduler.schedule(() -> process(roomId), nextBatchNanos - now, TimeUnit.NANOSECONDS);
+            return;
+        }
+        nextBatchNanos = now + TimeUnit.SECONDS.toNanos(1) / Math.max(1, dbBatchesPerSecond);
+
+        try {
+            dbBatches.increment();
+            resume(roomId, batch);
+            latest(roomId, batch);
+        } catch (Exception e) {
+            System.err.println("Replay query for " + roomId + " failed: " + e.getMessage());
+            // Best effort: whatever memory has, then live, with the missing range announced
+            for (Request request : batch) {
+                send(request, List.of(), request.since);
+            }
+        }
+    }
+
+    /**
+     * One query from the oldest cursor in the batch serves every resume request.
+     */
+    private void resume(String roomId, List<Request> batch) throws SQLException {
+        List<Request> requests = new ArrayList<>();
+        MessageCursor from = null;
+        for (Request request : batch) {
+            if (request.since != null) {
+                requests.add(request);
+                from = from == null || request.since.compareTo(from) < 0 ? request.since : from;
+            }
+        }
+        if (requests.isEmpty()) {
+            return;
+        }
+
+        int limit = maxDbRows * 2;
+        List<RecentHistory.Entry> rows = new ArrayList<>();
+        historyRepository.forEachAfter(ReadRouter.Consistency.PRIMARY, roomId, from, limit, m -> rows.add(toEntry(m)));
+        boolean fetchTruncated = rows.size() == limit;
+        MessageCursor lastFetched = rows.isEmpty() ? null : rows.get(rows.size() - 1).getCursor();
+        Set<MessageCursor> fetched = new HashSet<>();
+        for (RecentHistory.Entry row : rows) {
+            fetched.add(row.getCursor());
+        }
+
+        for (Request request : requests) {
+            List<RecentHistory.Entry> fromDb = new ArrayList<>();
+            // Rows from the first uncommitted evicted message on would skip it; the client pages them in later
+            MessageCursor uncommitted = request.firstUncommitted(fetched, lastFetched, fetchTruncated);
+            boolean gap = uncommitted != null;
+            for (RecentHistory.Entry row : rows) {
+                if (uncommitted != null && row.getCursor().compareTo(uncommitted) > 0) {
+                    break;
+                }
+                if (request.needs(row.getCursor())) {
+                    if (fromDb.size() == maxDbRows) {
+                        gap = true;
+                        break;
+                    }
+                    fromDb.add(row);
+                }
+            }
+            // The shared fetch stopped before covering this request's DB part
+            if (!gap && fetchTruncated && (request.dbUpTo() == null || request.dbUpTo().compareTo(lastFetched) > 0)) {
+                gap = true;
+            }
+
+            MessageCursor gapAfter = null;
+            if (gap) {
+                gapAfter = fromDb.isEmpty() ? request.since : fromDb.get(fromDb.size() - 1).getCursor();
+            }
+            framesFromDatabase.increment(fromDb.size());
+            send(request, fromDb, gapAfter);
+        }
+    }
+
+    /**
+     * Requests without a cursor that the ring couldn't fill; one query per distinct ring start.
+     */
+    private void latest(String roomId, List<Request> batch) throws SQLException {
+        Map<MessageCursor, List<Request>> byOldest = new HashMap<>();
+        List<Request> emptyRing = new ArrayList<>();
+        for (Request request : batch) {
+            if (request.since == null) {
+                if (request.oldestInMemory == null) {
+                    emptyRing.add(request);
+                } else {
+                    byOldest.computeIfAbsent(request.oldestInMemory, c -> new ArrayList<>()).add(request);
+                }
+            }
+        }
+        if (!emptyRing.isEmpty()) {
+            latest(roomId, null, emptyRing);
+        }
+        for (Map.Entry<MessageCursor, List<Request>> group : byOldest.entrySet()) {
+            latest(roomId, group.getKey(), group.getValue());
+        }
+    }
+
+    private void latest(String roomId, MessageCursor before, List<Request> requests) throws SQLException {
+        int needed = 0;
+        for (Request request : requests) {
+            needed = Math.max(needed, request.count - request.recent.size());
+        }
+        List<RecentHistory.Entry> rows = new ArrayList<>();
+        historyRepository.forEachBefore(ReadRouter.Consistency.PRIMARY, roomId, before, Math.min(needed, maxDbRows), m -> rows.add(toEntry(m)));
+        Collections.reverse(rows);
+
+        for (Request request : requests) {
+            int want = Math.min(rows.size(), request.count - request.recent.size());
+            List<RecentHistory.Entry> fromDb = rows.subList(rows.size() - want, rows.size());
+            framesFromDatabase.increment(fromDb.size());
+            send(request, fromDb, null);
+        }
+    }
+
+    /**
+     * Hands a DB-backed replay to the sender pool, off the scheduler thread.
+     */
+    private void send(Request request, List<RecentHistory.Entry> fromDb, MessageCursor gapAfter) {
+        List<RecentHistory.Entry> rows = new ArrayList<>(fromDb);
+        try {
+            senders.execute(() -> release(request, rows, gapAfter));
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+        }
+    }
+
+    /**
+     * Send DB rows, an optional gap notice, then the ring part, then held live frames.
+     */
+    private void release(Request request, List<RecentHistory.Entry> fromDb, MessageCursor gapAfter) {
+        List<RecentHistory.Entry> replay = new ArrayList<>(fromDb);
+        if (gapAfter != null) {
+            replay.add(new RecentHistory.Entry(-1, null, gapNotice(gapAfter, request.dbUpTo())));
+        }
+        int fromMemory = 0;
+        if (request.since != null) {
+            for (RecentHistory.Entry entry : request.recent) {
+                if (entry.getCursor().compareTo(request.since) > 0) {
+                    replay.add(entry);
+                    fromMemory++;
+                }
+            }
+        } else {
+            fromMemory = Math.min(request.count, request.recent.size());
+            replay.addAll(request.recent.subList(request.recent.size() - fromMemory, request.recent.size()));
+        }
+        framesFromMemory.increment(fromMemory);
+
+        try {
+            ReplayGate.release(request.session, replay);
+        } catch (Exception e) {
+            System.err.println("Replay to session " + request.session.getId() + " failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Tells the client which range it has to page in over the history API
+     * (GET /rooms/{roomId}/messages?after=...), up to and including "before"
+     * (open-ended if null). Sent after the DB rows and before the ring frames.
+     */
+    private TextMessage gapNotice(MessageCursor after, MessageCursor before) {
+        Map<String, Object> notice = new LinkedHashMap<>();
+        notice.put("replay", "GAP");
+        notice.put("after", after.toString());
+        notice.put("before", before != null ? before.toString() : null);
+        try {
+            return new TextMessage(objectMapper.writeValueAsString(notice));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private RecentHistory.Entry toEntry(PersistentMessage message) {
+        try {
+            TextMessage frame = new TextMessage(objectMapper.writeValueAsString(ChatMessage.fromPersistent(message)));
+            return new RecentHistory.Entry(-1, MessageCursor.of(message), frame);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        senders.shutdownNow();
+    }
+}
@@ -0,0 +1,61 @@
+package com.chatflow.server.handler;
+
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free UUIDv7 generator, monotonic per node.
+ *
+ * The high 64 bits are 48 bits of unix millis plus a 12-bit sequence, advanced
+ * with a single CAS; if more than 4096 ids are taken in one millisecond the
+ * sequence carries into the timestamp, which keeps ordering strict. The low
+ * bits are fixed per process: a hash of serverId and a random startup salt.
+ * That keeps nodes apart, and also a restarted node whose clock went backwards.
+ */
+@Component
+public class MessageIdGenerator {
+
+    private static final long VERSION_7 = 0x7000L;
+    private static final long VARIANT = 0x8000000000000000L;
+
+    private final AtomicLong lastTimeAndSequence = new AtomicLong(0);
+    private final long nodeBits;
+    private final LongSupplier clock;
+
+    public MessageIdGenerator() throws UnknownHostException {
+        this(InetAddress.getLocalHost().getHostName());
+    }
+
+    public MessageIdGenerator(String serverId) {
+        this(serverId, System::currentTimeMillis);
+    }
+
+    MessageIdGenerator(String serverId, LongSupplier clock) {
+        this.clock = clock;
+        long nodeHash = serverId.hashCode() & 0xFFFFL;
+        long salt = new SecureRandom().nextLong() & 0x3FFFFFFFFFFFL; // 46 bits
+        this.nodeBits = VARIANT | (nodeHash << 46) | salt;
+    }
+
+    public UUID next() {
+        long next;
+        while (true) {
+            long prev = lastTimeAndSequence.get();
+            long candidate = clock.getAsLong() << 12;
+            next = candidate > prev ? candidate : prev + 1;
+            if (lastTimeAndSequence.compareAndSet(prev, next)) {
+                break;
+            }
+        }
+        long millis = next >>> 12;
+        long sequence = next & 0xFFF;
+        long msb = (millis << 16) | VERSION_7 | sequence;
+        return new UUID(msb, nodeBits);
+    }
+}
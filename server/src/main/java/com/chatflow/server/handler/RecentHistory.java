@@ -0,0 +1,181 @@
+package com.chatflow.server.handler;
+
+import com.chatflow.server.database.MessageCursor;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Last few hundred broadcast frames per room, kept in a fixed-size ring so
+ * joins and reconnects can be replayed without touching PostgreSQL.
+ *
+ * Fed by the room consumer with the same TextMessage it broadcasts, so a
+ * replayed frame is byte-for-byte the live one. Writers claim a slot with
+ * getAndIncrement and publish an immutable entry; readers copy a snapshot and
+ * skip slots that were overwritten meanwhile. Memory is bounded by
+ * capacity x rooms per node.
+ *
+ * The ring is in arrival order, which is not cursor order: client timestamps
+ * arrive out of order. A snapshot therefore reports the smallest cursor it
+ * holds, and the largest cursor the ring has already evicted; a message
+ * below the first or up to the second may be missing from the ring.
+ *
+ * Cursors of the last few rings' worth of evicted messages are kept too, so
+ * the replayer can tell an evicted message that is not in the database yet
+ * (persistence is asynchronous) from one that never existed.
+ */
+@Component
+public class RecentHistory {
+
+    public static final class Entry {
+        private final long sequence;
+        private final MessageCursor cursor;
+        private final TextMessage frame;
+
+        Entry(long sequence, MessageCursor cursor, TextMessage frame) {
+            this.sequence = sequence;
+            this.cursor = cursor;
+            this.frame = frame;
+        }
+
+        public MessageCursor getCursor() { return cursor; }
+        public TextMessage getFrame() { return frame; }
+    }
+
+    /**
+     * Ring contents for one replay.
+     */
+    public static final class Snapshot {
+        private final List<Entry> entries;
+        private final MessageCursor oldest;
+        private final MessageCursor evictedUpTo;
+        private final List<MessageCursor> recentlyEvicted;
+
+        Snapshot(List<Entry> entries, MessageCursor oldest, MessageCursor evictedUpTo,
+                 List<MessageCursor> recentlyEvicted) {
+            this.entries = entries;
+            this.oldest = oldest;
+            this.evictedUpTo = evictedUpTo;
+            this.recentlyEvicted = recentlyEvicted;
+        }
+
+        /** Frames in arrival order. */
+        public List<Entry> getEntries() { return entries; }
+        /** Smallest cursor in the snapshot, null if empty. */
+        public MessageCursor getOldest() { return oldest; }
+        /** Largest cursor evicted from the ring so far, null if nothing was. */
+        public MessageCursor getEvictedUpTo() { return evictedUpTo; }
+        /** Cursors of the most recent evictions, in eviction order. */
+        public List<MessageCursor> getRecentlyEvicted() { return recentlyEvicted; }
+    }
+
+    // Evictions remembered, in multiples of the ring capacity
+    private static final int EVICTED_RINGS = 4;
+
+    private static final Snapshot EMPTY = new Snapshot(List.of(), null, null, List.of());
+
+    private static final class Ring {
+        private final AtomicReferenceArray<Entry> slots;
+        private final int mask;
+        private final AtomicLong next = new AtomicLong(0);
+        private final AtomicReference<MessageCursor> evictedUpTo = new AtomicReference<>();
+        // Evicted entries without their frames, by sequence
+        private final AtomicReferenceArray<Entry> evicted;
+        private final int evictedMask;
+
+        Ring(int capacity) {
+            this.slots = new AtomicReferenceArray<>(capacity);
+            this.mask = capacity - 1;
+            this.evicted = new AtomicReferenceArray<>(capacity * EVICTED_RINGS);
+            this.evictedMask = capacity * EVICTED_RINGS - 1;
+        }
+
+        void add(MessageCursor cursor, TextMessage frame) {
+            long sequence = next.getAndIncrement();
+            int slot = (int) (sequence & mask);
+            // Account for the evicted entry before it disappears from the slot
+            Entry previous = slots.get(slot);
+            if (previous != null) {
+                evicted.set((int) (previous.sequence & evictedMask), new Entry(previous.sequence, previous.cursor, null));
+                evictedUpTo.accumulateAndGet(previous.cursor, RecentHistory::max);
+            }
+            slots.set(slot, new Entry(sequence, cursor, frame));
+        }
+
+        Snapshot snapshot() {
+            long end = next.get();
+            long start = Math.max(0, end - slots.length());
+            List<Entry> entries = new ArrayList<>((int) (end - start));
+            MessageCursor oldest = null;
+            for (long sequence = start; sequence < end; sequence++) {
+                Entry entry = slots.get((int) (sequence & mask));
+                // Overwritten by a newer message, or claimed but not yet published
+                if (entry != null && entry.sequence == sequence) {
+                    entries.add(entry);
+                    if (oldest == null || entry.cursor.compareTo(oldest) < 0) {
+                        oldest = entry.cursor;
+                    }
+                }
+            }
+            // Read after the slots, so anything overwritten meanwhile is covered
+            List<MessageCursor> recentlyEvicted = new ArrayList<>();
+            for (long sequence = Math.max(0, start - evicted.length()); sequence < end; sequence++) {
+                Entry entry = evicted.get((int) (sequence & evictedMask));
+                if (entry != null && entry.sequence == sequence) {
+                    recentlyEvicted.add(entry.cursor);
+                }
+            }
+            return new Snapshot(entries, oldest, evictedUpTo.get(), recentlyEvicted);
+        }
+    }
+
+    private static MessageCursor max(MessageCursor a, MessageCursor b) {
+        return a == null || b.compareTo(a) > 0 ? b : a;
+    }
+
+    private final Map<String, Ring> rooms = new ConcurrentHashMap<>();
+
+    // Frames kept per room, rounded up to a power of two; 0 disables the ring
+    @Value("${history.recent.capacity:256}")
+    private int capacity;
+
+    @PostConstruct
+    public void init() {
+        if (capacity > 0) {
+            capacity = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+            System.out.println("Recent history: " + capacity + " messages per room");
+        }
+    }
+
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    public void record(String roomId, MessageCursor cursor, TextMessage frame) {
+        if (capacity > 0) {
+            rooms.computeIfAbsent(roomId, id -> new Ring(capacity)).add(cursor, frame);
+        }
+    }
+
+    /**
+     * The ring is only gap-free while the room queue is bound, so it starts
+     * over whenever the node (re)subscribes to the room.
+     */
+    public void reset(String roomId) {
+        rooms.remove(roomId);
+    }
+
+    public Snapshot snapshot(String roomId) {
+        Ring ring = rooms.get(roomId);
+        return ring != null ? ring.snapshot() : EMPTY;
+    }
+}
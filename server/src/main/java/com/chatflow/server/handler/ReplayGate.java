@@ -0,0 +1,115 @@
+package com.chatflow.server.handler;
+
+import com.chatflow.server.database.MessageCursor;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Holds live broadcasts for a session while its replay is being prepared,
+ * so history and live traffic meet without a gap or a duplicate.
+ *
+ * The gate is installed before the session is added to the room, so every
+ * broadcast the session could see is either in the replay snapshot or held
+ * here (or both; those are dropped by cursor). All access happens under the
+ * session's monitor, the same lock broadcasts send under.
+ */
+public class ReplayGate {
+
+    static final String ATTRIBUTE = "replayGate";
+
+    private final List<RecentHistory.Entry> held = new ArrayList<>();
+    private final int maxHeld;
+    private boolean overflowed;
+
+    private ReplayGate(int maxHeld) {
+        this.maxHeld = maxHeld;
+    }
+
+    static void install(WebSocketSession session, int maxHeld) {
+        synchronized (session) {
+            session.getAttributes().put(ATTRIBUTE, new ReplayGate(maxHeld));
+        }
+    }
+
+    /**
+     * Called by the broadcaster with the session lock held. Returns true if the
+     * frame was taken by a pending replay instead of being sent now.
+     */
+    public static boolean hold(WebSocketSession session, MessageCursor cursor, TextMessage frame) {
+        ReplayGate gate = (ReplayGate) session.getAttributes().get(ATTRIBUTE);
+        if (gate == null) {
+            return false;
+        }
+        if (gate.held.size() < gate.maxHeld) {
+            gate.held.add(new RecentHistory.Entry(-1, cursor, frame));
+        } else {
+            gate.overflowed = true;
+        }
+        return true;
+    }
+
+    /**
+     * Send the replay, then the held live frames not already in it, and open
+     * the gate. If live traffic overflowed the gate the session can't be made
+     * gap-free here; it is closed so the client resumes from its cursor.
+     *
+     * The monitor is taken per frame, not for the whole replay: live frames
+     * keep going into the gate meanwhile, so the broadcaster never waits on a
+     * long replay, and acks and pings still can't interleave with a send. The
+     * gate only opens once it has been drained under the monitor.
+     */
+    static void release(WebSocketSession session, List<RecentHistory.Entry> replay) throws IOException {
+        ReplayGate gate;
+        synchronized (session) {
+            gate = (ReplayGate) session.getAttributes().get(ATTRIBUTE);
+        }
+        Set<MessageCursor> sent = new HashSet<>();
+        List<RecentHistory.Entry> batch = replay;
+        while (true) {
+            for (RecentHistory.Entry entry : batch) {
+                if (entry.getCursor() != null && !sent.add(entry.getCursor())) {
+                    continue;
+                }
+                synchronized (session) {
+                    if (!open(session, gate)) {
+                        return;
+                    }
+                    session.sendMessage(entry.getFrame());
+                }
+            }
+            synchronized (session) {
+                if (!open(session, gate)) {
+                    return;
+                }
+                if (gate == null || gate.held.isEmpty()) {
+                    session.getAttributes().remove(ATTRIBUTE);
+                    return;
+                }
+                batch = new ArrayList<>(gate.held);
+                gate.held.clear();
+            }
+        }
+    }
+
+    /**
+     * Called with the session lock held. False once the replay should stop;
+     * the gate is removed then, and an overflowed session is closed.
+     */
+    private static boolean open(WebSocketSession session, ReplayGate gate) throws IOException {
+        if (session.isOpen() && (gate == null || !gate.overflowed)) {
+            return true;
+        }
+        session.getAttributes().remove(ATTRIBUTE);
+        if (session.isOpen()) {
+            session.close(CloseStatus.SESSION_NOT_RELIABLE.withReason("Replay overflow, resume from cursor"));
+        }
+        return false;
+    }
+}
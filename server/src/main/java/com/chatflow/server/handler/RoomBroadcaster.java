@@ -0,0 +1,235 @@
+package com.chatflow.server.handler;
+
+import com.chatflow.server.database.MessageCursor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends room frames to the local sessions. A room whose rate goes above
+ * broadcast.coalesce.threshold-per-sec switches to coalescing: messages that
+ * arrive within one broadcast.coalesce.tick.ms are sent as a single JSON array
+ * frame, built once from the raw bodies and shared by every session. The room
+ * goes back to one frame per message once its rate falls below half the
+ * threshold.
+ *
+ * Frames are recorded in RecentHistory (one entry per message) right before
+ * they are sent, and sessions still behind a ReplayGate get the messages held
+ * one by one, so replay stays per message and gap-free.
+ */
+@Component
+public class RoomBroadcaster {
+
+    private static final class Pending {
+        final MessageCursor cursor;
+        final TextMessage frame;
+        final byte[] body;
+
+        Pending(MessageCursor cursor, TextMessage frame, byte[] body) {
+            this.cursor = cursor;
+            this.frame = frame;
+            this.body = body;
+        }
+    }
+
+    private final class RoomState {
+        final String roomId;
+        final List<Pending> pending = new ArrayList<>();
+        long windowStart = System.nanoTime();
+        int windowCount;
+        boolean coalescing;
+
+        RoomState(String roomId) {
+            this.roomId = roomId;
+        }
+
+        /**
+         * Counts the message into the one-second rate window and decides the mode.
+         */
+        void count() {
+            long now = System.nanoTime();
+            windowCount++;
+            if (now - windowStart >= TimeUnit.SECONDS.toNanos(1)) {
+                double rate = windowCount * 1e9 / (now - windowStart);
+                boolean next = coalescing ? rate >= thresholdPerSec / 2.0 : rate >= thresholdPerSec;
+                if (next != coalescing) {
+                    coalescing = next;
+                    coalescingRooms.addAndGet(next ? 1 : -1);
+                    System.out.println((next ? "🔥 Coalescing broadcasts for " : "Per-message broadcasts again for ")
+                            + roomId + String.format(" (%.0f msg/s)", rate));
+                }
+                windowStart = now;
+                windowCount = 0;
+            }
+        }
+    }
+
+    private final SessionManager sessionManager;
+    private final RecentHistory recentHistory;
+    private final Map<String, RoomState> rooms = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicInteger coalescingRooms = new AtomicInteger(0);
+    private final Counter singleFrames;
+    private final Counter batchFrames;
+    private final DistributionSummary batchSize;
+
+    @Value("${broadcast.coalesce.enabled:false}")
+    private boolean enabled;
+
+    @Value("${broadcast.coalesce.threshold-per-sec:500}")
+    private int thresholdPerSec;
+
+    @Value("${broadcast.coalesce.tick.ms:10}")
+    private long tickMs;
+
+    public RoomBroadcaster(SessionManager sessionManager, RecentHistory recentHistory, MeterRegistry meterRegistry) {
+        this.sessionManager = sessionManager;
+        this.recentHistory = recentHistory;
+        this.singleFrames = Counter.builder("chatflow.broadcast.frames")
+                .description("WebSocket frames sent to sessions by room broadcasts")
+                .tag("mode", "single")
+                .register(meterRegistry);
+        this.batchFrames = Counter.builder("chatflow.broadcast.frames")
+                .description("WebSocket frames sent to sessions by room broadcasts")
+                .tag("mode", "batch")
+                .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("chatflow.broadcast.batch.size")
+                .description("Messages per coalesced array frame")
+                .register(meterRegistry);
+        Gauge.builder("chatflow.broadcast.coalescing.rooms", coalescingRooms, AtomicInteger::get)
+                .description("Rooms currently broadcast in coalesced frames")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Called on the room's consumer thread with the raw message body.
+     */
+    public void broadcast(String roomId, String cursor, byte[] body) {
+        Set<WebSocketSession> sessions = sessionManager.getSessions(roomId);
+        if (sessions.isEmpty() && !recentHistory.isEnabled()) {
+            return;
+        }
+        MessageCursor messageCursor = null;
+        if (cursor != null) {
+            try {
+                messageCursor = MessageCursor.parse(cursor);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Ignoring bad history cursor for " + roomId + ": " + cursor);
+            }
+        }
+        Pending message = new Pending(messageCursor, new TextMessage(body), body);
+
+        if (!enabled) {
+            send(roomId, List.of(message));
+            return;
+        }
+        RoomState room = rooms.computeIfAbsent(roomId, RoomState::new);
+        synchronized (room) {
+            room.count();
+            if (room.coalescing) {
+                room.pending.add(message);
+                if (room.pending.size() == 1) {
+                    flusher.schedule(() -> flush(room), tickMs, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+            // Anything still pending from the coalescing period goes out first, in order
+            flushLocked(room);
+            send(roomId, List.of(message));
+        }
+    }
+
+    private void flush(RoomState room) {
+        synchronized (room) {
+            flushLocked(room);
+        }
+    }
+
+    private void flushLocked(RoomState room) {
+        if (room.pending.isEmpty()) {
+            return;
+        }
+        List<Pending> batch = new ArrayList<>(room.pending);
+        room.pending.clear();
+        send(room.roomId, batch);
+    }
+
+    private void send(String roomId, List<Pending> messages) {
+        // Recorded before it is broadcast, so a joining session finds it in
+        // the replay snapshot, in its gate, or both (deduplicated there)
+        for (Pending message : messages) {
+            if (message.cursor != null) {
+                recentHistory.record(roomId, message.cursor, message.frame);
+            }
+        }
+        Set<WebSocketSession> sessions = sessionManager.getSessions(roomId);
+        if (sessions.isEmpty()) {
+            return;
+        }
+        TextMessage frame = messages.size() == 1 ? messages.get(0).frame : arrayFrame(messages);
+        if (messages.size() > 1) {
+            batchSize.record(messages.size());
+        }
+        for (WebSocketSession session : sessions) {
+            try {
+                synchronized (session) {
+                    if (ReplayGate.hold(session, messages.get(0).cursor, messages.get(0).frame)) {
+                        for (int i = 1; i < messages.size(); i++) {
+                            ReplayGate.hold(session, messages.get(i).cursor, messages.get(i).frame);
+                        }
+                        continue;
+                    }
+                    if (session.isOpen()) {
+                        session.sendMessage(frame);
+                        (messages.size() == 1 ? singleFrames : batchFrames).increment();
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Broadcast to session " + session.getId() + " failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * [body,body,...] straight from the received bytes; nothing is re-serialized.
+     */
+    private static TextMessage arrayFrame(List<Pending> messages) {
+        int size = messages.size() + 1;
+        for (Pending message : messages) {
+            size += message.body.length;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        out.write('[');
+        for (int i = 0; i < messages.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.writeBytes(messages.get(i).body);
+        }
+        out.write(']');
+        return new TextMessage(out.toByteArray());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdownNow();
+    }
+}
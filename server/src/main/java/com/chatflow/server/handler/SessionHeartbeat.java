@@ -0,0 +1,236 @@
+package com.chatflow.server.handler;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Keepalive and idle eviction for WebSocket sessions, on one timing wheel
+ * instead of a scheduled task per session.
+ *
+ * Each session has a single wheel timeout. Traffic from the client (messages,
+ * pongs) only stamps lastSeen; nothing is rescheduled per message. When the
+ * timeout fires, the session is pinged if it has been quiet for
+ * heartbeat.ping-interval.ms, evicted if it has been quiet for
+ * heartbeat.idle-timeout.ms, and otherwise re-armed for whichever comes next.
+ * Eviction releases the session from its room right away, without waiting
+ * for the container to notice the dead connection.
+ */
+@Component
+public class SessionHeartbeat {
+
+    private static final String ATTRIBUTE = "heartbeat";
+
+    static final class Entry {
+        final WebSocketSession session;
+        final long openedNanos = System.nanoTime();
+        volatile long lastSeenNanos = openedNanos;
+        volatile boolean closed;
+        volatile TimingWheel.Timeout<Entry> timeout;
+
+        Entry(WebSocketSession session) {
+            this.session = session;
+        }
+    }
+
+    private final AtomicInteger active = new AtomicInteger(0);
+    private final Counter opened;
+    private final Counter closedNormal;
+    private final Counter closedAbnormal;
+    private final Counter evictedIdle;
+    private final Counter pings;
+    private final Timer lifetime;
+    private final MeterRegistry meterRegistry;
+    private TimingWheel<Entry> wheel;
+    private ExecutorService workers;
+    private volatile Consumer<WebSocketSession> releaser = session -> { };
+
+    @Value("${heartbeat.enabled:true}")
+    private boolean enabled;
+
+    @Value("${heartbeat.ping-interval.ms:25000}")
+    private long pingIntervalMs;
+
+    @Value("${heartbeat.idle-timeout.ms:75000}")
+    private long idleTimeoutMs;
+
+    @Value("${heartbeat.tick.ms:100}")
+    private long tickMs;
+
+    @Value("${heartbeat.wheel.slots:512}")
+    private int slots;
+
+    @Value("${heartbeat.workers:4}")
+    private int workerCount;
+
+    public SessionHeartbeat(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.opened = Counter.builder("chatflow.sessions.opened")
+                .description("WebSocket sessions opened")
+                .register(meterRegistry);
+        this.closedNormal = closedCounter("normal");
+        this.closedAbnormal = closedCounter("abnormal");
+        this.evictedIdle = closedCounter("idle");
+        this.pings = Counter.builder("chatflow.heartbeat.pings")
+                .description("Pings sent to quiet sessions")
+                .register(meterRegistry);
+        this.lifetime = Timer.builder("chatflow.sessions.lifetime")
+                .description("How long WebSocket sessions stayed connected")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        Gauge.builder("chatflow.sessions.active", active, AtomicInteger::get)
+                .description("Open WebSocket sessions on this node")
+                .register(meterRegistry);
+    }
+
+    private Counter closedCounter(String reason) {
+        return Counter.builder("chatflow.sessions.closed")
+                .description("WebSocket sessions closed, by reason")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        // Pings and closes can block on a slow socket, so they never run on the ticker
+        workers = Executors.newFixedThreadPool(workerCount);
+        wheel = new TimingWheel<>("heartbeat-wheel", tickMs, slots, timeout -> {
+            try {
+                workers.execute(() -> check(timeout));
+            } catch (RejectedExecutionException e) {
+                // Shutting down
+            }
+        });
+        Gauge.builder("chatflow.heartbeat.timers", wheel, TimingWheel::getPending)
+                .description("Session timeouts pending on the heartbeat wheel")
+                .register(meterRegistry);
+        System.out.println("💓 Heartbeat: ping after " + pingIntervalMs + "ms quiet, evict after "
+                + idleTimeoutMs + "ms (wheel " + slots + " x " + tickMs + "ms)");
+    }
+
+    /**
+     * Called by the handler once: evicted sessions are released through it.
+     */
+    public void onEvict(Consumer<WebSocketSession> releaser) {
+        this.releaser = releaser;
+    }
+
+    public void register(WebSocketSession session) {
+        opened.increment();
+        active.incrementAndGet();
+        Entry entry = new Entry(session);
+        session.getAttributes().put(ATTRIBUTE, entry);
+        if (wheel != null) {
+            entry.timeout = wheel.schedule(entry, pingIntervalMs);
+        }
+    }
+
+    /**
+     * Any traffic from the client proves it alive.
+     */
+    public void touch(WebSocketSession session) {
+        Entry entry = (Entry) session.getAttributes().get(ATTRIBUTE);
+        if (entry != null) {
+            entry.lastSeenNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Session closed by the container. Counted once, however often it's called.
+     */
+    public void unregister(WebSocketSession session, CloseStatus status) {
+        Entry entry = finish(session);
+        if (entry == null) {
+            return;
+        }
+        boolean normal = status.equalsCode(CloseStatus.NORMAL) || status.equalsCode(CloseStatus.GOING_AWAY);
+        (normal ? closedNormal : closedAbnormal).increment();
+    }
+
+    private Entry finish(WebSocketSession session) {
+        Entry entry = (Entry) session.getAttributes().remove(ATTRIBUTE);
+        if (entry == null) {
+            return null;
+        }
+        // A check already running may re-arm it once more; it then sees closed and lapses
+        entry.closed = true;
+        if (entry.timeout != null) {
+            wheel.cancel(entry.timeout);
+        }
+        active.decrementAndGet();
+        lifetime.record(System.nanoTime() - entry.openedNanos, TimeUnit.NANOSECONDS);
+        return entry;
+    }
+
+    private void check(TimingWheel.Timeout<Entry> timeout) {
+        Entry entry = timeout.getItem();
+        if (entry.closed) {
+            return;
+        }
+        WebSocketSession session = entry.session;
+        long idleMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - entry.lastSeenNanos);
+
+        if (!session.isOpen() || idleMs >= idleTimeoutMs) {
+            evict(session, idleMs);
+            return;
+        }
+        long nextMs;
+        if (idleMs >= pingIntervalMs) {
+            try {
+                synchronized (session) {
+                    session.sendMessage(new PingMessage());
+                }
+                pings.increment();
+            } catch (Exception e) {
+                evict(session, idleMs);
+                return;
+            }
+            nextMs = Math.min(pingIntervalMs, idleTimeoutMs - idleMs);
+        } else {
+            nextMs = pingIntervalMs - idleMs;
+        }
+        wheel.reschedule(timeout, Math.max(tickMs, nextMs));
+    }
+
+    private void evict(WebSocketSession session, long idleMs) {
+        if (finish(session) == null) {
+            return;
+        }
+        evictedIdle.increment();
+        System.out.println("💤 Evicting session " + session.getId() + " (quiet for "
+                + Duration.ofMillis(idleMs).toSeconds() + "s)");
+        releaser.accept(session);
+        try {
+            session.close(CloseStatus.SESSION_NOT_RELIABLE.withReason("Idle timeout"));
+        } catch (Exception e) {
+            // Already gone
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (wheel != null) {
+            wheel.close();
+            workers.shutdownNow();
+        }
+    }
+}
@@ -3,29 +3,59 @@ package com.chatflow.server.handler;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.WebSocketSession;
 
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class SessionManager {
-    private ConcurrentHashMap<String, WebSocketSession> sessions;
+    private final ConcurrentHashMap<String, Set<WebSocketSession>> sessions;
 
     public SessionManager() {
         this.sessions = new ConcurrentHashMap<>();
     }
 
-    public ConcurrentHashMap<String, WebSocketSession> getSessions() {
+    public ConcurrentHashMap<String, Set<WebSocketSession>> getSessions() {
         return sessions;
     }
 
-    public void setSessions(ConcurrentHashMap<String, WebSocketSession> sessions) {
-        this.sessions = sessions;
+    public Set<WebSocketSession> getSessions(String roomId) {
+        Set<WebSocketSession> roomSessions = sessions.get(roomId);
+        return roomSessions != null ? roomSessions : Collections.emptySet();
     }
 
-    public WebSocketSession getSession(String roomId) {
-        return sessions.get(roomId);
+    public boolean hasSessions(String roomId) {
+        Set<WebSocketSession> roomSessions = sessions.get(roomId);
+        return roomSessions != null && !roomSessions.isEmpty();
     }
 
-    public void addSession(String roomId, WebSocketSession session) {
-        sessions.put(roomId, session);
+    /**
+     * Register a session for a room.
+     * Returns true if this is the first local session for the room.
+     */
+    public boolean addSession(String roomId, WebSocketSession session) {
+        boolean[] first = new boolean[1];
+        sessions.compute(roomId, (id, roomSessions) -> {
+            if (roomSessions == null) {
+                roomSessions = ConcurrentHashMap.newKeySet();
+            }
+            first[0] = roomSessions.isEmpty();
+            roomSessions.add(session);
+            return roomSessions;
+        });
+        return first[0];
+    }
+
+    /**
+     * Remove a session from a room.
+     * Returns true if the room has no local sessions left.
+     */
+    public boolean removeSession(String roomId, WebSocketSession session) {
+        boolean[] last = new boolean[1];
+        sessions.computeIfPresent(roomId, (id, roomSessions) -> {
+            last[0] = roomSessions.remove(session) && roomSessions.isEmpty();
+            return roomSessions.isEmpty() ? null : roomSessions;
+        });
+        return last[0];
     }
 }
@@ -0,0 +1,198 @@
+package com.chatflow.server.handler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel: one bucket per tick, a timeout lives in the bucket of
+ * its deadline tick modulo the wheel size. Scheduling and cancelling are O(1)
+ * (a doubly-linked bucket list), and each tick only walks one bucket, so the
+ * cost per timeout is constant whatever the number pending. Deadlines further
+ * out than one revolution simply stay in their bucket until their tick comes
+ * round. Precision is one tick.
+ *
+ * A single ticker thread expires timeouts and hands them to the callback,
+ * which must not block; it may reschedule the timeout it was given.
+ */
+public class TimingWheel<T> implements AutoCloseable {
+
+    public static final class Timeout<T> {
+        private final T item;
+        private volatile Bucket<T> bucket;
+        private long deadlineTick;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+
+        private Timeout(T item) {
+            this.item = item;
+        }
+
+        public T getItem() {
+            return item;
+        }
+    }
+
+    private static final class Bucket<T> {
+        private Timeout<T> head;
+
+        void add(Timeout<T> timeout) {
+            timeout.bucket = this;
+            timeout.prev = null;
+            timeout.next = head;
+            if (head != null) {
+                head.prev = timeout;
+            }
+            head = timeout;
+        }
+
+        void remove(Timeout<T> timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+
+    private final Bucket<T>[] buckets;
+    private final int mask;
+    private final long tickNanos;
+    private final long startNanos = System.nanoTime();
+    private final Consumer<Timeout<T>> expired;
+    private final AtomicInteger pending = new AtomicInteger(0);
+    private final ScheduledExecutorService ticker;
+    // Last tick whose bucket has been processed; written inside that bucket's lock
+    private volatile long processedTick;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimingWheel(String name, long tickMs, int slots, Consumer<Timeout<T>> expired) {
+        int size = Integer.highestOneBit(Math.max(2, slots - 1)) << 1;
+        this.buckets = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new Bucket<>();
+        }
+        this.mask = size - 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        this.expired = expired;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::advance, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    public Timeout<T> schedule(T item, long delayMs) {
+        Timeout<T> timeout = new Timeout<>(item);
+        arm(timeout, delayMs);
+        pending.incrementAndGet();
+        return timeout;
+    }
+
+    /**
+     * Moves a pending or expired timeout to a new deadline, reusing it.
+     */
+    public void reschedule(Timeout<T> timeout, long delayMs) {
+        if (unlink(timeout)) {
+            pending.decrementAndGet();
+        }
+        arm(timeout, delayMs);
+        pending.incrementAndGet();
+    }
+
+    /**
+     * Returns true if the timeout was still pending; false if it already
+     * expired (its callback has run or is about to) or was cancelled.
+     */
+    public boolean cancel(Timeout<T> timeout) {
+        if (unlink(timeout)) {
+            pending.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    public int getPending() {
+        return pending.get();
+    }
+
+    private void arm(Timeout<T> timeout, long delayMs) {
+        long deadline = (System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(delayMs) + tickNanos - 1) / tickNanos;
+        while (true) {
+            long target = Math.max(deadline, processedTick + 1);
+            Bucket<T> bucket = buckets[(int) (target & mask)];
+            synchronized (bucket) {
+                // The ticker may have passed target meanwhile; re-aim at the next tick
+                if (processedTick < target) {
+                    timeout.deadlineTick = target;
+                    bucket.add(timeout);
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean unlink(Timeout<T> timeout) {
+        while (true) {
+            Bucket<T> bucket = timeout.bucket;
+            if (bucket == null) {
+                return false;
+            }
+            synchronized (bucket) {
+                if (timeout.bucket == bucket) {
+                    bucket.remove(timeout);
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Processes every tick up to now, catching up if the thread fell behind.
+     */
+    private void advance() {
+        long now = (System.nanoTime() - startNanos) / tickNanos;
+        List<Timeout<T>> due = new ArrayList<>();
+        while (processedTick < now) {
+            long tick = processedTick + 1;
+            Bucket<T> bucket = buckets[(int) (tick & mask)];
+            synchronized (bucket) {
+                Timeout<T> timeout = bucket.head;
+                while (timeout != null) {
+                    Timeout<T> next = timeout.next;
+                    if (timeout.deadlineTick <= tick) {
+                        bucket.remove(timeout);
+                        pending.decrementAndGet();
+                        due.add(timeout);
+                    }
+                    timeout = next;
+                }
+                processedTick = tick;
+            }
+            for (Timeout<T> timeout : due) {
+                try {
+                    expired.accept(timeout);
+                } catch (RuntimeException e) {
+                    System.err.println("Timer callback failed: " + e.getMessage());
+                }
+            }
+            due.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        ticker.shutdownNow();
+    }
+}
@@ -1,15 +1,32 @@
 package com.chatflow.server.handler;
 
+import com.chatflow.server.database.MessageCursor;
+import com.chatflow.server.database.PersistentMessage;
+import com.chatflow.server.database.PersistentMessageCodec;
+import com.chatflow.server.filter.ContentFilter;
+import com.chatflow.server.filter.FilterAction;
 import com.chatflow.server.model.ChatMessage;
+import com.chatflow.server.model.MessageType;
 import com.chatflow.server.model.UserInfo;
+import com.chatflow.server.presence.PresenceService;
+import com.chatflow.server.rabbit.DeliveryLanes;
 import com.chatflow.server.rabbit.RabbitMQSender;
+import com.chatflow.server.rabbit.RoomSubscriptionManager;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.*;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 
@@ -20,12 +37,63 @@ public class WebSocketHandler extends TextWebSocketHandler {
     private final Validator validator;
     private final RabbitMQSender rabbitMQSender;
     private final SessionManager sessionManager;
+    private final RoomSubscriptionManager subscriptions;
+    private final MessageIdGenerator idGenerator;
+    private final HistoryReplayer historyReplayer;
+    private final PresenceService presence;
+    private final DeliveryLanes lanes;
+    private final ContentFilter contentFilter;
+    private final SessionHeartbeat heartbeat;
+    private final Counter clampedTimestamps;
+    private final Counter clampedRetries;
+    // Client message id -> the timestamp its first clamped attempt got; see clamp()
+    private final Map<String, Instant> clampedById;
+    private final String serverId;
+
+    // Server-assigned UUIDv7 ids keep the primary key append-only; the client's id is kept for dedup
+    @Value("${message.id.server-assigned:true}")
+    private boolean serverAssignedIds;
+
+    // Rows are partitioned and ordered by this timestamp, so a client clock too far off is replaced
+    @Value("${ingress.timestamp.max-skew.ms:300000}")
+    private long maxSkewMs;
+
     public WebSocketHandler(ObjectMapper objectMapper, Validator validator,
-                            RabbitMQSender rabbitMQSender, SessionManager sessionManager) {
+                            RabbitMQSender rabbitMQSender, SessionManager sessionManager,
+                            RoomSubscriptionManager subscriptions,
+                            MessageIdGenerator idGenerator,
+                            HistoryReplayer historyReplayer,
+                            PresenceService presence,
+                            DeliveryLanes lanes,
+                            ContentFilter contentFilter,
+                            SessionHeartbeat heartbeat,
+                            MeterRegistry meterRegistry,
+                            @Value("${ingress.timestamp.clamp-memory:10000}") int clampMemory) throws UnknownHostException {
         this.objectMapper = objectMapper;
         this.validator = validator;
         this.rabbitMQSender = rabbitMQSender;
         this.sessionManager = sessionManager;
+        this.subscriptions = subscriptions;
+        this.idGenerator = idGenerator;
+        this.historyReplayer = historyReplayer;
+        this.presence = presence;
+        this.lanes = lanes;
+        this.contentFilter = contentFilter;
+        this.heartbeat = heartbeat;
+        this.clampedTimestamps = Counter.builder("chatflow.ingress.timestamp.clamped")
+                .description("Messages whose client timestamp was outside the allowed skew and replaced by server time")
+                .register(meterRegistry);
+        this.clampedRetries = Counter.builder("chatflow.ingress.timestamp.clamped.retries")
+                .description("Retries of a clamped message that reused the first attempt's timestamp")
+                .register(meterRegistry);
+        this.clampedById = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Instant> eldest) {
+                return size() > clampMemory;
+            }
+        });
+        this.serverId = InetAddress.getLocalHost().getHostName();
+        heartbeat.onEvict(this::release);
     }
 
     @Override
@@ -33,12 +101,46 @@ public class WebSocketHandler extends TextWebSocketHandler {
         String path = session.getUri().getPath();
         String roomId = path.substring(path.lastIndexOf('/') + 1);
         System.out.println("New WebSocket connection for room: " + roomId);
-        sessionManager.addSession(roomId, session);
+        session.getAttributes().put("roomId", roomId);
+        heartbeat.register(session);
+
+        // ?since=<cursor> resumes after the client's last seen message, otherwise the
+        // last ?replay=N messages are sent (history.replay.count by default, 0 to skip)
+        Map<String, List<String>> params = UriComponentsBuilder.fromUri(session.getUri()).build().getQueryParams();
+        MessageCursor since = null;
+        int replayCount = historyReplayer.getReplayCount();
+        try {
+            String cursor = first(params, "since");
+            String count = first(params, "replay");
+            since = cursor != null ? MessageCursor.parse(cursor) : null;
+            replayCount = count != null ? Integer.parseInt(count) : replayCount;
+        } catch (IllegalArgumentException e) {
+            System.err.println("Ignoring bad replay parameters: " + session.getUri());
+        }
+        boolean replay = since != null || replayCount > 0;
+
+        // Gate first: from the moment the session is in the room, live frames are held until the replay is out
+        if (replay) {
+            historyReplayer.prepare(session);
+        }
+        if (sessionManager.addSession(roomId, session)) {
+            subscriptions.subscribe(roomId);
+        }
+        if (replay) {
+            historyReplayer.start(session, roomId, since, replayCount);
+        }
+    }
+
+    private static String first(Map<String, List<String>> params, String name) {
+        List<String> values = params.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
     }
 
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        heartbeat.touch(session);
         String payload = message.getPayload();
+        long start = System.nanoTime();
         try {
             ChatMessage chatMessage = objectMapper.readValue(payload, ChatMessage.class);
 
@@ -47,25 +149,157 @@ public class WebSocketHandler extends TextWebSocketHandler {
                 return;
             }
 
+            clamp(chatMessage);
+
+            ContentFilter.Result filtered = contentFilter.check(chatMessage.getMessage());
+            if (filtered.getAction() == FilterAction.REJECT) {
+                synchronized (session) {
+                    session.sendMessage(new TextMessage(objectMapper.writeValueAsString(Map.of(
+                            "messageId", chatMessage.getMessageId(),
+                            "status", "REJECTED",
+                            "reason", "content",
+                            "timestamp", Instant.now().toString()))));
+                }
+                return;
+            }
+            if (filtered.getAction() == FilterAction.MASK) {
+                chatMessage.setMessage(filtered.getText());
+            } else if (filtered.getAction() == FilterAction.FLAG) {
+                System.out.println("🚩 Flagged message " + chatMessage.getMessageId() + " from user "
+                        + chatMessage.getUserId() + " in " + chatMessage.getRoomId());
+            }
+
+            UUID clientMessageId = UUID.fromString(chatMessage.getMessageId());
+            UUID messageId = serverAssignedIds ? idGenerator.next() : clientMessageId;
+            if (serverAssignedIds) {
+                chatMessage.setServerMessageId(messageId.toString());
+            }
+            MessageType type = chatMessage.getMessageType();
+            DeliveryLanes.Lane lane = lanes.laneFor(type);
+
+            // Typed record built once here; the DB writer consumes it without re-parsing
+            byte[] persistenceRecord = lane == DeliveryLanes.Lane.EPHEMERAL ? null : PersistentMessageCodec.encode(
+                    toPersistent(chatMessage, messageId, clientMessageId, session));
+
+            // JOIN/LEAVE on the standard lane: presence persists changes only, netted per flush
+            boolean presenceEvent = presence.isEnabled() && (type == MessageType.JOIN || type == MessageType.LEAVE);
+            boolean presenceOwnsRecord = presenceEvent && lane == DeliveryLanes.Lane.STANDARD
+                    && presence.isCoalescingPersistence();
+
+            // The record is handed to the broker before the client is acked or the room sees
+            // the message. Durable also waits until the broker has it on disk
+            boolean accepted = true;
+            if (lane == DeliveryLanes.Lane.DURABLE) {
+                accepted = rabbitMQSender.sendDurablePersistence(persistenceRecord);
+                if (!accepted) {
+                    lanes.confirmFailed();
+                }
+            } else if (lane == DeliveryLanes.Lane.STANDARD && !presenceOwnsRecord) {
+                accepted = rabbitMQSender.sendPersistence(persistenceRecord);
+                if (!accepted) {
+                    lanes.publishFailed();
+                }
+            }
+
             Map<String, Object> ackResponse = Map.of(
                     "messageId", chatMessage.getMessageId(),
-                    "status", "RECEIVED",
+                    "serverMessageId", messageId.toString(),
+                    "status", accepted ? "RECEIVED" : "FAILED",
                     "timestamp", Instant.now().toString()
             );
             synchronized (session) {
                 session.sendMessage(new TextMessage(objectMapper.writeValueAsString(ackResponse)));
             }
+            if (!accepted) {
+                return;
+            }
 
             String json = objectMapper.writeValueAsString(chatMessage);
-            rabbitMQSender.sendMessage(chatMessage.getRoomId(), json);
+            if (lane == DeliveryLanes.Lane.EPHEMERAL) {
+                rabbitMQSender.sendMessage(chatMessage.getRoomId(), json, null, true);
+            } else if (presenceOwnsRecord) {
+                // Presence may net the row away, so it stays out of replay history like the DB
+                rabbitMQSender.sendMessage(chatMessage.getRoomId(), json, null);
+            } else {
+                rabbitMQSender.sendMessage(chatMessage.getRoomId(), json,
+                        new MessageCursor(chatMessage.getTimestamp(), messageId).toString());
+            }
+            if (presenceEvent) {
+                presence.update(session, chatMessage.getRoomId(), Integer.parseInt(chatMessage.getUserId()),
+                        type == MessageType.JOIN, presenceOwnsRecord ? persistenceRecord : null);
+            }
+            lanes.record(lane, start);
 
         } catch (Exception e) {
             System.err.println("YOOOO"+e.getMessage());
         }
     }
 
+    /**
+     * Replaces a client timestamp too far from server time. On a partitioned
+     * table the dedup key is (client_message_id, timestamp), so a retry must
+     * get the same replacement as its first attempt; the last clamp-memory
+     * clamped ids are remembered for that. A retry that lands on another
+     * node, or after its id was evicted, gets a new timestamp and is not
+     * deduplicated: clamped minus clamped.retries bounds how often that can
+     * happen.
+     */
+    private void clamp(ChatMessage chatMessage) {
+        Instant now = Instant.now();
+        if (Duration.between(now, chatMessage.getTimestamp()).abs().toMillis() <= maxSkewMs) {
+            return;
+        }
+        clampedTimestamps.increment();
+        Instant first = clampedById.putIfAbsent(chatMessage.getMessageId(), now);
+        if (first != null) {
+            clampedRetries.increment();
+        }
+        chatMessage.setTimestamp(first != null ? first : now);
+    }
+
+    private PersistentMessage toPersistent(ChatMessage chatMessage, UUID messageId, UUID clientMessageId,
+                                           WebSocketSession session) {
+        InetSocketAddress remote = session.getRemoteAddress();
+        String clientIp = remote != null && remote.getAddress() != null
+                ? remote.getAddress().getHostAddress()
+                : null;
+        return new PersistentMessage(
+                messageId,
+                clientMessageId,
+                chatMessage.getRoomId(),
+                Integer.parseInt(chatMessage.getUserId()),
+                chatMessage.getUsername(),
+                chatMessage.getMessage(),
+                chatMessage.getMessageType().name(),
+                chatMessage.getTimestamp(),
+                serverId,
+                clientIp
+        );
+    }
+
+    @Override
+    protected void handlePongMessage(WebSocketSession session, PongMessage message) {
+        heartbeat.touch(session);
+    }
+
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        heartbeat.unregister(session, status);
+        release(session);
+    }
+
+    /**
+     * Takes the session out of its room and presence. Safe to call twice: the
+     * heartbeat calls it on eviction, before the container reports the close.
+     */
+    private void release(WebSocketSession session) {
+        String roomId = (String) session.getAttributes().get("roomId");
+        if (roomId != null && sessionManager.removeSession(roomId, session)) {
+            subscriptions.unsubscribeLater(roomId);
+        }
+        if (presence.isEnabled()) {
+            presence.sessionClosed(session);
+        }
     }
 
     @Override
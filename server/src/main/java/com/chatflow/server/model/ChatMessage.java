@@ -1,5 +1,7 @@
 package com.chatflow.server.model;
 
+import com.chatflow.server.database.PersistentMessage;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.validation.constraints.*;
 import java.time.Instant;
@@ -32,9 +34,31 @@ public class ChatMessage {
     @JsonProperty("roomId")
     private String roomId;
 
+    // Set by the server; messageId stays the client's id
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String serverMessageId;
+
     // Constructors
     public ChatMessage() {}
 
+    /**
+     * Stored message in the same shape as a live broadcast.
+     */
+    public static ChatMessage fromPersistent(PersistentMessage stored) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.setMessageId(stored.getClientMessageId().toString());
+        chatMessage.setUserId(String.valueOf(stored.getUserId()));
+        chatMessage.setUsername(stored.getUsername());
+        chatMessage.setMessage(stored.getMessage());
+        chatMessage.setTimestamp(stored.getTimestamp());
+        chatMessage.setMessageType(MessageType.valueOf(stored.getMessageType()));
+        chatMessage.setRoomId(stored.getRoomId());
+        if (!stored.getMessageId().equals(stored.getClientMessageId())) {
+            chatMessage.setServerMessageId(stored.getMessageId().toString());
+        }
+        return chatMessage;
+    }
+
     // Getters and Setters
     public String getMessageId() { return messageId; }
     public void setMessageId(String messageId) { this.messageId = messageId; }
@@ -56,4 +80,7 @@ public class ChatMessage {
 
     public String getRoomId() { return roomId; }
     public void setRoomId(String roomId) { this.roomId = roomId; }
+
+    public String getServerMessageId() { return serverMessageId; }
+    public void setServerMessageId(String serverMessageId) { this.serverMessageId = serverMessageId; }
 }
\ No newline at end of file
@@ -3,5 +3,7 @@ package com.chatflow.server.model;
 public enum MessageType{
     TEXT,
     JOIN,
-    LEAVE
-}
\ No newline at end of file
+    LEAVE,
+    // Typing indicator; broadcast only by default (qos.lanes)
+    TYPING
+}
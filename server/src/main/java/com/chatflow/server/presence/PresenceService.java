@@ -0,0 +1,316 @@
+package com.chatflow.server.presence;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Who is online in each room, cluster-wide, kept in memory.
+ *
+ * Local membership comes from JOIN/LEAVE messages and session close: a user
+ * is present on this node while at least one local session has joined them.
+ * Only 0->1 and 1->0 transitions become deltas, which are netted per flush
+ * (a JOIN and LEAVE inside one window cancel) and replicated by
+ * PresenceReplicator. Every node keeps the same per-node sets, so the online
+ * set of a room is a ready map and reading it takes no coordination.
+ *
+ * Mutations are serialized on this object; reads are lock-free.
+ */
+@Service
+public class PresenceService {
+
+    private static final String SESSION_ATTRIBUTE = "presenceUsers";
+
+    private static final class NodeState {
+        final Map<String, Set<Integer>> rooms = new HashMap<>();
+        volatile long lastSeen = System.currentTimeMillis();
+    }
+
+    private final String nodeId;
+    // Cluster view: room -> user -> number of nodes the user is present on
+    private final Map<String, ConcurrentHashMap<Integer, Integer>> online = new ConcurrentHashMap<>();
+    // Per-node membership, this node included; the source of online
+    private final Map<String, NodeState> nodes = new ConcurrentHashMap<>();
+    // This node: room -> user -> local sessions the user joined through
+    private final Map<String, Map<Integer, Integer>> local = new HashMap<>();
+    // Net local changes since the last flush: room -> user -> joined
+    private Map<String, Map<Integer, Boolean>> pendingDelta = new HashMap<>();
+    // JOIN/LEAVE rows waiting to be persisted, one per room and user at most
+    private Map<String, byte[]> pendingRecords = new LinkedHashMap<>();
+
+    private final Counter changes;
+    private final Counter recordsSkipped;
+
+    @Value("${presence.enabled:false}")
+    private boolean enabled;
+
+    // Persist only JOIN/LEAVE rows that changed presence, netted per flush window
+    @Value("${presence.persist.coalesce:true}")
+    private boolean coalescePersistence;
+
+    public PresenceService(MeterRegistry meterRegistry) throws UnknownHostException {
+        this.nodeId = InetAddress.getLocalHost().getHostName();
+        this.nodes.put(nodeId, new NodeState());
+        this.changes = Counter.builder("chatflow.presence.changes")
+                .description("Local presence transitions (first join or last leave of a user in a room)")
+                .register(meterRegistry);
+        this.recordsSkipped = Counter.builder("chatflow.presence.persist.skipped")
+                .description("JOIN/LEAVE rows not persisted: no presence change, or cancelled within a flush window")
+                .register(meterRegistry);
+        Gauge.builder("chatflow.presence.online", online,
+                        rooms -> rooms.values().stream().mapToInt(Map::size).sum())
+                .description("Users online across all rooms (a user in two rooms counts twice)")
+                .register(meterRegistry);
+        Gauge.builder("chatflow.presence.nodes", nodes, Map::size)
+                .description("Nodes contributing to the presence view")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * True when update() takes over persisting JOIN/LEAVE records.
+     */
+    public boolean isCoalescingPersistence() {
+        return coalescePersistence;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * A JOIN or LEAVE from a session. Returns true if the persistence record
+     * was taken over (persisted later, coalesced, or dropped), false if the
+     * caller should persist it as usual. A null record (ephemeral or durable
+     * lane) only updates presence.
+     */
+    public synchronized boolean update(WebSocketSession session, String roomId, int userId, boolean join,
+                                       byte[] record) {
+        @SuppressWarnings("unchecked")
+        Map<String, Set<Integer>> sessionUsers = (Map<String, Set<Integer>>) session.getAttributes()
+                .computeIfAbsent(SESSION_ATTRIBUTE, k -> new HashMap<String, Set<Integer>>());
+        Set<Integer> users = sessionUsers.computeIfAbsent(roomId, k -> new HashSet<>());
+
+        boolean changed = join
+                ? users.add(userId) && adjustLocal(roomId, userId, 1) == 1
+                : users.remove(userId) && adjustLocal(roomId, userId, -1) == 0;
+        if (changed) {
+            localChange(roomId, userId, join);
+        }
+
+        if (!coalescePersistence || record == null) {
+            return false;
+        }
+        String key = roomId + ":" + userId;
+        if (!changed) {
+            recordsSkipped.increment();
+        } else if (pendingRecords.remove(key) != null) {
+            // JOIN then LEAVE (or the reverse) inside one window: neither is written
+            recordsSkipped.increment(2);
+        } else {
+            pendingRecords.put(key, record);
+        }
+        return true;
+    }
+
+    /**
+     * Leaves every user the session joined; a dropped connection sends no LEAVE.
+     */
+    public synchronized void sessionClosed(WebSocketSession session) {
+        @SuppressWarnings("unchecked")
+        Map<String, Set<Integer>> sessionUsers = (Map<String, Set<Integer>>) session.getAttributes()
+                .remove(SESSION_ATTRIBUTE);
+        if (sessionUsers == null) {
+            return;
+        }
+        sessionUsers.forEach((roomId, users) -> {
+            for (int userId : users) {
+                if (adjustLocal(roomId, userId, -1) == 0) {
+                    localChange(roomId, userId, false);
+                }
+            }
+        });
+    }
+
+    private int adjustLocal(String roomId, int userId, int by) {
+        Map<Integer, Integer> users = local.computeIfAbsent(roomId, k -> new HashMap<>());
+        int count = users.getOrDefault(userId, 0) + by;
+        if (count > 0) {
+            users.put(userId, count);
+        } else {
+            users.remove(userId);
+        }
+        return count;
+    }
+
+    private void localChange(String roomId, int userId, boolean join) {
+        changes.increment();
+        applyNode(nodes.get(nodeId), roomId, userId, join);
+        Map<Integer, Boolean> roomDelta = pendingDelta.computeIfAbsent(roomId, k -> new HashMap<>());
+        // Transitions alternate, so an opposite pending change means we're back where we started
+        if (roomDelta.remove(userId) == null) {
+            roomDelta.put(userId, join);
+        }
+    }
+
+    /**
+     * Idempotent: a node's membership is a set, so replays and overlapping
+     * snapshots and deltas are harmless.
+     */
+    private void applyNode(NodeState node, String roomId, int userId, boolean join) {
+        if (join) {
+            if (node.rooms.computeIfAbsent(roomId, k -> new HashSet<>()).add(userId)) {
+                online.computeIfAbsent(roomId, k -> new ConcurrentHashMap<>()).merge(userId, 1, Integer::sum);
+            }
+        } else {
+            Set<Integer> users = node.rooms.get(roomId);
+            if (users != null && users.remove(userId)) {
+                online.get(roomId).computeIfPresent(userId, (k, count) -> count > 1 ? count - 1 : null);
+            }
+        }
+    }
+
+    /**
+     * This node's net changes since the last call, or null if there were none.
+     */
+    public synchronized PresenceUpdate drainDelta() {
+        if (pendingDelta.isEmpty()) {
+            return null;
+        }
+        Map<String, List<Integer>> joined = new TreeMap<>();
+        Map<String, List<Integer>> left = new TreeMap<>();
+        pendingDelta.forEach((roomId, users) -> users.forEach((userId, join) ->
+                (join ? joined : left).computeIfAbsent(roomId, k -> new ArrayList<>()).add(userId)));
+        pendingDelta = new HashMap<>();
+        return new PresenceUpdate(nodeId, PresenceUpdate.Kind.DELTA,
+                joined.isEmpty() ? null : joined, left.isEmpty() ? null : left);
+    }
+
+    public synchronized List<byte[]> drainRecords() {
+        if (pendingRecords.isEmpty()) {
+            return List.of();
+        }
+        List<byte[]> records = new ArrayList<>(pendingRecords.values());
+        pendingRecords = new LinkedHashMap<>();
+        return records;
+    }
+
+    public synchronized PresenceUpdate snapshot() {
+        Map<String, List<Integer>> joined = new TreeMap<>();
+        nodes.get(nodeId).rooms.forEach((roomId, users) -> {
+            if (!users.isEmpty()) {
+                joined.put(roomId, new ArrayList<>(users));
+            }
+        });
+        return new PresenceUpdate(nodeId, PresenceUpdate.Kind.SNAPSHOT, joined, null);
+    }
+
+    /**
+     * Applies another node's update. A snapshot replaces everything known
+     * about that node, which also repairs anything a lost delta left behind.
+     */
+    public synchronized void apply(PresenceUpdate update) {
+        if (nodeId.equals(update.getNode())) {
+            return;
+        }
+        if (update.getKind() == PresenceUpdate.Kind.BYE) {
+            removeNode(update.getNode());
+            return;
+        }
+        NodeState node = nodes.computeIfAbsent(update.getNode(), k -> new NodeState());
+        node.lastSeen = System.currentTimeMillis();
+
+        if (update.getKind() == PresenceUpdate.Kind.SNAPSHOT) {
+            Map<String, List<Integer>> joined = update.getJoined() != null ? update.getJoined() : Map.of();
+            for (Map.Entry<String, Set<Integer>> room : node.rooms.entrySet()) {
+                Set<Integer> keep = new HashSet<>(joined.getOrDefault(room.getKey(), List.of()));
+                for (Integer userId : new ArrayList<>(room.getValue())) {
+                    if (!keep.contains(userId)) {
+                        applyNode(node, room.getKey(), userId, false);
+                    }
+                }
+            }
+            joined.forEach((roomId, users) -> users.forEach(userId -> applyNode(node, roomId, userId, true)));
+        } else if (update.getKind() == PresenceUpdate.Kind.DELTA) {
+            if (update.getJoined() != null) {
+                update.getJoined().forEach((roomId, users) -> users.forEach(userId -> applyNode(node, roomId, userId, true)));
+            }
+            if (update.getLeft() != null) {
+                update.getLeft().forEach((roomId, users) -> users.forEach(userId -> applyNode(node, roomId, userId, false)));
+            }
+        }
+    }
+
+    /**
+     * Drops nodes that stopped sending snapshots (crashed without a BYE).
+     */
+    public synchronized void expireNodes(long ttlMs) {
+        long cutoff = System.currentTimeMillis() - ttlMs;
+        Iterator<Map.Entry<String, NodeState>> it = nodes.entrySet().iterator();
+        List<String> expired = new ArrayList<>();
+        while (it.hasNext()) {
+            Map.Entry<String, NodeState> entry = it.next();
+            if (!entry.getKey().equals(nodeId) && entry.getValue().lastSeen < cutoff) {
+                expired.add(entry.getKey());
+            }
+        }
+        for (String node : expired) {
+            System.out.println("👋 Presence: node " + node + " timed out");
+            removeNode(node);
+        }
+    }
+
+    private void removeNode(String node) {
+        NodeState state = nodes.remove(node);
+        if (state == null) {
+            return;
+        }
+        state.rooms.forEach((roomId, users) -> {
+            for (Integer userId : new ArrayList<>(users)) {
+                applyNode(state, roomId, userId, false);
+            }
+        });
+    }
+
+    /**
+     * Live view of a room's online users; no copy is made.
+     */
+    public Set<Integer> onlineUsers(String roomId) {
+        Map<Integer, Integer> users = online.get(roomId);
+        return users != null ? Collections.unmodifiableSet(users.keySet()) : Set.of();
+    }
+
+    public Map<String, Integer> onlineCounts() {
+        Map<String, Integer> counts = new TreeMap<>();
+        online.forEach((roomId, users) -> {
+            if (!users.isEmpty()) {
+                counts.put(roomId, users.size());
+            }
+        });
+        return counts;
+    }
+
+    public Set<String> getNodes() {
+        return new TreeMap<>(nodes).keySet();
+    }
+}
@@ -0,0 +1,44 @@
+package com.chatflow.server.presence;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What nodes exchange on the presence exchange. DELTA carries this node's
+ * net joins and leaves since the last flush, SNAPSHOT its full local
+ * membership (joined only), SYNC asks everyone for a snapshot, and BYE
+ * drops the node. User ids are the compact integer ids.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PresenceUpdate {
+
+    public enum Kind { DELTA, SNAPSHOT, SYNC, BYE }
+
+    private String node;
+    private Kind kind;
+    private Map<String, List<Integer>> joined;
+    private Map<String, List<Integer>> left;
+
+    public PresenceUpdate() {}
+
+    public PresenceUpdate(String node, Kind kind, Map<String, List<Integer>> joined, Map<String, List<Integer>> left) {
+        this.node = node;
+        this.kind = kind;
+        this.joined = joined;
+        this.left = left;
+    }
+
+    public String getNode() { return node; }
+    public void setNode(String node) { this.node = node; }
+
+    public Kind getKind() { return kind; }
+    public void setKind(Kind kind) { this.kind = kind; }
+
+    public Map<String, List<Integer>> getJoined() { return joined; }
+    public void setJoined(Map<String, List<Integer>> joined) { this.joined = joined; }
+
+    public Map<String, List<Integer>> getLeft() { return left; }
+    public void setLeft(Map<String, List<Integer>> left) { this.left = left; }
+}
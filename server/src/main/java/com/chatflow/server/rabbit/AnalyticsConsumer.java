@@ -0,0 +1,70 @@
+package com.chatflow.server.rabbit;
+
+import com.chatflow.server.analytics.AnalyticsService;
+import com.chatflow.server.database.PersistentMessageCodec;
+import com.rabbitmq.client.*;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+
+/**
+ * Feeds AnalyticsService from the persistence exchange. The persistence queue
+ * is shared competitively across nodes, so analytics gets its own per-node
+ * queue and every node sees all traffic. The queue is transient and capped:
+ * if analytics falls behind, the oldest records are dropped rather than
+ * backing up the broker or the write path.
+ */
+@Component
+@DependsOn("rabbitMQInitializer")
+public class AnalyticsConsumer {
+
+    private final ChannelPool channelPool;
+    private final AnalyticsService analytics;
+    private final String queueName;
+
+    @Value("${analytics.enabled:false}")
+    private boolean enabled;
+
+    @Value("${analytics.queue.max-length:100000}")
+    private int maxQueueLength;
+
+    public AnalyticsConsumer(@Qualifier("consumerPool") ChannelPool channelPool,
+                             AnalyticsService analytics) throws UnknownHostException {
+        this.channelPool = channelPool;
+        this.analytics = analytics;
+        this.queueName = "chat.analytics." + InetAddress.getLocalHost().getHostName();
+    }
+
+    @PostConstruct
+    public void start() throws Exception {
+        if (!enabled) {
+            return;
+        }
+        Channel channel = channelPool.borrowChannel();
+        Map<String, Object> arguments = Map.of(
+                "x-max-length", maxQueueLength,
+                "x-overflow", "drop-head");
+        channel.queueDeclare(queueName, false, true, true, arguments);
+        channel.queueBind(queueName, RabbitMQInitializer.PERSISTENCE_EXCHANGE, "");
+        channel.queueBind(queueName, RabbitMQInitializer.DURABLE_PERSISTENCE_EXCHANGE, "");
+
+        channel.basicConsume(queueName, true, new DefaultConsumer(channel) {
+            @Override
+            public void handleDelivery(String consumerTag, Envelope envelope,
+                                       AMQP.BasicProperties properties, byte[] body) {
+                try {
+                    analytics.record(PersistentMessageCodec.decode(body));
+                } catch (Exception e) {
+                    System.err.println("Error recording analytics: " + e.getMessage());
+                }
+            }
+        });
+        System.out.println("📊 Analytics consuming " + queueName + " (max " + maxQueueLength + " queued)");
+    }
+}
@@ -0,0 +1,167 @@
+package com.chatflow.server.rabbit;
+
+import com.chatflow.server.database.AckTracker;
+import com.rabbitmq.client.Channel;
+
+/**
+ * Ack-after-commit bookkeeping for one consumer channel.
+ *
+ * Several writers commit batches out of order, so a multi-ack may only cover
+ * tags that are all committed. The tracker acks with multiple=true up to the
+ * highest committed tag below the oldest still-outstanding one. Rolled-back
+ * deliveries are nacked individually and requeued.
+ *
+ * Delivery tags on a channel only grow, so the unsettled ones are kept as a
+ * sliding window of per-tag states in a circular byte array (no boxing, no
+ * tree nodes per delivery). Tags the consumer settled on its own, without
+ * registering them, read as settled.
+ */
+public class ChannelAckTracker implements AckTracker {
+
+    private static final byte SETTLED = 0;
+    private static final byte OUTSTANDING = 1;
+    private static final byte COMMITTED = 2;
+
+    private final Channel channel;
+    private byte[] states = new byte[1024];
+    private int mask = states.length - 1;
+    // Window [base, highest]; empty when base > highest
+    private long base = 1;
+    private long highest = 0;
+    private int outstanding = 0;
+    private int committedUnacked = 0;
+
+    public ChannelAckTracker(Channel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Called on the consumer thread when a delivery is handed to the writer.
+     */
+    public synchronized void delivered(long deliveryTag) {
+        if (deliveryTag <= highest) {
+            return;
+        }
+        if (base > highest) {
+            // Nothing unsettled: start the window here rather than spanning the gap
+            base = deliveryTag;
+        }
+        if (deliveryTag - base >= states.length) {
+            grow(deliveryTag - base + 1);
+        }
+        states[index(deliveryTag)] = OUTSTANDING;
+        highest = deliveryTag;
+        outstanding++;
+    }
+
+    @Override
+    public synchronized void committed(long deliveryTag) {
+        if (state(deliveryTag) == OUTSTANDING) {
+            states[index(deliveryTag)] = COMMITTED;
+            outstanding--;
+            committedUnacked++;
+        }
+    }
+
+    @Override
+    public synchronized void failed(long deliveryTag) {
+        if (state(deliveryTag) != OUTSTANDING) {
+            return;
+        }
+        states[index(deliveryTag)] = SETTLED;
+        outstanding--;
+        try {
+            channel.basicNack(deliveryTag, false, true);
+        } catch (Exception e) {
+            System.err.println("Failed to nack delivery " + deliveryTag + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * The consumer gave up on a delivery (dropped, not requeued), before or
+     * after registering it. An outstanding tag is settled here so it doesn't
+     * hold back later multi-acks; one the writer already settled is left alone.
+     */
+    public synchronized void rejected(long deliveryTag) {
+        if (state(deliveryTag) == OUTSTANDING) {
+            states[index(deliveryTag)] = SETTLED;
+            outstanding--;
+        } else if (deliveryTag <= highest) {
+            return;
+        }
+        try {
+            channel.basicNack(deliveryTag, false, false);
+        } catch (Exception e) {
+            System.err.println("Failed to reject delivery " + deliveryTag + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        // Walk up to the oldest outstanding tag; the target must itself be
+        // committed, never a nacked one
+        long tag = base;
+        long target = -1;
+        while (tag <= highest) {
+            byte state = states[index(tag)];
+            if (state == OUTSTANDING) {
+                break;
+            }
+            if (state == COMMITTED) {
+                target = tag;
+            }
+            tag++;
+        }
+        if (target < 0) {
+            advance(tag);
+            return;
+        }
+        try {
+            channel.basicAck(target, true);
+            advance(tag);
+        } catch (Exception e) {
+            // Left in place; the next flush retries
+            System.err.println("Failed to ack up to delivery " + target + ": " + e.getMessage());
+        }
+    }
+
+    public synchronized int getOutstanding() {
+        return outstanding + committedUnacked;
+    }
+
+    private byte state(long deliveryTag) {
+        return deliveryTag >= base && deliveryTag <= highest ? states[index(deliveryTag)] : SETTLED;
+    }
+
+    private int index(long deliveryTag) {
+        return (int) (deliveryTag & mask);
+    }
+
+    /**
+     * Settles everything below to, which holds no outstanding tags.
+     */
+    private void advance(long to) {
+        for (long tag = base; tag < to; tag++) {
+            int i = index(tag);
+            if (states[i] == COMMITTED) {
+                committedUnacked--;
+            }
+            states[i] = SETTLED;
+        }
+        base = to;
+    }
+
+    private void grow(long window) {
+        int size = states.length;
+        while (size < window) {
+            size <<= 1;
+        }
+        byte[] next = new byte[size];
+        int nextMask = size - 1;
+        for (long tag = base; tag <= highest; tag++) {
+            next[(int) (tag & nextMask)] = states[index(tag)];
+        }
+        states = next;
+        mask = nextMask;
+    }
+}
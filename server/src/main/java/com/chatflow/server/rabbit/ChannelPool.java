@@ -15,14 +15,24 @@ public class ChannelPool {
     private final int port;
     private final String username;
     private final String password;
+    private final boolean confirms;
 
     public ChannelPool(int poolSize, String host, int port, String username, String password) throws IOException, TimeoutException {
+        this(poolSize, host, port, username, password, false);
+    }
+
+    /**
+     * confirms = true puts every channel in publisher-confirm mode.
+     */
+    public ChannelPool(int poolSize, String host, int port, String username, String password,
+                       boolean confirms) throws IOException, TimeoutException {
 
         this.poolSize = poolSize;
         this.host = host;
         this.port = port;
         this.username = username;
         this.password = password;
+        this.confirms = confirms;
 
         ConnectionFactory factory = new ConnectionFactory();
         factory.setHost(host);
@@ -38,8 +48,16 @@ public class ChannelPool {
 
     private void init() throws IOException {
         for (int i = 0; i < poolSize; i++) {
-            pool.offer(connection.createChannel());
+            pool.offer(newChannel());
+        }
+    }
+
+    private Channel newChannel() throws IOException {
+        Channel channel = connection.createChannel();
+        if (confirms) {
+            channel.confirmSelect();
         }
+        return channel;
     }
 
     public Channel borrowChannel() throws InterruptedException {
@@ -52,6 +70,26 @@ public class ChannelPool {
         }
     }
 
+    /**
+     * For a borrowed channel whose state can't be trusted any more, e.g. a
+     * confirm channel with a publish still unconfirmed: it is closed and a
+     * fresh channel takes its place in the pool.
+     */
+    public void discardChannel(Channel channel) {
+        try {
+            if (channel != null && channel.isOpen()) {
+                channel.close();
+            }
+        } catch (Exception e) {
+            System.err.println("Failed to close discarded channel: " + e.getMessage());
+        }
+        try {
+            pool.offer(newChannel());
+        } catch (IOException e) {
+            System.err.println("Failed to replace discarded channel: " + e.getMessage());
+        }
+    }
+
     @PreDestroy
     public void close() throws IOException, TimeoutException {
         for (Channel channel : pool) {
@@ -0,0 +1,108 @@
+package com.chatflow.server.rabbit;
+
+import com.chatflow.server.model.MessageType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivery class per message type, so cheap traffic doesn't pay for durability:
+ *
+ * EPHEMERAL - broadcast only, transient with a short TTL, never persisted or replayed.
+ * STANDARD  - broadcast, persistence record published fire-and-forget (the original path).
+ * DURABLE   - persistence record published as persistent with a publisher confirm before
+ *             the client is acked, then acked off its own queue only after the DB commit.
+ *
+ * Configured as qos.lanes=TYPE:lane,...; unlisted types are STANDARD.
+ */
+@Component
+public class DeliveryLanes {
+
+    public enum Lane { EPHEMERAL, STANDARD, DURABLE }
+
+    private final Map<MessageType, Lane> lanes = new EnumMap<>(MessageType.class);
+    private final Map<Lane, Counter> messages = new EnumMap<>(Lane.class);
+    private final Map<Lane, Timer> latency = new EnumMap<>(Lane.class);
+    private final Counter confirmFailures;
+    private final Counter publishFailures;
+
+    public DeliveryLanes(@Value("${qos.lanes:TYPING:ephemeral}") String mapping, MeterRegistry meterRegistry) {
+        for (MessageType type : MessageType.values()) {
+            lanes.put(type, Lane.STANDARD);
+        }
+        for (String entry : mapping.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 2) {
+                continue;
+            }
+            try {
+                lanes.put(MessageType.valueOf(parts[0].trim().toUpperCase()), Lane.valueOf(parts[1].trim().toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                System.err.println("⚠️ Ignoring bad qos.lanes entry: " + entry);
+            }
+        }
+        for (Lane lane : Lane.values()) {
+            String tag = lane.name().toLowerCase();
+            messages.put(lane, Counter.builder("chatflow.lane.messages")
+                    .description("Messages accepted at ingress per delivery lane")
+                    .tag("lane", tag)
+                    .register(meterRegistry));
+            latency.put(lane, Timer.builder("chatflow.lane.ingress.latency")
+                    .description("Ingress handling per message until broadcast and persistence are handed off (confirmed for durable)")
+                    .tag("lane", tag)
+                    .publishPercentiles(0.5, 0.99)
+                    .register(meterRegistry));
+        }
+        this.confirmFailures = Counter.builder("chatflow.lane.durable.confirm.failures")
+                .description("Durable persistence records the broker nacked or didn't confirm in time")
+                .register(meterRegistry);
+        this.publishFailures = Counter.builder("chatflow.lane.standard.publish.failures")
+                .description("Standard persistence records that couldn't be published; the client got FAILED")
+                .register(meterRegistry);
+        System.out.println("🚦 Delivery lanes: " + lanes);
+    }
+
+    public Lane laneFor(MessageType type) {
+        return lanes.get(type);
+    }
+
+    public void record(Lane lane, long startNanos) {
+        messages.get(lane).increment();
+        latency.get(lane).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void confirmFailed() {
+        confirmFailures.increment();
+    }
+
+    public void publishFailed() {
+        publishFailures.increment();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("routing", lanes);
+        for (Lane lane : Lane.values()) {
+            Timer timer = latency.get(lane);
+            Map<String, Object> laneStats = new LinkedHashMap<>();
+            laneStats.put("messages", (long) messages.get(lane).count());
+            laneStats.put("meanMs", timer.mean(TimeUnit.MILLISECONDS));
+            for (ValueAtPercentile percentile : timer.takeSnapshot().percentileValues()) {
+                laneStats.put("p" + Math.round(percentile.percentile() * 100) + "Ms", percentile.value(TimeUnit.MILLISECONDS));
+            }
+            laneStats.put("maxMs", timer.max(TimeUnit.MILLISECONDS));
+            stats.put(lane.name().toLowerCase(), laneStats);
+        }
+        stats.put("durableConfirmFailures", (long) confirmFailures.count());
+        stats.put("standardPublishFailures", (long) publishFailures.count());
+        return stats;
+    }
+}
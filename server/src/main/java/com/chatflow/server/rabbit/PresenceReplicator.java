@@ -0,0 +1,159 @@
+package com.chatflow.server.rabbit;
+
+import com.chatflow.server.presence.PresenceService;
+import com.chatflow.server.presence.PresenceUpdate;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.*;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves presence between nodes over a fanout exchange. Every node has its own
+ * transient queue on it. Deltas are flushed every presence.flush.ms, so a
+ * JOIN/LEAVE storm costs one message per window instead of one per event.
+ * Periodic snapshots double as heartbeats; a node that stops sending them is
+ * dropped after presence.node-ttl.ms.
+ *
+ * All publishing happens on one thread over one channel, so a node's updates
+ * arrive in the order they were sent.
+ */
+@Component
+@DependsOn("rabbitMQInitializer")
+public class PresenceReplicator {
+
+    public static final String PRESENCE_EXCHANGE = "chat.presence";
+
+    private final ChannelPool producerPool;
+    private final ChannelPool consumerPool;
+    private final PresenceService presence;
+    private final RabbitMQSender sender;
+    private final ObjectMapper objectMapper;
+    private final Counter published;
+    private final Counter received;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private Channel publishChannel;
+
+    @Value("${presence.flush.ms:100}")
+    private long flushMs;
+
+    @Value("${presence.snapshot.interval.ms:15000}")
+    private long snapshotIntervalMs;
+
+    @Value("${presence.node-ttl.ms:45000}")
+    private long nodeTtlMs;
+
+    public PresenceReplicator(@Qualifier("producerPool") ChannelPool producerPool,
+                              @Qualifier("consumerPool") ChannelPool consumerPool,
+                              PresenceService presence, RabbitMQSender sender,
+                              ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.producerPool = producerPool;
+        this.consumerPool = consumerPool;
+        this.presence = presence;
+        this.sender = sender;
+        this.objectMapper = objectMapper;
+        this.published = Counter.builder("chatflow.presence.updates.published")
+                .description("Presence updates (deltas, snapshots) sent to other nodes")
+                .register(meterRegistry);
+        this.received = Counter.builder("chatflow.presence.updates.received")
+                .description("Presence updates received from other nodes")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() throws Exception {
+        if (!presence.isEnabled()) {
+            return;
+        }
+        publishChannel = producerPool.borrowChannel();
+        publishChannel.exchangeDeclare(PRESENCE_EXCHANGE, BuiltinExchangeType.FANOUT, true);
+
+        String queueName = "chat.presence." + presence.getNodeId();
+        Channel channel = consumerPool.borrowChannel();
+        channel.queueDeclare(queueName, false, true, true, null);
+        channel.queueBind(queueName, PRESENCE_EXCHANGE, "");
+        channel.basicConsume(queueName, true, new DefaultConsumer(channel) {
+            @Override
+            public void handleDelivery(String consumerTag, Envelope envelope,
+                                       AMQP.BasicProperties properties, byte[] body) {
+                try {
+                    PresenceUpdate update = objectMapper.readValue(body, PresenceUpdate.class);
+                    if (presence.getNodeId().equals(update.getNode())) {
+                        return;
+                    }
+                    received.increment();
+                    if (update.getKind() == PresenceUpdate.Kind.SYNC) {
+                        scheduler.execute(() -> publish(presence.snapshot()));
+                    } else {
+                        presence.apply(update);
+                    }
+                } catch (Exception e) {
+                    System.err.println("Error applying presence update: " + e.getMessage());
+                }
+            }
+        });
+
+        // Ask the others for their state, and announce ours
+        scheduler.execute(() -> {
+            publish(new PresenceUpdate(presence.getNodeId(), PresenceUpdate.Kind.SYNC, null, null));
+            publish(presence.snapshot());
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, flushMs, flushMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(() -> {
+            publish(presence.snapshot());
+            presence.expireNodes(nodeTtlMs);
+        }, snapshotIntervalMs, snapshotIntervalMs, TimeUnit.MILLISECONDS);
+
+        System.out.println("👥 Presence replication on " + PRESENCE_EXCHANGE + " (flush " + flushMs
+                + "ms, snapshot " + snapshotIntervalMs + "ms)");
+    }
+
+    private void flush() {
+        try {
+            PresenceUpdate delta = presence.drainDelta();
+            if (delta != null) {
+                publish(delta);
+            }
+            for (byte[] record : presence.drainRecords()) {
+                sender.sendPersistence(record);
+            }
+        } catch (Exception e) {
+            System.err.println("Presence flush failed: " + e.getMessage());
+        }
+    }
+
+    private void publish(PresenceUpdate update) {
+        try {
+            publishChannel.basicPublish(PRESENCE_EXCHANGE, "", null, objectMapper.writeValueAsBytes(update));
+            published.increment();
+        } catch (Exception e) {
+            // The next snapshot brings the other nodes back in line
+            System.err.println("Failed to publish presence " + update.getKind() + ": " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (publishChannel == null) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        publish(new PresenceUpdate(presence.getNodeId(), PresenceUpdate.Kind.BYE, null, null));
+        producerPool.returnChannel(publishChannel);
+    }
+}
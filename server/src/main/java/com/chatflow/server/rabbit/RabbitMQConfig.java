@@ -28,6 +28,9 @@ public class RabbitMQConfig {
     @Value("${rabbitmq.consumer.pool.size:150}")
     private int consumerPoolSize;
 
+    @Value("${rabbitmq.confirm.pool.size:10}")
+    private int confirmPoolSize;
+
     @Bean
     @Qualifier("producerPool")
     public ChannelPool producerChannelPool() throws IOException, TimeoutException {
@@ -39,4 +42,14 @@ public class RabbitMQConfig {
     public ChannelPool consumerChannelPool() throws IOException, TimeoutException {
         return new ChannelPool(consumerPoolSize,host,port,username,password);
     }
-}
\ No newline at end of file
+
+    /**
+     * Channels in confirm mode for the durable lane; kept apart so the
+     * fire-and-forget producers never wait on confirms.
+     */
+    @Bean
+    @Qualifier("confirmPool")
+    public ChannelPool confirmChannelPool() throws IOException, TimeoutException {
+        return new ChannelPool(confirmPoolSize, host, port, username, password, true);
+    }
+}
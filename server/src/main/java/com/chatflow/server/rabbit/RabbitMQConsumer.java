@@ -1,16 +1,20 @@
 package com.chatflow.server.rabbit;
 
 import com.chatflow.server.database.DatabaseWriterService;
-import com.chatflow.server.handler.SessionManager;
+import com.chatflow.server.database.PersistentMessage;
+import com.chatflow.server.database.PersistentMessageCodec;
+import com.chatflow.server.handler.RoomBroadcaster;
 import com.rabbitmq.client.*;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Component;
-import org.springframework.web.socket.*;
 
 import java.io.IOException;
-import java.net.InetAddress;
-import java.nio.charset.StandardCharsets;
+import java.lang.management.ManagementFactory;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -18,34 +22,74 @@ import java.util.concurrent.atomic.AtomicInteger;
 @DependsOn("rabbitMQInitializer")
 public class RabbitMQConsumer {
 
-    private static final String EXCHANGE_PREFIX = "chat.exchange.";
     private static final int ROOM_COUNT = 20;
     private static final int CONSUMERS_PER_ROOM = 1;
 
     private final ChannelPool channelPool;
-    private final ExecutorService consumerExecutor = Executors.newFixedThreadPool(ROOM_COUNT * CONSUMERS_PER_ROOM);
+    private final ExecutorService consumerExecutor;
     private final AtomicInteger processed = new AtomicInteger(0);
-    private final SessionManager sessionManager;
+    private final RoomBroadcaster broadcaster;
     private final DatabaseWriterService databaseWriter; // NEW
+    private final RoomSubscriptionManager subscriptions;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentHashMap<String, Counter> broadcastConsumed = new ConcurrentHashMap<>();
+    private final Counter persistenceConsumed;
+    private final int persistenceConsumers;
+    private final DistributionSummary broadcastAllocation;
+    private final com.sun.management.ThreadMXBean threadMXBean;
+    private final int allocationSampleEvery;
+    private final boolean ackAfterCommit;
+    private final int persistencePrefetch;
+    private final int durableConsumers;
 
     public RabbitMQConsumer(@Qualifier("consumerPool") ChannelPool channelPool,
-                            SessionManager sessionManager,
-                            DatabaseWriterService databaseWriter) throws Exception { // NEW
+                            RoomBroadcaster broadcaster,
+                            DatabaseWriterService databaseWriter,
+                            RoomSubscriptionManager subscriptions,
+                            MeterRegistry meterRegistry,
+                            @Value("${rabbitmq.persistence.consumers:4}") int persistenceConsumers,
+                            @Value("${rabbitmq.broadcast.allocation-sample-every:0}") int allocationSampleEvery,
+                            @Value("${rabbitmq.persistence.ack-mode:immediate}") String ackMode,
+                            @Value("${rabbitmq.persistence.prefetch:0}") int persistencePrefetch,
+                            @Value("${rabbitmq.persistence.durable.consumers:1}") int durableConsumers) throws Exception { // NEW
         this.channelPool = channelPool;
-        this.sessionManager = sessionManager;
+        this.broadcaster = broadcaster;
         this.databaseWriter = databaseWriter; // NEW
+        this.subscriptions = subscriptions;
+        this.meterRegistry = meterRegistry;
+        this.persistenceConsumers = persistenceConsumers;
+        this.persistenceConsumed = Counter.builder("chatflow.consumer.persistence.consumed")
+                .description("Messages consumed from the shared persistence queue by this node")
+                .register(meterRegistry);
+        this.allocationSampleEvery = allocationSampleEvery;
+        this.ackAfterCommit = "after-commit".equalsIgnoreCase(ackMode);
+        this.persistencePrefetch = persistencePrefetch;
+        this.durableConsumers = durableConsumers;
+        this.threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        this.broadcastAllocation = DistributionSummary.builder("chatflow.consumer.broadcast.allocated")
+                .description("Bytes allocated by the consumer thread per sampled broadcast delivery")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.consumerExecutor = Executors.newFixedThreadPool(ROOM_COUNT * CONSUMERS_PER_ROOM + persistenceConsumers
+                + durableConsumers);
         startConsumers();
+        startPersistenceConsumers(RabbitMQInitializer.PERSISTENCE_QUEUE, persistenceConsumers, ackAfterCommit);
+        // The durable lane is acked after commit whatever the ack mode of the standard queue
+        startPersistenceConsumers(RabbitMQInitializer.DURABLE_PERSISTENCE_QUEUE, durableConsumers, true);
     }
 
     private void startConsumers() throws Exception {
-        String serverId = InetAddress.getLocalHost().getHostName();
         int totalConsumers = ROOM_COUNT * CONSUMERS_PER_ROOM;
         System.out.println("Starting " + totalConsumers + " consumers (" + CONSUMERS_PER_ROOM + " per room)");
 
         for (int i = 1; i <= ROOM_COUNT; i++) {
             final String roomId = "room" + i;
-            final String exchangeName = EXCHANGE_PREFIX + roomId;
-            final String queueName = "queue_" + serverId + "_" + roomId;
+            final String queueName = subscriptions.queueName(roomId);
+            final Counter consumed = broadcastConsumed.computeIfAbsent(roomId, id ->
+                    Counter.builder("chatflow.consumer.broadcast.consumed")
+                            .description("Room messages consumed by this node for local broadcast")
+                            .tag("room", id)
+                            .register(meterRegistry));
 
             for (int j = 0; j < CONSUMERS_PER_ROOM; j++) {
                 final int consumerIndex = j;
@@ -54,40 +98,31 @@ public class RabbitMQConsumer {
                     try {
                         Channel channel = channelPool.borrowChannel();
 
-                        channel.exchangeDeclare(exchangeName, BuiltinExchangeType.FANOUT, true);
-                        channel.queueDeclare(queueName, true, false, false, null);
-                        channel.queueBind(queueName, exchangeName, "");
-
                         if (consumerIndex == 0) {
                             System.out.println(CONSUMERS_PER_ROOM + " consumers for " + roomId);
                         }
 
+                        // Queue is declared by RoomSubscriptionManager; it only receives
+                        // traffic while bound, i.e. while this node has sessions in the room
                         channel.basicConsume(queueName, false, new DefaultConsumer(channel) {
                             @Override
                             public void handleDelivery(String consumerTag, Envelope envelope,
                                                        AMQP.BasicProperties properties, byte[] body) throws IOException {
                                 try {
-                                    String message = new String(body, StandardCharsets.UTF_8);
+                                    boolean sample = allocationSampleEvery > 0
+                                            && (long) consumed.count() % allocationSampleEvery == 0;
+                                    long allocatedBefore = sample ? threadMXBean.getCurrentThreadAllocatedBytes() : 0;
 
-                                    // 1. Broadcast to WebSocket (real-time - keep this fast!)
-                                    broadcast(roomId, message);
+                                    // Broadcast to WebSocket (real-time - keep this fast!)
+                                    broadcaster.broadcast(roomId, properties.getMessageId(), body);
+                                    consumed.increment();
 
-                                    // 2. Enqueue for database writing (asynchronous - doesn't block)
-                                    boolean enqueued = databaseWriter.enqueue(message);
-                                    if (!enqueued) {
-                                        System.err.println("⚠️ DB write buffer full! Message may be lost.");
-                                        // TODO: Send to dead letter queue
+                                    if (sample) {
+                                        broadcastAllocation.record(threadMXBean.getCurrentThreadAllocatedBytes() - allocatedBefore);
                                     }
 
-                                    // 3. Acknowledge to RabbitMQ
                                     getChannel().basicAck(envelope.getDeliveryTag(), false);
 
-                                    int count = processed.incrementAndGet();
-                                    if (count % 100000 == 0) {
-                                        System.out.println("Processed: " + count +
-                                                ", DB buffer: " + databaseWriter.getBufferSize());
-                                    }
-
                                 } catch (Exception e) {
                                     System.err.println("Error processing message: " + e.getMessage());
                                     try {
@@ -107,14 +142,81 @@ public class RabbitMQConsumer {
         System.out.println("All consumers started");
     }
 
-    private void broadcast(String roomId, String message) throws IOException {
-        WebSocketSession session = sessionManager.getSession(roomId);
-        if (session != null) {
-            synchronized (session) {
-                if (session.isOpen()) {
-                    session.sendMessage(new TextMessage(message));
+    /**
+     * Persistence has its own path: a queue shared by all nodes and fed by ingress,
+     * so every message is written once regardless of where subscribers are.
+     */
+    private void startPersistenceConsumers(String queue, int consumers, boolean ackAfterCommit) {
+        if (consumers <= 0) {
+            return;
+        }
+        // After-commit keeps deliveries unacked while they sit in writer batches, so
+        // prefetch has to cover the writers' in-flight capacity or the pipeline starves
+        int prefetch = persistencePrefetch > 0
+                ? persistencePrefetch
+                : ackAfterCommit ? Math.min(65535, Math.max(1, databaseWriter.getPipelineCapacity() / consumers)) : 0;
+        System.out.println("Starting " + consumers + " persistence consumers on " + queue + " (ack "
+                + (ackAfterCommit ? "after commit" : "on enqueue") + ", prefetch " + (prefetch > 0 ? prefetch : "unlimited") + ")");
+
+        for (int i = 0; i < consumers; i++) {
+            consumerExecutor.submit(() -> {
+                try {
+                    Channel channel = channelPool.borrowChannel();
+                    if (prefetch > 0) {
+                        channel.basicQos(prefetch);
+                    }
+                    ChannelAckTracker ackTracker = ackAfterCommit ? new ChannelAckTracker(channel) : null;
+
+                    channel.basicConsume(queue, false, new DefaultConsumer(channel) {
+                        @Override
+                        public void handleDelivery(String consumerTag, Envelope envelope,
+                                                   AMQP.BasicProperties properties, byte[] body) throws IOException {
+                            try {
+                                PersistentMessage message = PersistentMessageCodec.decode(body);
+
+                                long deliveryTag = envelope.getDeliveryTag();
+
+                                if (ackTracker != null) {
+                                    // Durable mode: the writer acks once the batch holding this commits
+                                    ackTracker.delivered(deliveryTag);
+                                    if (!databaseWriter.enqueue(message, ackTracker, deliveryTag)) {
+                                        ackTracker.failed(deliveryTag);
+                                    }
+                                } else {
+                                    // Enqueue for database writing (asynchronous - doesn't block)
+                                    boolean enqueued = databaseWriter.enqueue(message);
+                                    if (!enqueued) {
+                                        System.err.println("⚠️ DB write buffer full! Message may be lost.");
+                                        // TODO: Send to dead letter queue
+                                    }
+                                    getChannel().basicAck(deliveryTag, false);
+                                }
+                                persistenceConsumed.increment();
+
+                                int count = processed.incrementAndGet();
+                                if (count % 100000 == 0) {
+                                    System.out.println("Processed: " + count +
+                                            ", DB buffer: " + databaseWriter.getBufferSize());
+                                }
+
+                            } catch (Exception e) {
+                                System.err.println("Error persisting message: " + e.getMessage());
+                                if (ackTracker != null) {
+                                    // Through the tracker, or the tag would stall every later multi-ack
+                                    ackTracker.rejected(envelope.getDeliveryTag());
+                                    return;
+                                }
+                                try {
+                                    getChannel().basicNack(envelope.getDeliveryTag(), false, false);
+                                } catch (IOException ioException) {}
+                            }
+                        }
+                    });
+
+                } catch (Exception e) {
+                    System.err.println("Failed persistence consumer: " + e.getMessage());
                 }
-            }
+            });
         }
     }
-}
\ No newline at end of file
+}
@@ -10,6 +10,10 @@ public class RabbitMQInitializer {
 
     private static final String EXCHANGE_PREFIX = "chat.exchange.";
     private static final int ROOM_COUNT = 20;
+    public static final String PERSISTENCE_EXCHANGE = "chat.persistence";
+    public static final String PERSISTENCE_QUEUE = "chat.persistence.queue";
+    public static final String DURABLE_PERSISTENCE_EXCHANGE = "chat.persistence.durable";
+    public static final String DURABLE_PERSISTENCE_QUEUE = "chat.persistence.durable.queue";
     private ChannelPool channelPool;
     public RabbitMQInitializer(@Qualifier("producerPool") ChannelPool channelPool) {
         this.channelPool = channelPool;
@@ -20,8 +24,22 @@ public class RabbitMQInitializer {
                 channel.exchangeDeclare(exchangeName, BuiltinExchangeType.FANOUT, true);
             }
 
+            // Shared persistence queue, consumed competitively by all nodes. Ingress publishes
+            // fixed-layout records to its own exchange so the writer never re-parses JSON.
+            channel.exchangeDeclare(PERSISTENCE_EXCHANGE, BuiltinExchangeType.FANOUT, true);
+            channel.queueDeclare(PERSISTENCE_QUEUE, true, false, false, null);
+            channel.queueBind(PERSISTENCE_QUEUE, PERSISTENCE_EXCHANGE, "");
+            // Durable lane: persistent records, always acked after commit
+            channel.exchangeDeclare(DURABLE_PERSISTENCE_EXCHANGE, BuiltinExchangeType.FANOUT, true);
+            channel.queueDeclare(DURABLE_PERSISTENCE_QUEUE, true, false, false, null);
+            channel.queueBind(DURABLE_PERSISTENCE_QUEUE, DURABLE_PERSISTENCE_EXCHANGE, "");
+            for (int i = 1; i <= ROOM_COUNT; i++) {
+                // Older nodes bound the queue to the room exchanges (JSON bodies)
+                channel.queueUnbind(PERSISTENCE_QUEUE, EXCHANGE_PREFIX + "room" + i, "");
+            }
+
             channelPool.returnChannel(channel);
-            System.out.println("RabbitMQ initialized: 20 exchanges created");
+            System.out.println("RabbitMQ initialized: 20 exchanges created, persistence queue bound");
 
         } catch (Exception e) {
             throw new RuntimeException("Failed to initialize RabbitMQ", e);
@@ -2,10 +2,13 @@ package com.chatflow.server.rabbit;
 
 import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.MessageProperties;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
@@ -14,13 +17,39 @@ public class RabbitMQSender {
 
     private static final String EXCHANGE_PREFIX = "chat.exchange.";
     private final ChannelPool channelPool;
+    private final ChannelPool confirmPool;
     private final AtomicInteger sentCount = new AtomicInteger(0);
 
-    public RabbitMQSender(@Qualifier("producerPool") ChannelPool channelPool) {
+    // Ephemeral frames (typing) are worthless once stale; let the broker drop them
+    @Value("${qos.ephemeral.ttl.ms:5000}")
+    private long ephemeralTtlMs;
+
+    @Value("${qos.durable.confirm-timeout.ms:5000}")
+    private long confirmTimeoutMs;
+
+    public RabbitMQSender(@Qualifier("producerPool") ChannelPool channelPool,
+                          @Qualifier("confirmPool") ChannelPool confirmPool) {
         this.channelPool = channelPool;
+        this.confirmPool = confirmPool;
     }
 
     public void sendMessage(String roomId, String message) {
+        sendMessage(roomId, message, null);
+    }
+
+    /**
+     * cursor travels as the AMQP message-id so consumers can index the frame
+     * (recent history) without parsing the JSON.
+     */
+    public void sendMessage(String roomId, String message, String cursor) {
+        sendMessage(roomId, message, cursor, false);
+    }
+
+    /**
+     * ephemeral: transient with a TTL and no cursor, so the frame is neither
+     * kept by the broker nor recorded for replay.
+     */
+    public void sendMessage(String roomId, String message, String cursor, boolean ephemeral) {
         Channel channel = null;
         try {
             channel = channelPool.borrowChannel();
@@ -46,7 +75,12 @@ public class RabbitMQSender {
                         ", Channel: " + channel.getChannelNumber() +
                         ", Message length: " + message.length());
             }
-            channel.basicPublish(exchangeName, "", null, message.getBytes());
+            AMQP.BasicProperties props = ephemeral
+                    ? new AMQP.BasicProperties.Builder().deliveryMode(1).expiration(String.valueOf(ephemeralTtlMs)).build()
+                    : cursor != null
+                    ? new AMQP.BasicProperties.Builder().messageId(cursor).build()
+                    : null;
+            channel.basicPublish(exchangeName, "", props, message.getBytes());
 
             int count = sentCount.incrementAndGet();
             if (count % 100000 == 0) {
@@ -60,4 +94,54 @@ public class RabbitMQSender {
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Publish an encoded PersistentMessage to the shared persistence exchange,
+     * persistent so it survives a broker restart. Returns false if the publish
+     * failed; unlike the durable lane it doesn't wait for a confirm.
+     */
+    public boolean sendPersistence(byte[] record) {
+        Channel channel = null;
+        try {
+            channel = channelPool.borrowChannel();
+            channel.basicPublish(RabbitMQInitializer.PERSISTENCE_EXCHANGE, "", MessageProperties.PERSISTENT_BASIC, record);
+            return true;
+        } catch (Exception e) {
+            System.err.println("Failed to publish persistence record: " + e.getMessage());
+            return false;
+        } finally {
+            if (channel != null) {
+                channelPool.returnChannel(channel);
+            }
+        }
+    }
+
+    /**
+     * Durable lane: publish a persistent record on a confirm channel and wait
+     * for the broker. Returns false if it was nacked or not confirmed in time.
+     */
+    public boolean sendDurablePersistence(byte[] record) {
+        Channel channel;
+        try {
+            channel = confirmPool.borrowChannel();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        try {
+            channel.basicPublish(RabbitMQInitializer.DURABLE_PERSISTENCE_EXCHANGE, "",
+                    MessageProperties.PERSISTENT_BASIC, record);
+            boolean confirmed = channel.waitForConfirms(confirmTimeoutMs);
+            confirmPool.returnChannel(channel);
+            return confirmed;
+        } catch (TimeoutException e) {
+            System.err.println("Durable record not confirmed within " + confirmTimeoutMs + "ms");
+        } catch (Exception e) {
+            System.err.println("Failed to publish durable record: " + e.getMessage());
+        }
+        // waitForConfirms covers every outstanding publish on the channel; a
+        // late confirm or nack for this record must not count for the next borrower
+        confirmPool.discardChannel(channel);
+        return false;
+    }
+}
@@ -0,0 +1,150 @@
+package com.chatflow.server.rabbit;
+
+import com.chatflow.server.handler.RecentHistory;
+import com.chatflow.server.handler.SessionManager;
+import com.rabbitmq.client.Channel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * Binds this node's room queues to the room exchanges only while the node
+ * holds at least one local session for the room. Unbinding is delayed by a
+ * grace period so reconnect churn doesn't flap the binding.
+ */
+@Component
+@DependsOn("rabbitMQInitializer")
+public class RoomSubscriptionManager {
+
+    private static final String EXCHANGE_PREFIX = "chat.exchange.";
+    private static final int ROOM_COUNT = 20;
+
+    private final ChannelPool channelPool;
+    private final SessionManager sessionManager;
+    private final RecentHistory recentHistory;
+    private final String serverId;
+    private final Set<String> boundRooms = ConcurrentHashMap.newKeySet();
+    private final Map<String, ScheduledFuture<?>> pendingUnbinds = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @Value("${rabbitmq.subscription.dynamic:true}")
+    private boolean dynamic;
+
+    @Value("${rabbitmq.subscription.unbind-grace.ms:30000}")
+    private long unbindGraceMs;
+
+    public RoomSubscriptionManager(@Qualifier("consumerPool") ChannelPool channelPool,
+                                   SessionManager sessionManager,
+                                   RecentHistory recentHistory) throws UnknownHostException {
+        this.channelPool = channelPool;
+        this.sessionManager = sessionManager;
+        this.recentHistory = recentHistory;
+        this.serverId = InetAddress.getLocalHost().getHostName();
+    }
+
+    @PostConstruct
+    public void init() throws Exception {
+        Channel channel = channelPool.borrowChannel();
+        try {
+            for (int i = 1; i <= ROOM_COUNT; i++) {
+                String roomId = "room" + i;
+                channel.queueDeclare(queueName(roomId), true, false, false, null);
+                if (!dynamic) {
+                    channel.queueBind(queueName(roomId), EXCHANGE_PREFIX + roomId, "");
+                    boundRooms.add(roomId);
+                } else {
+                    // Drop bindings left over from a previous run; sessions will re-bind on demand
+                    channel.queueUnbind(queueName(roomId), EXCHANGE_PREFIX + roomId, "");
+                }
+            }
+        } finally {
+            channelPool.returnChannel(channel);
+        }
+        System.out.println("Room subscriptions: " + (dynamic
+                ? "dynamic (unbind grace " + unbindGraceMs + "ms)"
+                : "static, all " + ROOM_COUNT + " rooms bound"));
+    }
+
+    public String queueName(String roomId) {
+        return "queue_" + serverId + "_" + roomId;
+    }
+
+    /**
+     * Called when the first local session for a room connects.
+     */
+    public synchronized void subscribe(String roomId) {
+        ScheduledFuture<?> pending = pendingUnbinds.remove(roomId);
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        if (!dynamic || boundRooms.contains(roomId)) {
+            return;
+        }
+        // Whatever the ring held predates the unbound period, so it can't be replayed gap-free
+        recentHistory.reset(roomId);
+        try {
+            Channel channel = channelPool.borrowChannel();
+            try {
+                channel.queueBind(queueName(roomId), EXCHANGE_PREFIX + roomId, "");
+            } finally {
+                channelPool.returnChannel(channel);
+            }
+            boundRooms.add(roomId);
+            System.out.println("🔗 Bound " + roomId + " (local subscribers present)");
+        } catch (Exception e) {
+            System.err.println("Failed to bind " + roomId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Called when the last local session for a room leaves. The binding is
+     * removed after the grace period unless a session comes back first.
+     */
+    public synchronized void unsubscribeLater(String roomId) {
+        if (!dynamic || pendingUnbinds.containsKey(roomId)) {
+            return;
+        }
+        pendingUnbinds.put(roomId, scheduler.schedule(() -> unbind(roomId), unbindGraceMs, TimeUnit.MILLISECONDS));
+    }
+
+    private synchronized void unbind(String roomId) {
+        pendingUnbinds.remove(roomId);
+        if (sessionManager.hasSessions(roomId) || !boundRooms.contains(roomId)) {
+            return;
+        }
+        try {
+            Channel channel = channelPool.borrowChannel();
+            try {
+                channel.queueUnbind(queueName(roomId), EXCHANGE_PREFIX + roomId, "");
+            } finally {
+                channelPool.returnChannel(channel);
+            }
+            boundRooms.remove(roomId);
+            System.out.println("✂️ Unbound " + roomId + " (no local subscribers)");
+        } catch (Exception e) {
+            System.err.println("Failed to unbind " + roomId + ": " + e.getMessage());
+        }
+    }
+
+    public boolean isBound(String roomId) {
+        return boundRooms.contains(roomId);
+    }
+
+    public Set<String> getBoundRooms() {
+        return Set.copyOf(boundRooms);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,72 @@
+package com.chatflow.server.analytics;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperLogLogTest {
+
+    private static final int TRIALS = 20;
+
+    private static double standardError(int p) {
+        return 1.04 / Math.sqrt(1 << p);
+    }
+
+    /**
+     * slack scales the RMSE bound. Just above the switch from linear counting
+     * (2.5m) the raw estimator is biased, as there is no empirical bias
+     * correction, so that range only gets a looser bound.
+     */
+    @ParameterizedTest
+    @CsvSource({"11, 100, 1.5", "11, 1000, 1.5", "11, 5000, 2", "11, 100000, 1.5", "14, 1000, 1.5", "14, 200000, 1.5"})
+    void estimateStaysWithinTheStandardErrorBound(int p, int cardinality, double slack) {
+        Random random = new Random(p * 31L + cardinality);
+        double sumSquares = 0;
+        for (int trial = 0; trial < TRIALS; trial++) {
+            HyperLogLog sketch = new HyperLogLog(p);
+            long base = random.nextLong();
+            for (int i = 0; i < cardinality; i++) {
+                sketch.addLong(base + i);
+                // Repeats must not move the estimate
+                if (i % 3 == 0) {
+                    sketch.addLong(base + i);
+                }
+            }
+            double relative = (sketch.estimate() - cardinality) / (double) cardinality;
+            assertTrue(Math.abs(relative) < 4 * standardError(p),
+                    () -> "p=" + p + " n=" + cardinality + " off by " + relative);
+            sumSquares += relative * relative;
+        }
+        // Root mean square error across trials close to the theoretical 1.04 / sqrt(m)
+        double rmse = Math.sqrt(sumSquares / TRIALS);
+        assertTrue(rmse < slack * standardError(p), "rmse " + rmse);
+    }
+
+    @Test
+    void mergeIsTheUnion() {
+        HyperLogLog a = new HyperLogLog(12);
+        HyperLogLog b = new HyperLogLog(12);
+        HyperLogLog both = new HyperLogLog(12);
+        for (long i = 0; i < 30_000; i++) {
+            a.addLong(i);
+            both.addLong(i);
+        }
+        for (long i = 20_000; i < 50_000; i++) {
+            b.addLong(i);
+            both.addLong(i);
+        }
+        a.merge(b);
+        assertEquals(both.estimate(), a.estimate());
+        assertTrue(Math.abs(a.estimate() - 50_000) < 50_000 * 4 * standardError(12));
+
+        a.clear();
+        assertEquals(0, a.estimate());
+        assertThrows(IllegalArgumentException.class, () -> a.merge(new HyperLogLog(11)));
+    }
+}
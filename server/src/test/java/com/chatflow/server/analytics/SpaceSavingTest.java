@@ -0,0 +1,97 @@
+package com.chatflow.server.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpaceSavingTest {
+
+    @Test
+    void countsExactlyWhileThereIsRoom() {
+        SpaceSaving<String> sketch = new SpaceSaving<>(3);
+        for (String item : new String[]{"a", "b", "a", "c", "a", "b"}) {
+            sketch.offer(item);
+        }
+        List<SpaceSaving.Counter<String>> top = sketch.top(10);
+        assertEquals(3, top.size());
+        assertEquals("a", top.get(0).getItem());
+        assertEquals(3, top.get(0).getCount());
+        assertEquals("b", top.get(1).getItem());
+        assertEquals(2, top.get(1).getCount());
+        assertEquals(1, top.get(2).getCount());
+        for (SpaceSaving.Counter<String> counter : top) {
+            assertEquals(0, counter.getError());
+        }
+        assertEquals(1, sketch.top(1).size());
+        assertEquals(6, sketch.getTotal());
+    }
+
+    @Test
+    void newItemTakesOverTheSmallestCounter() {
+        SpaceSaving<String> sketch = new SpaceSaving<>(2);
+        sketch.offer("a");
+        sketch.offer("a");
+        sketch.offer("b");
+        sketch.offer("c");
+
+        Map<String, SpaceSaving.Counter<String>> top = new HashMap<>();
+        sketch.top(2).forEach(counter -> top.put(counter.getItem(), counter));
+        assertEquals(2, top.size());
+        assertEquals(2, top.get("a").getCount());
+        assertEquals(0, top.get("a").getError());
+        // c replaced b (count 1): count 2, of which up to 1 may be b's
+        assertEquals(2, top.get("c").getCount());
+        assertEquals(1, top.get("c").getError());
+    }
+
+    @Test
+    void heavyHittersAreAlwaysTrackedWithinTheirErrorBound() {
+        int capacity = 50;
+        Random random = new Random(7);
+        SpaceSaving<Integer> sketch = new SpaceSaving<>(capacity);
+        Map<Integer, Long> truth = new HashMap<>();
+        int total = 200_000;
+        for (int i = 0; i < total; i++) {
+            // Skewed: a few heavy users over a long tail of light ones
+            int item = random.nextInt(4) == 0 ? random.nextInt(20) : random.nextInt(20_000);
+            sketch.offer(item);
+            truth.merge(item, 1L, Long::sum);
+        }
+
+        assertEquals(total, sketch.getTotal());
+        List<SpaceSaving.Counter<Integer>> top = sketch.top(capacity);
+        assertEquals(capacity, top.size());
+        long countSum = 0;
+        Map<Integer, SpaceSaving.Counter<Integer>> tracked = new HashMap<>();
+        for (int i = 0; i < top.size(); i++) {
+            SpaceSaving.Counter<Integer> counter = top.get(i);
+            if (i > 0) {
+                assertTrue(top.get(i - 1).getCount() >= counter.getCount(), "not sorted");
+            }
+            long actual = truth.getOrDefault(counter.getItem(), 0L);
+            // count overestimates by at most error, and error never exceeds total / capacity
+            assertTrue(counter.getCount() >= actual, "undercount for " + counter.getItem());
+            assertTrue(counter.getCount() - counter.getError() <= actual, "error bound for " + counter.getItem());
+            assertTrue(counter.getError() <= total / capacity);
+            countSum += counter.getCount();
+            tracked.put(counter.getItem(), counter);
+        }
+        // Every offer lands in exactly one counter
+        assertEquals(total, countSum);
+        truth.forEach((item, count) -> {
+            if (count > total / capacity) {
+                assertTrue(tracked.containsKey(item), "heavy hitter " + item + " (" + count + ") not tracked");
+            }
+        });
+
+        sketch.clear();
+        assertEquals(0, sketch.getTotal());
+        assertTrue(sketch.top(10).isEmpty());
+    }
+}
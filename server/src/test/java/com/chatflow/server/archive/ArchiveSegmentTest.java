@@ -0,0 +1,159 @@
+package com.chatflow.server.archive;
+
+import com.chatflow.server.archive.ArchiveSegmentWriter.BlockInfo;
+import com.chatflow.server.database.PersistentMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ArchiveSegmentTest {
+
+    @TempDir
+    Path dir;
+
+    static PersistentMessage message(String roomId, int id, Instant timestamp) {
+        UUID messageId = new UUID(1, id);
+        return new PersistentMessage(messageId, messageId, roomId, id % 3, "user" + (id % 3), "m" + id, "TEXT",
+                timestamp, "server-1", "10.0.0." + (id % 2));
+    }
+
+    static void assertSameMessage(PersistentMessage expected, PersistentMessage actual) {
+        assertEquals(expected.getMessageId(), actual.getMessageId());
+        assertEquals(expected.getClientMessageId() != null ? expected.getClientMessageId() : expected.getMessageId(),
+                actual.getClientMessageId());
+        assertEquals(expected.getRoomId(), actual.getRoomId());
+        assertEquals(expected.getUserId(), actual.getUserId());
+        assertEquals(expected.getUsername(), actual.getUsername());
+        assertEquals(expected.getMessage(), actual.getMessage());
+        assertEquals(expected.getMessageType(), actual.getMessageType());
+        assertEquals(expected.getTimestamp(), actual.getTimestamp());
+        assertEquals(expected.getServerId(), actual.getServerId());
+        assertEquals(expected.getClientIp(), actual.getClientIp());
+    }
+
+    private Path write(List<PersistentMessage> messages, int blockRows) throws IOException {
+        Path path = dir.resolve("segment.cfa");
+        try (ArchiveSegmentWriter writer = new ArchiveSegmentWriter(path, blockRows)) {
+            for (PersistentMessage message : messages) {
+                writer.add(message);
+            }
+            writer.finish();
+            assertEquals(messages.size(), writer.getRows());
+            assertEquals(Files.size(path), writer.getBytes());
+        }
+        return path;
+    }
+
+    private static List<PersistentMessage> readRoom(ArchiveSegmentReader reader, String roomId) throws IOException {
+        List<PersistentMessage> messages = new ArrayList<>();
+        for (BlockInfo block : reader.blocks(roomId)) {
+            messages.addAll(reader.readBlock(block));
+        }
+        return messages;
+    }
+
+    @Test
+    void roundTripsRoomsAcrossBlockBoundaries() throws IOException {
+        Instant base = Instant.parse("2025-03-01T12:00:00.123456Z");
+        List<PersistentMessage> room1 = new ArrayList<>();
+        List<PersistentMessage> room2 = new ArrayList<>();
+        List<PersistentMessage> room3 = new ArrayList<>();
+        // 7 rows: two full blocks and one; 3 rows: exactly one block; 1 row
+        for (int i = 0; i < 7; i++) {
+            room1.add(message("room1", i, base.plusMillis(i * 250L)));
+        }
+        for (int i = 0; i < 3; i++) {
+            room2.add(message("room2", 10 + i, base.plusSeconds(i)));
+        }
+        room3.add(message("room3", 20, base));
+        List<PersistentMessage> all = new ArrayList<>(room1);
+        all.addAll(room2);
+        all.addAll(room3);
+
+        try (ArchiveSegmentWriter writer = new ArchiveSegmentWriter(dir.resolve("rooms.cfa"), 3)) {
+            for (PersistentMessage message : all) {
+                writer.add(message);
+            }
+            writer.finish();
+            assertEquals(List.of("room1", "room2", "room3"), writer.getRooms());
+        }
+
+        try (ArchiveSegmentReader reader = new ArchiveSegmentReader(dir.resolve("rooms.cfa"))) {
+            List<BlockInfo> blocks = reader.blocks("room1");
+            assertEquals(List.of(3, 3, 1), blocks.stream().map(b -> b.rows).toList());
+            assertEquals(ArchiveSegmentWriter.toMicros(room1.get(3).getTimestamp()), blocks.get(1).minMicros);
+            assertEquals(ArchiveSegmentWriter.toMicros(room1.get(5).getTimestamp()), blocks.get(1).maxMicros);
+            assertEquals(1, reader.blocks("room2").size());
+            assertTrue(reader.blocks("room4").isEmpty());
+
+            for (List<PersistentMessage> room : List.of(room1, room2, room3)) {
+                List<PersistentMessage> read = readRoom(reader, room.get(0).getRoomId());
+                assertEquals(room.size(), read.size());
+                for (int i = 0; i < room.size(); i++) {
+                    assertSameMessage(room.get(i), read.get(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    void roundTripsNullsSeparatorsAndClientIds() throws IOException {
+        Instant base = Instant.parse("2025-03-01T12:00:00Z");
+        UUID clientId = UUID.randomUUID();
+        List<PersistentMessage> messages = List.of(
+                new PersistentMessage(new UUID(2, 1), null, "room1", 7, "a:b:c", "colons", "TEXT",
+                        base, null, null),
+                new PersistentMessage(new UUID(2, 2), clientId, "room1", 7, "a:b:c", null, "JOIN",
+                        base, "server-1", null),
+                new PersistentMessage(new UUID(2, 3), new UUID(2, 3), "room1", 8, "", "empty name", "TEXT",
+                        base.plusNanos(1_000), null, "127.0.0.1"),
+                new PersistentMessage(new UUID(2, 4), null, "room1", 9, "null", "é中😀", "TEXT",
+                        base.plusNanos(2_000), "null", "")
+        );
+
+        try (ArchiveSegmentReader reader = new ArchiveSegmentReader(write(messages, 100))) {
+            List<PersistentMessage> read = readRoom(reader, "room1");
+            assertEquals(messages.size(), read.size());
+            for (int i = 0; i < messages.size(); i++) {
+                assertSameMessage(messages.get(i), read.get(i));
+            }
+            assertEquals(clientId, read.get(1).getClientMessageId());
+        }
+    }
+
+    @Test
+    void roundTripsLargeTimestampGapsAndPreEpochTimes() throws IOException {
+        List<PersistentMessage> messages = List.of(
+                message("room1", 1, Instant.parse("1969-12-31T23:59:59.999999Z")),
+                message("room1", 2, Instant.EPOCH),
+                message("room1", 3, Instant.parse("2025-03-01T12:00:00.000001Z")),
+                message("room1", 4, Instant.parse("2025-03-01T12:00:00.000001Z")),
+                message("room1", 5, Instant.parse("2099-01-01T00:00:00Z"))
+        );
+
+        try (ArchiveSegmentReader reader = new ArchiveSegmentReader(write(messages, 2))) {
+            List<PersistentMessage> read = readRoom(reader, "room1");
+            for (int i = 0; i < messages.size(); i++) {
+                assertEquals(messages.get(i).getTimestamp(), read.get(i).getTimestamp());
+            }
+        }
+    }
+
+    @Test
+    void rejectsAFileWithoutTheFooterMagic() throws IOException {
+        Path path = dir.resolve("bogus.cfa");
+        Files.write(path, new byte[64]);
+        assertThrows(IOException.class, () -> new ArchiveSegmentReader(path));
+    }
+}
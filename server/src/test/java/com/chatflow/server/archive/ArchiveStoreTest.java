@@ -0,0 +1,176 @@
+package com.chatflow.server.archive;
+
+import com.chatflow.server.archive.ArchiveManifest.Segment;
+import com.chatflow.server.database.MessageCursor;
+import com.chatflow.server.database.PersistentMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ArchiveStoreTest {
+
+    private static final Instant BASE = Instant.parse("2025-03-01T00:00:00Z");
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private ArchiveStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        store = new ArchiveStore(objectMapper, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(store, "enabled", true);
+        ReflectionTestUtils.setField(store, "dirName", dir.toString());
+        store.load();
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+
+    private static PersistentMessage message(String roomId, int id, long seconds) {
+        return ArchiveSegmentTest.message(roomId, id, BASE.plusSeconds(seconds));
+    }
+
+    /**
+     * Archives the rows, ordered by room then time, as one segment of 3-row blocks.
+     */
+    private void archive(String file, List<PersistentMessage> messages) throws IOException {
+        Segment segment = new Segment();
+        segment.setFile(file);
+        try (ArchiveSegmentWriter writer = new ArchiveSegmentWriter(store.getDir().resolve(file), 3)) {
+            for (PersistentMessage message : messages) {
+                writer.add(message);
+            }
+            writer.finish();
+            segment.setRows(writer.getRows());
+            segment.setBytes(writer.getBytes());
+            segment.setRooms(writer.getRooms());
+        }
+        segment.setFrom(messages.stream().map(PersistentMessage::getTimestamp).min(Instant::compareTo).orElseThrow());
+        segment.setTo(messages.stream().map(PersistentMessage::getTimestamp).max(Instant::compareTo).orElseThrow()
+                .plusSeconds(1));
+        segment.setMinTimestamp(segment.getFrom());
+        segment.setMaxTimestamp(segment.getTo().minusSeconds(1));
+        store.addSegment(segment);
+    }
+
+    /**
+     * room1 rows 0..9 at second i in two segments (0..4, 5..9); room2 in the first only.
+     */
+    private void archiveTwoSegments() throws IOException {
+        List<PersistentMessage> first = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            first.add(message("room1", i, i));
+        }
+        first.add(message("room2", 100, 2));
+        List<PersistentMessage> second = new ArrayList<>();
+        for (int i = 5; i < 10; i++) {
+            second.add(message("room1", i, i));
+        }
+        archive("a.cfa", first);
+        archive("b.cfa", second);
+    }
+
+    private static List<Integer> ids(List<PersistentMessage> messages) {
+        return messages.stream().map(m -> (int) m.getMessageId().getLeastSignificantBits()).toList();
+    }
+
+    private static MessageCursor cursor(long seconds, int id) {
+        return new MessageCursor(BASE.plusSeconds(seconds), new UUID(1, id));
+    }
+
+    @Test
+    void readsBeforeACursorInsideABlockNewestFirst() throws IOException {
+        archiveTwoSegments();
+        List<PersistentMessage> read = new ArrayList<>();
+
+        // 7 is the middle row of the second segment's first block
+        assertEquals(4, store.forEachBefore("room1", cursor(7, 7), 4, read::add));
+        assertEquals(List.of(6, 5, 4, 3), ids(read));
+
+        read.clear();
+        assertEquals(10, store.forEachBefore("room1", null, 50, read::add));
+        assertEquals(List.of(9, 8, 7, 6, 5, 4, 3, 2, 1, 0), ids(read));
+    }
+
+    @Test
+    void readsAfterACursorInsideABlockOldestFirst() throws IOException {
+        archiveTwoSegments();
+        List<PersistentMessage> read = new ArrayList<>();
+
+        // 1 is inside the first segment's first block; the page crosses into the second segment
+        assertEquals(6, store.forEachAfter("room1", cursor(1, 1), 6, read::add));
+        assertEquals(List.of(2, 3, 4, 5, 6, 7), ids(read));
+
+        read.clear();
+        assertEquals(0, store.forEachAfter("room1", cursor(9, 9), 50, read::add));
+    }
+
+    @Test
+    void cursorOnASharedTimestampBreaksTiesOnMessageId() throws IOException {
+        List<PersistentMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            messages.add(message("room1", i, 3));
+        }
+        archive("a.cfa", messages);
+        List<PersistentMessage> read = new ArrayList<>();
+
+        store.forEachAfter("room1", cursor(3, 2), 50, read::add);
+        assertEquals(List.of(3, 4), ids(read));
+        read.clear();
+        store.forEachBefore("room1", cursor(3, 2), 50, read::add);
+        assertEquals(List.of(1, 0), ids(read));
+    }
+
+    @Test
+    void segmentRangesAnswerWhetherTheArchiveCanHoldAPage() throws IOException {
+        archiveTwoSegments();
+
+        assertTrue(store.hasBefore("room1", null));
+        assertFalse(store.hasBefore("room1", cursor(-1, 0)));
+        assertFalse(store.hasBefore("room3", null));
+        assertTrue(store.hasAfter("room1", cursor(9, 0)));
+        // Ranges are per segment, so they are upper bounds for room2, whose only row is at 2
+        assertTrue(store.hasAfter("room2", cursor(3, 0)));
+        assertFalse(store.hasAfter("room2", cursor(5, 0)));
+        assertEquals(BASE.plusSeconds(9), store.newest("room1"));
+        assertEquals(BASE.plusSeconds(4), store.newest("room2"));
+    }
+
+    @Test
+    void manifestSurvivesAReload() throws IOException {
+        archiveTwoSegments();
+        store.close();
+
+        ArchiveStore reloaded = new ArchiveStore(objectMapper, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(reloaded, "enabled", true);
+        ReflectionTestUtils.setField(reloaded, "dirName", dir.toString());
+        reloaded.load();
+        try {
+            assertEquals(2, reloaded.getSegments().size());
+            List<PersistentMessage> read = new ArrayList<>();
+            reloaded.forEachBefore("room2", null, 50, read::add);
+            assertEquals(List.of(100), ids(read));
+        } finally {
+            reloaded.close();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.chatflow.server.controller;
+
+import com.chatflow.server.database.MessageExportRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Random;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ExportControllerTest {
+
+    private static final String FROM = "2026-01-01T00:00:00Z";
+    private static final String TO = "2026-01-02T00:00:00Z";
+
+    private final MessageExportRepository exports = mock(MessageExportRepository.class);
+    private final ExportController controller = new ExportController(exports, new ObjectMapper(), 2);
+    private final ResultSet row = mock(ResultSet.class);
+    private final Random random = new Random(3);
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        // Random text so the gzipped body outgrows the output buffer and the response commits
+        when(row.getString(anyInt())).thenAnswer(call -> Long.toString(random.nextLong(), 36) + UUID.randomUUID());
+        when(row.getInt(anyInt())).thenReturn(7);
+        when(row.getTimestamp(8)).thenReturn(Timestamp.from(Instant.parse(FROM)));
+    }
+
+    /**
+     * Streams rows, then fails with failure if it isn't null.
+     */
+    private void rows(int count, SQLException failure) throws Exception {
+        doAnswer(call -> {
+            MessageExportRepository.RowHandler handler = call.getArgument(3);
+            for (int i = 0; i < count; i++) {
+                handler.row(row);
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return (long) count;
+        }).when(exports).export(isNull(), eq(Instant.parse(FROM)), eq(Instant.parse(TO)), any());
+    }
+
+    private MockHttpServletResponse export(boolean gzip) throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.export(FROM, TO, null, "ndjson", gzip, new MockHttpServletRequest(), response);
+        return response;
+    }
+
+    private static String gunzip(byte[] body) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void completeExportIsAFinishedGzipStream() throws Exception {
+        rows(3_000, null);
+        MockHttpServletResponse response = export(true);
+        assertEquals(200, response.getStatus());
+        assertEquals("gzip", response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(3_000, gunzip(response.getContentAsByteArray()).split("\n").length);
+    }
+
+    @Test
+    void failureMidStreamLeavesTheBodyUnfinished() throws Exception {
+        rows(3_000, new SQLException("connection reset"));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        IOException failure = assertThrows(IOException.class, () ->
+                controller.export(FROM, TO, null, "ndjson", true, new MockHttpServletRequest(), response));
+        assertTrue(failure.getCause() instanceof SQLException);
+        assertTrue(response.isCommitted());
+        // Rows were sent, but without the gzip trailer the client sees a truncated stream
+        assertTrue(response.getContentAsByteArray().length > 0);
+        assertThrows(EOFException.class, () -> gunzip(response.getContentAsByteArray()));
+    }
+
+    @Test
+    void failureBeforeAnythingWasSentIsAnError() throws Exception {
+        rows(10, new SQLException("statement timeout"));
+        MockHttpServletResponse response = export(true);
+        assertEquals(500, response.getStatus());
+        assertNull(response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+}
@@ -0,0 +1,84 @@
+package com.chatflow.server.database;
+
+import com.chatflow.server.database.AdaptiveBatchController.Decision;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AdaptiveBatchControllerTest {
+
+    // 100..2100 rows gives an additive step of 100; flush interval 10..1000 ms
+    private static AdaptiveBatchController controller(int batchSize, long intervalMs) {
+        return new AdaptiveBatchController(batchSize, intervalMs, 100, 2100, 10, 1000, 200);
+    }
+
+    @Test
+    void fullFastBatchesIncreaseAdditively() {
+        AdaptiveBatchController controller = controller(500, 100);
+        assertEquals(Decision.INCREASE, controller.onBatch(500, 50, false, 0.2));
+        assertEquals(600, controller.getBatchSize());
+        assertEquals(Decision.INCREASE, controller.getLastDecision());
+        // A partial batch still grows while the buffer is backing up
+        assertEquals(Decision.INCREASE, controller.onBatch(10, 50, false, 0.8));
+        assertEquals(700, controller.getBatchSize());
+    }
+
+    @Test
+    void partialFastBatchesHold() {
+        AdaptiveBatchController controller = controller(500, 100);
+        assertEquals(Decision.HOLD, controller.onBatch(200, 50, false, 0.2));
+        assertEquals(500, controller.getBatchSize());
+        assertEquals(100, controller.getFlushIntervalMs());
+    }
+
+    @Test
+    void slowCommitsDecreaseMultiplicatively() {
+        AdaptiveBatchController controller = controller(1000, 100);
+        // Slow beats full: latency is checked before fill
+        assertEquals(Decision.DECREASE, controller.onBatch(1000, 250, false, 0.2));
+        assertEquals(700, controller.getBatchSize());
+    }
+
+    @Test
+    void failuresBackOffEvenWhenFast() {
+        AdaptiveBatchController controller = controller(1000, 100);
+        assertEquals(Decision.BACKOFF, controller.onBatch(1000, 5, true, 0.9));
+        assertEquals(500, controller.getBatchSize());
+    }
+
+    @Test
+    void batchSizeIsClampedToItsBounds() {
+        AdaptiveBatchController controller = controller(5000, 100);
+        assertEquals(2100, controller.getBatchSize());
+        controller.onBatch(2100, 10, false, 0.2);
+        assertEquals(2100, controller.getBatchSize());
+
+        controller = controller(10, 100);
+        assertEquals(100, controller.getBatchSize());
+        assertEquals(Decision.BACKOFF, controller.onBatch(100, 10, true, 0.2));
+        assertEquals(100, controller.getBatchSize());
+        assertEquals(Decision.DECREASE, controller.onBatch(100, 500, false, 0.2));
+        assertEquals(100, controller.getBatchSize());
+    }
+
+    @Test
+    void flushIntervalFollowsBufferFill() {
+        AdaptiveBatchController controller = controller(500, 100);
+        controller.onBatch(100, 10, false, 0.01);
+        assertEquals(50, controller.getFlushIntervalMs());
+        controller.onBatch(100, 10, false, 0.3);
+        assertEquals(50, controller.getFlushIntervalMs());
+        controller.onBatch(100, 10, false, 0.6);
+        assertEquals(100, controller.getFlushIntervalMs());
+
+        for (int i = 0; i < 10; i++) {
+            controller.onBatch(100, 10, false, 0.0);
+        }
+        assertEquals(10, controller.getFlushIntervalMs());
+        for (int i = 0; i < 10; i++) {
+            controller.onBatch(100, 10, false, 1.0);
+        }
+        assertEquals(1000, controller.getFlushIntervalMs());
+        assertEquals(1000, controller(500, 5000).getFlushIntervalMs());
+    }
+}
@@ -0,0 +1,130 @@
+package com.chatflow.server.database;
+
+import com.chatflow.server.archive.ArchiveStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MessageHistoryRepositoryTest {
+
+    private static final Instant BASE = Instant.parse("2025-03-01T00:00:00Z");
+
+    private final ReadRouter readRouter = mock(ReadRouter.class);
+    private final ArchiveStore archive = mock(ArchiveStore.class);
+    private final MessageHistoryRepository repository =
+            new MessageHistoryRepository(readRouter, archive, new SimpleMeterRegistry());
+
+    @BeforeEach
+    void setUp() {
+        when(archive.isEnabled()).thenReturn(true);
+        when(archive.hasBefore(anyString(), any())).thenReturn(true);
+        when(archive.hasAfter(anyString(), any())).thenReturn(true);
+    }
+
+    private static PersistentMessage message(int id) {
+        UUID messageId = new UUID(0, id);
+        return new PersistentMessage(messageId, messageId, "room1", 1, "user1", "m" + id, "TEXT",
+                BASE.plusSeconds(id), "server-1", null);
+    }
+
+    private static List<PersistentMessage> messages(int from, int to, int step) {
+        List<PersistentMessage> messages = new ArrayList<>();
+        for (int id = from; step > 0 ? id <= to : id >= to; id += step) {
+            messages.add(message(id));
+        }
+        return messages;
+    }
+
+    /**
+     * The database page: these rows, whatever the query.
+     */
+    private void database(List<PersistentMessage> rows) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        AtomicInteger row = new AtomicInteger(-1);
+        when(rs.next()).thenAnswer(call -> row.incrementAndGet() < rows.size());
+        when(rs.getObject(1, UUID.class)).thenAnswer(call -> rows.get(row.get()).getMessageId());
+        when(rs.getObject(2, UUID.class)).thenAnswer(call -> rows.get(row.get()).getClientMessageId());
+        when(rs.getString(3)).thenAnswer(call -> rows.get(row.get()).getRoomId());
+        when(rs.getInt(4)).thenAnswer(call -> rows.get(row.get()).getUserId());
+        when(rs.getString(5)).thenAnswer(call -> rows.get(row.get()).getUsername());
+        when(rs.getString(6)).thenAnswer(call -> rows.get(row.get()).getMessage());
+        when(rs.getString(7)).thenAnswer(call -> rows.get(row.get()).getMessageType());
+        when(rs.getTimestamp(8)).thenAnswer(call -> Timestamp.from(rows.get(row.get()).getTimestamp()));
+        when(rs.getString(9)).thenAnswer(call -> rows.get(row.get()).getServerId());
+
+        PreparedStatement ps = mock(PreparedStatement.class);
+        when(ps.executeQuery()).thenReturn(rs);
+        Connection conn = mock(Connection.class);
+        when(conn.prepareStatement(anyString())).thenReturn(ps);
+        when(readRouter.getConnection(any())).thenReturn(conn);
+    }
+
+    private static List<Integer> ids(List<PersistentMessage> messages) {
+        return messages.stream().map(m -> (int) m.getMessageId().getLeastSignificantBits()).toList();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void afterMergesTiersAndSendsRowsInBothOnce() throws Exception {
+        // 4 and 5 were copied to a segment but not yet deleted from the table
+        doAnswer(call -> {
+            messages(1, 5, 1).forEach(call.<Consumer<PersistentMessage>>getArgument(3));
+            return 5;
+        }).when(archive).forEachAfter(eq("room1"), any(), anyInt(), any(Consumer.class));
+        database(messages(4, 8, 1));
+
+        List<PersistentMessage> read = new ArrayList<>();
+        assertEquals(8, repository.forEachAfter(ReadRouter.Consistency.PRIMARY, "room1",
+                MessageCursor.of(message(0)), 50, read::add));
+        assertEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8), ids(read));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void beforeMergesTiersNewestFirstUpToTheLimit() throws Exception {
+        when(archive.newest("room1")).thenReturn(BASE.plusSeconds(5));
+        doAnswer(call -> {
+            messages(5, 1, -1).forEach(call.<Consumer<PersistentMessage>>getArgument(3));
+            return 5;
+        }).when(archive).forEachBefore(eq("room1"), any(), anyInt(), any(Consumer.class));
+        database(messages(8, 4, -1));
+
+        List<PersistentMessage> read = new ArrayList<>();
+        assertEquals(6, repository.forEachBefore(ReadRouter.Consistency.REPLICA_OK, "room1", null, 6, read::add));
+        assertEquals(List.of(8, 7, 6, 5, 4, 3), ids(read));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void fullPageNewerThanTheArchiveSkipsTheArchive() throws Exception {
+        when(archive.newest("room1")).thenReturn(BASE.plusSeconds(5));
+        database(messages(9, 6, -1));
+
+        List<PersistentMessage> read = new ArrayList<>();
+        assertEquals(4, repository.forEachBefore(ReadRouter.Consistency.REPLICA_OK, "room1", null, 4, read::add));
+        assertEquals(List.of(9, 8, 7, 6), ids(read));
+        verify(archive, never()).forEachBefore(anyString(), any(), anyInt(), any(Consumer.class));
+    }
+}
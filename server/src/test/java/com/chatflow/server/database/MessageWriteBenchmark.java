@@ -0,0 +1,134 @@
+package com.chatflow.server.database;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows/sec of the two write strategies, batched INSERT and binary COPY with a
+ * staging merge, through a pinned writer as the DB writer threads use them.
+ * Each operation is one row; every invocation writes a fresh batch.
+ *
+ * Needs a scratch PostgreSQL database: its messages table is dropped and
+ * recreated. Only compiled with -Pjmh. Run with:
+ *   mvn -Pjmh test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ *   java -Dbench.db.url=jdbc:postgresql://localhost:5432/chatflow_bench -Dbench.db.user=... -Dbench.db.password=... \
+ *        -cp target/classes:target/test-classes:$(cat target/cp.txt) com.chatflow.server.database.MessageWriteBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MessageWriteBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({"batch", "copy"})
+    private String strategy;
+
+    private HikariDataSource dataSource;
+    private MessageRepository.PinnedWriter writer;
+    private final Random random = new Random(7);
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(System.getProperty("bench.db.url", "jdbc:postgresql://localhost:5432/chatflow_bench"));
+        config.setUsername(System.getProperty("bench.db.user", "postgres"));
+        config.setPassword(System.getProperty("bench.db.password", ""));
+        config.setMaximumPoolSize(2);
+        config.setAutoCommit(false);
+        dataSource = new HikariDataSource(config);
+
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS messages CASCADE");
+            stmt.execute("CREATE TABLE messages (" +
+                    "    message_id UUID PRIMARY KEY," +
+                    "    room_id VARCHAR(10) NOT NULL," +
+                    "    user_id INTEGER NOT NULL," +
+                    "    username VARCHAR(20) NOT NULL," +
+                    "    message TEXT NOT NULL," +
+                    "    message_type VARCHAR(10) NOT NULL," +
+                    "    timestamp TIMESTAMP NOT NULL," +
+                    "    server_id VARCHAR(50)," +
+                    "    client_ip VARCHAR(45)," +
+                    "    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+                    "    client_message_id UUID UNIQUE)");
+            conn.commit();
+        }
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MessageRepository repository = new MessageRepository(dataSource,
+                new DimensionCache(dataSource, registry), new RollupWriter(registry));
+        ReflectionTestUtils.setField(repository, "writeStrategy", strategy);
+        writer = repository.openPinnedWriter();
+    }
+
+    @Setup(Level.Iteration)
+    public void truncate() throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("TRUNCATE messages");
+            conn.commit();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        writer.close();
+        dataSource.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public int writeBatch() {
+        List<PersistentMessage> batch = new ArrayList<>(BATCH_SIZE);
+        Instant now = Instant.now();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            int userId = 1 + random.nextInt(100_000);
+            batch.add(new PersistentMessage(UUID.randomUUID(), UUID.randomUUID(),
+                    String.valueOf(1 + random.nextInt(20)), userId, "user" + userId,
+                    "benchmark message " + i, "TEXT", now, "bench", "127.0.0.1"));
+        }
+        int inserted = writer.batchInsert(batch);
+        if (inserted != BATCH_SIZE) {
+            throw new IllegalStateException("Inserted " + inserted + " of " + BATCH_SIZE);
+        }
+        return inserted;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MessageWriteBenchmark.class.getSimpleName()).build()).run();
+    }
+}
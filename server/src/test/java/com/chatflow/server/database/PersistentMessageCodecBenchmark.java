@@ -0,0 +1,90 @@
+package com.chatflow.server.database;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-message decode cost on the persistence consumer: the JSON body parsed
+ * with readTree as the DB writer used to, against PersistentMessageCodec.
+ *
+ * Only compiled with -Pjmh. Run with:
+ *   mvn -Pjmh test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ *   java -cp target/classes:target/test-classes:$(cat target/cp.txt) com.chatflow.server.database.PersistentMessageCodecBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersistentMessageCodecBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private byte[] json;
+    private byte[] binary;
+
+    @Setup
+    public void setup() throws IOException {
+        UUID id = UUID.randomUUID();
+        Instant timestamp = Instant.parse("2026-10-19T09:30:00.123Z");
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("messageId", id.toString());
+        fields.put("roomId", "room7");
+        fields.put("userId", "48213");
+        fields.put("username", "user48213");
+        fields.put("message", "hello everyone, this is a fairly ordinary chat message");
+        fields.put("messageType", "TEXT");
+        fields.put("timestamp", timestamp.toString());
+        fields.put("serverId", "chatflow-1");
+        fields.put("clientIp", "10.0.3.17");
+        json = objectMapper.writeValueAsBytes(fields);
+        binary = PersistentMessageCodec.encode(new PersistentMessage(id, "room7", 48213, "user48213",
+                "hello everyone, this is a fairly ordinary chat message", "TEXT", timestamp, "chatflow-1", "10.0.3.17"));
+    }
+
+    @Benchmark
+    public PersistentMessage json() throws IOException {
+        JsonNode node = objectMapper.readTree(new String(json, StandardCharsets.UTF_8));
+        return new PersistentMessage(
+                node.get("messageId").asText(),
+                node.get("roomId").asText(),
+                node.get("userId").asText(),
+                node.get("username").asText(),
+                node.get("message").asText(),
+                node.get("messageType").asText(),
+                Instant.parse(node.get("timestamp").asText()),
+                node.has("serverId") ? node.get("serverId").asText() : null,
+                node.has("clientIp") ? node.get("clientIp").asText() : null
+        );
+    }
+
+    @Benchmark
+    public PersistentMessage binary() {
+        return PersistentMessageCodec.decode(binary);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PersistentMessageCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,163 @@
+package com.chatflow.server.database;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteRingBufferTest {
+
+    private static final int PRODUCERS = 4;
+    private static final int CONSUMERS = 3;
+    private static final int PER_PRODUCER = 50_000;
+
+    private static PersistentMessage message(int producer, int seq) {
+        return new PersistentMessage(new UUID(producer, seq), "room1", producer, "user" + producer,
+                "m" + seq, "TEXT", Instant.EPOCH, null, null);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"blocking", "yielding", "parking"})
+    void deliversEveryMessageExactlyOnceUnderContention(String strategy) throws Exception {
+        // Small ring so producers keep hitting full and consumers keep hitting empty
+        WriteRingBuffer ring = new WriteRingBuffer(64, WaitStrategy.of(strategy));
+        AtomicIntegerArray seen = new AtomicIntegerArray(PRODUCERS * PER_PRODUCER);
+        AtomicLong drained = new AtomicLong();
+        AtomicBoolean producing = new AtomicBoolean(true);
+        ExecutorService pool = Executors.newFixedThreadPool(PRODUCERS + CONSUMERS);
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<?>> consumers = new ArrayList<>();
+        for (int c = 0; c < CONSUMERS; c++) {
+            consumers.add(pool.submit(() -> {
+                List<PersistentMessage> batch = new ArrayList<>();
+                PendingAcks acks = new PendingAcks(16);
+                start.await();
+                while (producing.get() || !ring.isEmpty()) {
+                    ring.awaitData(TimeUnit.MILLISECONDS.toNanos(5));
+                    // Odd batch limit so runs straddle the ring's wrap-around
+                    ring.drainTo(batch, acks, 7);
+                    for (PersistentMessage msg : batch) {
+                        UUID id = msg.getMessageId();
+                        seen.incrementAndGet((int) id.getMostSignificantBits() * PER_PRODUCER
+                                + (int) id.getLeastSignificantBits());
+                    }
+                    drained.addAndGet(batch.size());
+                    batch.clear();
+                }
+                return null;
+            }));
+        }
+        List<Future<?>> producers = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            int producer = p;
+            producers.add(pool.submit(() -> {
+                start.await();
+                for (int seq = 0; seq < PER_PRODUCER; seq++) {
+                    assertTrue(ring.offer(message(producer, seq), 10_000), "offer timed out");
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> producer : producers) {
+            producer.get(60, TimeUnit.SECONDS);
+        }
+        producing.set(false);
+        ring.wakeAll();
+        for (Future<?> consumer : consumers) {
+            consumer.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertEquals(PRODUCERS * PER_PRODUCER, drained.get());
+        for (int i = 0; i < seen.length(); i++) {
+            assertEquals(1, seen.get(i), "message " + i);
+        }
+        assertTrue(ring.isEmpty());
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    void fullAndEmptyTransitions() throws Exception {
+        WriteRingBuffer ring = new WriteRingBuffer(4, WaitStrategy.of("parking"));
+        List<PersistentMessage> batch = new ArrayList<>();
+        PendingAcks acks = new PendingAcks(16);
+
+        assertTrue(ring.isEmpty());
+        assertEquals(0, ring.drainTo(batch, acks, 10));
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(message(0, i), 0));
+        }
+        assertEquals(4, ring.size());
+        assertFalse(ring.offer(message(0, 4), 20), "full ring must time out");
+
+        assertTrue(ring.drainTo(batch, acks, 2) > 0);
+        assertEquals(List.of(message(0, 0).getMessageId(), message(0, 1).getMessageId()),
+                batch.stream().map(PersistentMessage::getMessageId).toList());
+        assertTrue(ring.offer(message(0, 4), 0));
+        assertTrue(ring.offer(message(0, 5), 0));
+        assertFalse(ring.offer(message(0, 6), 0));
+
+        batch.clear();
+        ring.drainTo(batch, acks, 10);
+        assertEquals(4, batch.size());
+        assertEquals(message(0, 5).getMessageId(), batch.get(3).getMessageId());
+        assertTrue(ring.isEmpty());
+        assertEquals(0, ring.headAgeNanos());
+        assertEquals(0, ring.drainTo(batch, acks, 10));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"blocking", "yielding", "parking"})
+    void waitingConsumerWakesOnPublish(String strategy) throws Exception {
+        WriteRingBuffer ring = new WriteRingBuffer(16, WaitStrategy.of(strategy));
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Future<Long> waited = pool.submit(() -> {
+            long startNanos = System.nanoTime();
+            ring.awaitData(TimeUnit.SECONDS.toNanos(10));
+            return System.nanoTime() - startNanos;
+        });
+        Thread.sleep(50);
+        assertTrue(ring.offer(message(0, 0), 0));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(waited.get(5, TimeUnit.SECONDS)) < 5_000);
+        pool.shutdown();
+    }
+
+    @Test
+    void drainHandsDeliveryTagsToPendingAcks() throws Exception {
+        WriteRingBuffer ring = new WriteRingBuffer(8, WaitStrategy.of("blocking"));
+        List<Long> committed = new ArrayList<>();
+        AckTracker tracker = new AckTracker() {
+            public void committed(long deliveryTag) { committed.add(deliveryTag); }
+            public void failed(long deliveryTag) { }
+            public void flush() { }
+        };
+        ring.offer(message(0, 0), tracker, 11, 0);
+        ring.offer(message(0, 1), 0);
+        ring.offer(message(0, 2), tracker, 12, 0);
+
+        PendingAcks acks = new PendingAcks(16);
+        ring.drainTo(new ArrayList<>(), acks, 10);
+        assertEquals(2, acks.size());
+        acks.commit();
+        assertEquals(List.of(11L, 12L), committed);
+    }
+}
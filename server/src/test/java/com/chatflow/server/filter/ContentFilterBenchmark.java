@@ -0,0 +1,106 @@
+package com.chatflow.server.filter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-message cost of the content filter: 500-char messages against a list
+ * of 10k terms, clean and with a masked hit, next to the String.contains
+ * loop it replaces.
+ *
+ * Only compiled with -Pjmh. Run with:
+ *   mvn -Pjmh test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ *   java -cp target/classes:target/test-classes:$(cat target/cp.txt) com.chatflow.server.filter.ContentFilterBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContentFilterBenchmark {
+
+    @Param({"10000"})
+    private int terms;
+
+    @Param({"500"})
+    private int messageLength;
+
+    private ContentFilter.Compiled compiled;
+    private List<String> termList;
+    private String clean;
+    private String dirty;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(7);
+        termList = new ArrayList<>(terms);
+        List<String> lines = new ArrayList<>(terms);
+        for (int i = 0; i < terms; i++) {
+            String term = word(random, 5 + random.nextInt(6)) + i;
+            termList.add(term);
+            lines.add(term);
+        }
+        compiled = ContentFilter.compile(ContentFilter.parse(lines, FilterAction.MASK));
+
+        StringBuilder text = new StringBuilder(messageLength);
+        while (text.length() < messageLength) {
+            text.append(word(random, 2 + random.nextInt(8))).append(' ');
+        }
+        clean = text.substring(0, messageLength);
+        String hit = termList.get(terms / 2);
+        dirty = clean.substring(0, messageLength / 2) + " " + hit + " "
+                + clean.substring(messageLength / 2 + hit.length() + 2);
+    }
+
+    private static String word(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+
+    @Benchmark
+    public ContentFilter.Result cleanMessage() {
+        return ContentFilter.check(compiled, clean, true);
+    }
+
+    @Benchmark
+    public ContentFilter.Result maskedMessage() {
+        return ContentFilter.check(compiled, dirty, true);
+    }
+
+    @Benchmark
+    public int containsLoop() {
+        String folded = clean.toLowerCase();
+        int hits = 0;
+        for (String term : termList) {
+            if (folded.contains(term)) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ContentFilterBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,77 @@
+package com.chatflow.server.filter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ContentFilterTest {
+
+    @Test
+    void matchesOverlappingTermsLikeBruteForce() {
+        List<String> terms = List.of("he", "she", "his", "hers", "e", "ushe", "rs");
+        AhoCorasick matcher = new AhoCorasick(terms);
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 40; i++) {
+                text.append("hersuHEiX".charAt(random.nextInt(9)));
+            }
+            TreeSet<String> expected = new TreeSet<>();
+            String folded = text.toString().toLowerCase();
+            for (int t = 0; t < terms.size(); t++) {
+                for (int at = folded.indexOf(terms.get(t)); at >= 0; at = folded.indexOf(terms.get(t), at + 1)) {
+                    expected.add(t + "@" + at);
+                }
+            }
+            TreeSet<String> actual = new TreeSet<>();
+            matcher.match(text, (term, start, end) -> {
+                assertEquals(terms.get(term).length(), end - start);
+                actual.add(term + "@" + start);
+                return true;
+            });
+            assertEquals(expected, actual, text.toString());
+        }
+    }
+
+    @Test
+    void mostSevereActionWinsAndMaskKeepsLength() {
+        Map<String, FilterAction> terms = ContentFilter.parse(List.of(
+                "# comment", "darn", "flag:heck", "reject:blorp", "MASK:Darn", "re:view"), FilterAction.MASK);
+        ContentFilter.Compiled compiled = ContentFilter.compile(terms);
+
+        ContentFilter.Result masked = ContentFilter.check(compiled, "Oh DARN it, heck", true);
+        assertEquals(FilterAction.MASK, masked.getAction());
+        assertEquals("Oh **** it, heck", masked.getText());
+        assertEquals(2, masked.getMatches());
+
+        assertEquals(FilterAction.REJECT, ContentFilter.check(compiled, "darn blorp", true).getAction());
+        assertEquals(FilterAction.MASK, ContentFilter.check(compiled, "re:view please", true).getAction());
+        assertSame(ContentFilter.Result.CLEAN, ContentFilter.check(compiled, "all fine here", true));
+    }
+
+    @Test
+    void wholeWordsSkipsEmbeddedTerms() {
+        ContentFilter.Compiled compiled = ContentFilter.compile(ContentFilter.parse(List.of("ass"), FilterAction.MASK));
+        assertSame(ContentFilter.Result.CLEAN, ContentFilter.check(compiled, "classic assessment", true));
+        assertEquals("cl***ic", ContentFilter.check(compiled, "classic", false).getText());
+        assertEquals("what an ***!", ContentFilter.check(compiled, "what an ass!", true).getText());
+    }
+
+    @Test
+    void handlesLargeTermLists() {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            lines.add("term" + Integer.toString(i, 36) + "x");
+        }
+        ContentFilter.Compiled compiled = ContentFilter.compile(ContentFilter.parse(lines, FilterAction.FLAG));
+        assertEquals(FilterAction.FLAG, ContentFilter.check(compiled, "say term7pr x and term7prx", true).getAction());
+        assertEquals(1, ContentFilter.check(compiled, "say term7pr x and term7prx", true).getMatches());
+    }
+}
@@ -0,0 +1,224 @@
+package com.chatflow.server.handler;
+
+import com.chatflow.server.database.MessageCursor;
+import com.chatflow.server.database.MessageHistoryRepository;
+import com.chatflow.server.database.PersistentMessage;
+import com.chatflow.server.model.ChatMessage;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class HistoryReplayerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final MessageHistoryRepository repository = mock(MessageHistoryRepository.class);
+    private final List<PersistentMessage> stored = new ArrayList<>();
+    private RecentHistory recentHistory;
+    private HistoryReplayer replayer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        recentHistory = new RecentHistory();
+        ReflectionTestUtils.setField(recentHistory, "capacity", 4);
+        recentHistory.init();
+
+        replayer = new HistoryReplayer(recentHistory, repository, objectMapper, new SimpleMeterRegistry(), 2);
+        ReflectionTestUtils.setField(replayer, "replayCount", 50);
+        ReflectionTestUtils.setField(replayer, "maxDbRows", 1000);
+        ReflectionTestUtils.setField(replayer, "maxHeld", 100);
+
+        // Database: everything committed, oldest first, strictly after the cursor
+        doAnswer(call -> {
+            String roomId = call.getArgument(1);
+            MessageCursor after = call.getArgument(2);
+            Consumer<PersistentMessage> consumer = call.getArgument(4);
+            stored.stream()
+                    .filter(m -> m.getRoomId().equals(roomId) && MessageCursor.of(m).compareTo(after) > 0)
+                    .sorted((a, b) -> MessageCursor.of(a).compareTo(MessageCursor.of(b)))
+                    .forEach(consumer);
+            return 0;
+        }).when(repository).forEachAfter(any(), any(), any(), anyInt(), any());
+    }
+
+    @AfterEach
+    void tearDown() {
+        replayer.shutdown();
+    }
+
+    private PersistentMessage message(String roomId, int id, long seconds) {
+        UUID messageId = new UUID(0, id);
+        return new PersistentMessage(messageId, messageId, roomId, 1, "user1", "m" + id, "TEXT",
+                Instant.ofEpochSecond(seconds), null, null);
+    }
+
+    private PersistentMessage message(int id, long seconds) {
+        return message("room1", id, seconds);
+    }
+
+    /**
+     * Broadcast, in arrival order, without its row being committed yet.
+     */
+    private void broadcast(PersistentMessage message) throws Exception {
+        TextMessage frame = new TextMessage(objectMapper.writeValueAsString(ChatMessage.fromPersistent(message)));
+        recentHistory.record(message.getRoomId(), MessageCursor.of(message), frame);
+    }
+
+    /**
+     * Persisted and broadcast, in arrival order.
+     */
+    private void arrive(PersistentMessage message) throws Exception {
+        stored.add(message);
+        broadcast(message);
+    }
+
+    private WebSocketSession session(List<String> sent) throws Exception {
+        WebSocketSession session = mock(WebSocketSession.class);
+        Map<String, Object> attributes = new HashMap<>();
+        when(session.getAttributes()).thenReturn(attributes);
+        when(session.isOpen()).thenReturn(true);
+        when(session.getId()).thenReturn("s1");
+        doAnswer(call -> {
+            TextMessage frame = call.getArgument(0);
+            JsonNode json = objectMapper.readTree(frame.getPayload());
+            sent.add(json.has("replay") ? "GAP after " + json.get("after").asText() : json.get("messageId").asText());
+            return null;
+        }).when(session).sendMessage(any());
+        return session;
+    }
+
+    private static void awaitReleased(WebSocketSession session) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (session.getAttributes().containsKey(ReplayGate.ATTRIBUTE) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertFalse(session.getAttributes().containsKey(ReplayGate.ATTRIBUTE), "replay not released");
+    }
+
+    private List<String> resume(MessageCursor since) throws Exception {
+        List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        WebSocketSession session = session(sent);
+        replayer.prepare(session);
+        replayer.start(session, "room1", since, 50);
+        awaitReleased(session);
+        return new ArrayList<>(sent);
+    }
+
+    private List<String> resume(long sinceSeconds) throws Exception {
+        return resume(new MessageCursor(Instant.ofEpochSecond(sinceSeconds), new UUID(0, 0)));
+    }
+
+    private static String id(int id) {
+        return new UUID(0, id).toString();
+    }
+
+    @Test
+    void seamCoversMessagesEvictedOutOfCursorOrder() throws Exception {
+        // 1 has a later timestamp than everything left in the ring once it is evicted
+        arrive(message(1, 20));
+        arrive(message(2, 10));
+        for (int i = 3; i <= 6; i++) {
+            arrive(message(i, 10 + i));
+        }
+
+        List<String> sent = resume(5);
+        assertEquals(6, sent.size(), sent::toString);
+        for (int i = 1; i <= 6; i++) {
+            assertTrue(sent.contains(id(i)), "missing " + i);
+        }
+        // Database part first, then the ring
+        assertEquals(List.of(id(2), id(1), id(3), id(4), id(5), id(6)), sent);
+    }
+
+    @Test
+    void ringStartIsItsSmallestCursorNotItsFirstArrival() throws Exception {
+        arrive(message(1, 5));
+        arrive(message(2, 6));
+        arrive(message(3, 30));
+        arrive(message(4, 12));
+        arrive(message(5, 11));
+        arrive(message(6, 31));
+
+        // Ring holds 30, 12, 11, 31 in that order; 11 and 12 are below its first arrival
+        List<String> sent = resume(10);
+        assertEquals(List.of(id(3), id(4), id(5), id(6)), sent);
+    }
+
+    @Test
+    void resumesStrictlyAfterTheClientsCursor() throws Exception {
+        for (int i = 1; i <= 8; i++) {
+            arrive(message(i, 10 + i));
+        }
+        // Cursor inside the DB part, then inside the ring: nothing at or before it is re-sent
+        assertEquals(List.of(id(4), id(5), id(6), id(7), id(8)), resume(MessageCursor.of(message(3, 13))));
+        assertEquals(List.of(id(7), id(8)), resume(MessageCursor.of(message(6, 16))));
+    }
+
+    @Test
+    void uncommittedEvictedMessageEndsTheDbPartWithAGap() throws Exception {
+        arrive(message(1, 10));
+        broadcast(message(2, 11));     // evicted before the writer committed it
+        arrive(message(3, 12));
+        for (int i = 4; i <= 7; i++) {
+            arrive(message(i, 10 + i));
+        }
+
+        List<String> sent = resume(5);
+        String after = MessageCursor.of(message(1, 10)).toString();
+        // 3 is held back with 2: the client pages (after 1 .. ring start] in once it is committed
+        assertEquals(List.of(id(1), "GAP after " + after, id(4), id(5), id(6), id(7)), sent);
+    }
+
+    @Test
+    void slowSessionDoesNotHoldUpOtherRooms() throws Exception {
+        for (int i = 1; i <= 6; i++) {
+            arrive(message("room1", i, 10 + i));
+            arrive(message("room2", 100 + i, 10 + i));
+        }
+        CountDownLatch unblock = new CountDownLatch(1);
+        WebSocketSession slow = session(new ArrayList<>());
+        doAnswer(call -> unblock.await(10, TimeUnit.SECONDS)).when(slow).sendMessage(any());
+        List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        WebSocketSession other = session(sent);
+        MessageCursor since = new MessageCursor(Instant.ofEpochSecond(5), new UUID(0, 0));
+
+        replayer.prepare(slow);
+        replayer.start(slow, "room1", since, 50);
+        Thread.sleep(50);
+        replayer.prepare(other);
+        replayer.start(other, "room2", since, 50);
+        awaitReleased(other);
+        assertEquals(6, sent.size());
+        assertTrue(slow.getAttributes().containsKey(ReplayGate.ATTRIBUTE));
+
+        // Live frames for the slow session were held, not blocked behind its replay
+        assertTrue(ReplayGate.hold(slow, MessageCursor.of(message(7, 30)), new TextMessage("{}")));
+        unblock.countDown();
+        awaitReleased(slow);
+    }
+}
@@ -0,0 +1,136 @@
+package com.chatflow.server.handler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageIdGeneratorTest {
+
+    private static final long NOW = 1_792_400_000_000L;
+
+    private static long millis(UUID id) {
+        return id.getMostSignificantBits() >>> 16;
+    }
+
+    private static long sequence(UUID id) {
+        return id.getMostSignificantBits() & 0xFFF;
+    }
+
+    private static void assertAfter(UUID earlier, UUID later) {
+        assertTrue(Long.compareUnsigned(later.getMostSignificantBits(), earlier.getMostSignificantBits()) > 0,
+                () -> later + " not after " + earlier);
+    }
+
+    @Test
+    void hasTheUuidV7Layout() {
+        UUID id = new MessageIdGenerator("node-1", () -> NOW).next();
+        assertEquals(7, id.version());
+        assertEquals(2, id.variant());
+        assertEquals(NOW, millis(id));
+        assertEquals(0, sequence(id));
+        // Round-trips through the string form used on the wire
+        assertEquals(id, UUID.fromString(id.toString()));
+    }
+
+    @Test
+    void isStrictlyIncreasingWithinOneMillisecond() {
+        MessageIdGenerator generator = new MessageIdGenerator("node-1", () -> NOW);
+        UUID previous = generator.next();
+        for (int i = 1; i < 4096; i++) {
+            UUID id = generator.next();
+            assertAfter(previous, id);
+            assertEquals(NOW, millis(id));
+            assertEquals(i, sequence(id));
+            previous = id;
+        }
+    }
+
+    @Test
+    void sequenceOverflowCarriesIntoTheTimestamp() {
+        AtomicLong clock = new AtomicLong(NOW);
+        MessageIdGenerator generator = new MessageIdGenerator("node-1", clock::get);
+        UUID previous = null;
+        for (int i = 0; i < 4096 + 10; i++) {
+            UUID id = generator.next();
+            if (previous != null) {
+                assertAfter(previous, id);
+            }
+            previous = id;
+        }
+        assertEquals(NOW + 1, millis(previous));
+        assertEquals(9, sequence(previous));
+        assertEquals(7, previous.version());
+
+        // Once the clock catches up with the borrowed millisecond, ids continue after it
+        clock.set(NOW + 1);
+        UUID next = generator.next();
+        assertAfter(previous, next);
+        assertEquals(10, sequence(next));
+        clock.set(NOW + 2);
+        assertEquals(0, sequence(generator.next()));
+    }
+
+    @Test
+    void clockGoingBackwardsKeepsOrdering() {
+        AtomicLong clock = new AtomicLong(NOW);
+        MessageIdGenerator generator = new MessageIdGenerator("node-1", clock::get);
+        UUID before = generator.next();
+        clock.set(NOW - 10_000);
+        UUID during = generator.next();
+        assertAfter(before, during);
+        assertEquals(NOW, millis(during));
+        clock.set(NOW + 5);
+        UUID after = generator.next();
+        assertAfter(during, after);
+        assertEquals(NOW + 5, millis(after));
+    }
+
+    @Test
+    void nodesAndRestartsDifferInTheLowBits() {
+        UUID a = new MessageIdGenerator("node-1", () -> NOW).next();
+        UUID b = new MessageIdGenerator("node-2", () -> NOW).next();
+        UUID restarted = new MessageIdGenerator("node-1", () -> NOW).next();
+        assertEquals(a.getMostSignificantBits(), b.getMostSignificantBits());
+        assertNotEquals(a, b);
+        assertNotEquals(a, restarted);
+    }
+
+    @Test
+    void concurrentCallersGetUniqueIncreasingIds() throws Exception {
+        MessageIdGenerator generator = new MessageIdGenerator("node-1");
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<List<UUID>>> results = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            results.add(pool.submit(() -> {
+                List<UUID> ids = new ArrayList<>(50_000);
+                for (int i = 0; i < 50_000; i++) {
+                    ids.add(generator.next());
+                }
+                return ids;
+            }));
+        }
+        Set<UUID> all = new HashSet<>();
+        for (Future<List<UUID>> result : results) {
+            List<UUID> ids = result.get(30, TimeUnit.SECONDS);
+            for (int i = 1; i < ids.size(); i++) {
+                assertAfter(ids.get(i - 1), ids.get(i));
+            }
+            all.addAll(ids);
+        }
+        pool.shutdown();
+        assertEquals(8 * 50_000, all.size());
+    }
+}
@@ -0,0 +1,62 @@
+package com.chatflow.server.handler;
+
+import com.chatflow.server.database.MessageCursor;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.TextMessage;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RecentHistoryTest {
+
+    private static MessageCursor at(long seconds, int id) {
+        return new MessageCursor(Instant.ofEpochSecond(seconds), new UUID(0, id));
+    }
+
+    private static RecentHistory history(int capacity) {
+        RecentHistory history = new RecentHistory();
+        ReflectionTestUtils.setField(history, "capacity", capacity);
+        history.init();
+        return history;
+    }
+
+    @Test
+    void oldestIsTheSmallestCursorNotTheFirstArrival() {
+        RecentHistory history = history(4);
+        history.record("room1", at(10, 1), new TextMessage("a"));
+        history.record("room1", at(5, 2), new TextMessage("b"));
+        history.record("room1", at(12, 3), new TextMessage("c"));
+
+        RecentHistory.Snapshot snapshot = history.snapshot("room1");
+        assertEquals(3, snapshot.getEntries().size());
+        assertEquals(at(10, 1), snapshot.getEntries().get(0).getCursor());
+        assertEquals(at(5, 2), snapshot.getOldest());
+        assertNull(snapshot.getEvictedUpTo());
+    }
+
+    @Test
+    void tracksTheLargestEvictedCursor() {
+        RecentHistory history = history(4);
+        history.record("room1", at(20, 1), new TextMessage("a"));
+        history.record("room1", at(10, 2), new TextMessage("b"));
+        for (int i = 3; i <= 6; i++) {
+            history.record("room1", at(10 + i, i), new TextMessage("m" + i));
+        }
+
+        // 20 and 10 were evicted; 20 is newer than everything left in the ring
+        RecentHistory.Snapshot snapshot = history.snapshot("room1");
+        assertEquals(4, snapshot.getEntries().size());
+        assertEquals(at(13, 3), snapshot.getOldest());
+        assertEquals(at(20, 1), snapshot.getEvictedUpTo());
+        assertEquals(List.of(at(20, 1), at(10, 2)), snapshot.getRecentlyEvicted());
+
+        history.reset("room1");
+        assertEquals(0, history.snapshot("room1").getEntries().size());
+        assertNull(history.snapshot("room1").getEvictedUpTo());
+    }
+}
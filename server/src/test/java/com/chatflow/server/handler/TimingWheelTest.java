@@ -0,0 +1,140 @@
+package com.chatflow.server.handler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+
+    private static final long TICK_MS = 10;
+    // Allowance for the ticker thread being scheduled late on a busy machine
+    private static final long JITTER_MS = 150;
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    @Test
+    void expiresInDeadlineOrderWithinOneTick() throws Exception {
+        long[] delays = {80, 20, 50, 30, 120};
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        Map<Integer, Long> firedAt = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(delays.length);
+        long start = System.nanoTime();
+        try (TimingWheel<Integer> wheel = new TimingWheel<>("test-wheel", TICK_MS, 64, timeout -> {
+            firedAt.put(timeout.getItem(), elapsedMs(start));
+            order.add(timeout.getItem());
+            done.countDown();
+        })) {
+            for (int i = 0; i < delays.length; i++) {
+                wheel.schedule(i, delays[i]);
+            }
+            assertEquals(delays.length, wheel.getPending());
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(0, wheel.getPending());
+        }
+
+        assertEquals(List.of(1, 3, 2, 0, 4), order);
+        for (int i = 0; i < delays.length; i++) {
+            long fired = firedAt.get(i);
+            // Never early; late by at most one tick plus scheduling jitter
+            assertTrue(fired >= delays[i], "item " + i + " fired early at " + fired + " ms");
+            assertTrue(fired <= delays[i] + TICK_MS + JITTER_MS, "item " + i + " fired late at " + fired + " ms");
+        }
+    }
+
+    @Test
+    void deadlinesBeyondOneRevolutionWaitForTheirTurn() throws Exception {
+        // 8 slots of 10 ms: one revolution is 80 ms, so these share buckets with near ones
+        Map<String, Long> firedAt = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(3);
+        long start = System.nanoTime();
+        try (TimingWheel<String> wheel = new TimingWheel<>("test-wheel", TICK_MS, 8, timeout -> {
+            firedAt.put(timeout.getItem(), elapsedMs(start));
+            done.countDown();
+        })) {
+            wheel.schedule("near", 30);
+            wheel.schedule("one-lap", 30 + 80);
+            wheel.schedule("three-laps", 30 + 3 * 80);
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        }
+        assertTrue(firedAt.get("near") >= 30);
+        assertTrue(firedAt.get("one-lap") >= 110, "one-lap fired at " + firedAt.get("one-lap"));
+        assertTrue(firedAt.get("three-laps") >= 270, "three-laps fired at " + firedAt.get("three-laps"));
+        assertTrue(firedAt.get("three-laps") <= 270 + TICK_MS + JITTER_MS);
+    }
+
+    @Test
+    void cancelAndExpiryRaceResolvesToExactlyOne() throws Exception {
+        int count = 20_000;
+        AtomicInteger[] fired = new AtomicInteger[count];
+        for (int i = 0; i < count; i++) {
+            fired[i] = new AtomicInteger();
+        }
+        boolean[] cancelled = new boolean[count];
+        try (TimingWheel<Integer> wheel = new TimingWheel<>("test-wheel", 1, 16, timeout ->
+                fired[timeout.getItem()].incrementAndGet())) {
+            List<TimingWheel.Timeout<Integer>> timeouts = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                timeouts.add(wheel.schedule(i, i % 5));
+            }
+            // Cancel while the ticker is expiring the same timeouts
+            for (int i = 0; i < count; i++) {
+                cancelled[i] = wheel.cancel(timeouts.get(i));
+            }
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (wheel.getPending() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(0, wheel.getPending());
+            // Late callbacks for timeouts that won against cancel have been handed off by now
+            Thread.sleep(50);
+            for (int i = 0; i < count; i++) {
+                assertTrue(!wheel.cancel(timeouts.get(i)), "cancelled twice: " + i);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            assertEquals(cancelled[i] ? 0 : 1, fired[i].get(), "timeout " + i);
+        }
+    }
+
+    @Test
+    void callbackCanRescheduleItsOwnTimeout() throws Exception {
+        int rounds = 5;
+        long delay = 20;
+        List<Long> firedAt = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<TimingWheel<String>> wheelRef = new AtomicReference<>();
+        long start = System.nanoTime();
+        try (TimingWheel<String> wheel = new TimingWheel<>("test-wheel", TICK_MS, 4, timeout -> {
+            firedAt.add(elapsedMs(start));
+            if (firedAt.size() < rounds) {
+                wheelRef.get().reschedule(timeout, delay);
+            } else {
+                done.countDown();
+            }
+        })) {
+            wheelRef.set(wheel);
+            wheel.schedule("ping", delay);
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            Thread.sleep(3 * delay);
+            assertEquals(0, wheel.getPending());
+        }
+        assertEquals(rounds, firedAt.size());
+        for (int i = 1; i < rounds; i++) {
+            assertTrue(firedAt.get(i) - firedAt.get(i - 1) >= delay - 1,
+                    "round " + i + " after " + (firedAt.get(i) - firedAt.get(i - 1)) + " ms");
+        }
+    }
+}
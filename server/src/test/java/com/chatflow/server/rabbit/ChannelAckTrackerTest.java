@@ -0,0 +1,194 @@
+package com.chatflow.server.rabbit;
+
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+class ChannelAckTrackerTest {
+
+    private final Channel channel = mock(Channel.class);
+    private final ChannelAckTracker tracker = new ChannelAckTracker(channel);
+
+    private void deliver(long from, long to) {
+        for (long tag = from; tag <= to; tag++) {
+            tracker.delivered(tag);
+        }
+    }
+
+    @Test
+    void acksUpToTheOldestOutstandingTag() throws IOException {
+        deliver(1, 5);
+        tracker.committed(3);
+        tracker.committed(4);
+        tracker.flush();
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+
+        tracker.committed(1);
+        tracker.flush();
+        verify(channel).basicAck(1, true);
+
+        tracker.committed(2);
+        tracker.flush();
+        verify(channel).basicAck(4, true);
+        assertEquals(1, tracker.getOutstanding());
+
+        tracker.committed(5);
+        tracker.flush();
+        verify(channel).basicAck(5, true);
+        assertEquals(0, tracker.getOutstanding());
+        verifyNoMoreInteractions(channel);
+    }
+
+    @Test
+    void skipsTagsTheConsumerSettledItself() throws IOException {
+        // 3 and 4 were rejected by the consumer without being registered
+        deliver(1, 2);
+        deliver(5, 6);
+        tracker.committed(1);
+        tracker.committed(2);
+        tracker.committed(5);
+        tracker.flush();
+        verify(channel).basicAck(5, true);
+        verifyNoMoreInteractions(channel);
+    }
+
+    @Test
+    void nacksFailuresAndNeverAcksUpToThem() throws IOException {
+        deliver(1, 3);
+        tracker.committed(1);
+        tracker.failed(2);
+        verify(channel).basicNack(2, false, true);
+        tracker.flush();
+        verify(channel).basicAck(1, true);
+
+        // Late commit of a requeued delivery is ignored, and it isn't nacked twice
+        tracker.committed(2);
+        tracker.failed(2);
+        tracker.flush();
+        verify(channel, times(1)).basicNack(2, false, true);
+
+        tracker.failed(3);
+        tracker.flush();
+        verify(channel).basicNack(3, false, true);
+        assertEquals(0, tracker.getOutstanding());
+        verifyNoMoreInteractions(channel);
+    }
+
+    @Test
+    void rejectedDeliveriesDontHoldBackLaterAcks() throws IOException {
+        deliver(1, 3);
+        // Registered, then the consumer failed before handing it to the writer
+        tracker.rejected(2);
+        verify(channel).basicNack(2, false, false);
+        tracker.committed(1);
+        tracker.committed(3);
+        tracker.flush();
+        verify(channel).basicAck(3, true);
+        assertEquals(0, tracker.getOutstanding());
+
+        // Never registered (failed before delivered), then a late duplicate reject is ignored
+        tracker.rejected(4);
+        verify(channel).basicNack(4, false, false);
+        tracker.rejected(3);
+        tracker.rejected(2);
+        verifyNoMoreInteractions(channel);
+    }
+
+    @Test
+    void retriesAnAckThatFailed() throws IOException {
+        deliver(1, 2);
+        tracker.committed(1);
+        tracker.committed(2);
+        doThrow(new IOException("channel closed")).doNothing().when(channel).basicAck(2, true);
+        tracker.flush();
+        assertEquals(2, tracker.getOutstanding());
+        tracker.flush();
+        verify(channel, times(2)).basicAck(2, true);
+        assertEquals(0, tracker.getOutstanding());
+    }
+
+    @Test
+    void randomCompletionOrderNeverAcksAnUncommittedTag() throws IOException {
+        Random random = new Random(11);
+        List<Long> acked = new ArrayList<>();
+        doAnswer(call -> acked.add(call.getArgument(0))).when(channel).basicAck(anyLong(), eq(true));
+        TreeSet<Long> outstanding = new TreeSet<>();
+        Set<Long> failed = new HashSet<>();
+        TreeSet<Long> committedUnacked = new TreeSet<>();
+        List<Long> inFlight = new ArrayList<>();
+        long next = 1;
+
+        for (int round = 0; round < 2_000; round++) {
+            // Occasional bursts wider than the initial window force it to grow
+            int burst = random.nextInt(round % 500 == 0 ? 3_000 : 20);
+            for (int i = 0; i < burst; i++) {
+                long tag = next++;
+                if (random.nextInt(20) == 0) {
+                    continue;   // settled by the consumer, never registered
+                }
+                tracker.delivered(tag);
+                outstanding.add(tag);
+                inFlight.add(tag);
+            }
+            Collections.shuffle(inFlight, random);
+            int settle = inFlight.isEmpty() ? 0 : random.nextInt(inFlight.size() + 1);
+            for (int i = 0; i < settle; i++) {
+                long tag = inFlight.remove(inFlight.size() - 1);
+                if (random.nextInt(10) == 0) {
+                    tracker.failed(tag);
+                    failed.add(tag);
+                } else {
+                    tracker.committed(tag);
+                    committedUnacked.add(tag);
+                }
+                outstanding.remove(tag);
+            }
+
+            int before = acked.size();
+            long previous = before == 0 ? 0 : acked.get(before - 1);
+            tracker.flush();
+            if (acked.size() > before) {
+                long target = acked.get(acked.size() - 1);
+                assertTrue(target > previous);
+                assertTrue(outstanding.isEmpty() || target < outstanding.first(),
+                        () -> "acked " + target + " with " + outstanding.first() + " outstanding");
+                assertFalse(failed.contains(target), "acked nacked tag " + target);
+                committedUnacked.headSet(target, true).clear();
+            }
+            // Everything committed below the oldest outstanding tag has been acked
+            assertTrue(committedUnacked.isEmpty() || !outstanding.isEmpty()
+                    && committedUnacked.first() > outstanding.first());
+            assertEquals(outstanding.size() + committedUnacked.size(), tracker.getOutstanding());
+        }
+
+        for (long tag : inFlight) {
+            tracker.committed(tag);
+            committedUnacked.add(tag);
+        }
+        tracker.flush();
+        assertEquals(committedUnacked.last(), acked.get(acked.size() - 1));
+        assertEquals(0, tracker.getOutstanding());
+    }
+}
@@ -0,0 +1,65 @@
+package com.chatflow.server.rabbit;
+
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RabbitMQSenderTest {
+
+    private final ChannelPool confirmPool = mock(ChannelPool.class);
+    private final Channel channel = mock(Channel.class);
+    private final RabbitMQSender sender = new RabbitMQSender(mock(ChannelPool.class), confirmPool);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ReflectionTestUtils.setField(sender, "confirmTimeoutMs", 100L);
+        when(confirmPool.borrowChannel()).thenReturn(channel);
+    }
+
+    @Test
+    void confirmedChannelGoesBackToThePool() throws Exception {
+        when(channel.waitForConfirms(anyLong())).thenReturn(true);
+        assertTrue(sender.sendDurablePersistence(new byte[]{1}));
+        verify(confirmPool).returnChannel(channel);
+        verify(confirmPool, never()).discardChannel(any());
+    }
+
+    @Test
+    void nackedChannelIsCleanAndGoesBack() throws Exception {
+        when(channel.waitForConfirms(anyLong())).thenReturn(false);
+        assertFalse(sender.sendDurablePersistence(new byte[]{1}));
+        verify(confirmPool).returnChannel(channel);
+    }
+
+    @Test
+    void timedOutChannelIsReplacedNotReused() throws Exception {
+        when(channel.waitForConfirms(anyLong())).thenThrow(new TimeoutException());
+        assertFalse(sender.sendDurablePersistence(new byte[]{1}));
+        verify(confirmPool).discardChannel(channel);
+        verify(confirmPool, never()).returnChannel(any());
+    }
+
+    @Test
+    void failedPublishReplacesTheChannel() throws Exception {
+        doThrow(new IOException("channel closed")).when(channel)
+                .basicPublish(anyString(), anyString(), any(), any());
+        assertFalse(sender.sendDurablePersistence(new byte[]{1}));
+        verify(confirmPool).discardChannel(channel);
+        verify(confirmPool, never()).returnChannel(any());
+    }
+}